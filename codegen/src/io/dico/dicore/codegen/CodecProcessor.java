@@ -0,0 +1,649 @@
+package io.dico.dicore.codegen;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Generates the codecs of classes annotated with {@link JsonCodec}.
+ * <p>
+ * The generated code reads and writes the fields directly through a {@code JsonReader} and {@code JsonWriter},
+ * without reflection. Unsupported fields are reported as compilation errors.
+ */
+@SupportedAnnotationTypes("io.dico.dicore.codegen.JsonCodec")
+public class CodecProcessor extends AbstractProcessor {
+    private static final String JSON_LOADABLE = "io.dico.dicore.serialization.JsonLoadable";
+    // implementations of abstract collection and map types, in order of preference
+    private static final String[] COLLECTION_TYPES = {"java.util.ArrayList", "java.util.LinkedHashSet", "java.util.TreeSet", "java.util.ArrayDeque"};
+    private static final String[] MAP_TYPES = {"java.util.LinkedHashMap", "java.util.TreeMap", "java.util.concurrent.ConcurrentHashMap"};
+    private Types types;
+    private Elements elements;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        types = processingEnv.getTypeUtils();
+        elements = processingEnv.getElementUtils();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(JsonCodec.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@JsonCodec only applies to classes");
+                continue;
+            }
+
+            TypeElement type = (TypeElement) element;
+            try {
+                String source = new Generator(type).generate();
+                try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedCodecName(type), type).openWriter()) {
+                    writer.write(source);
+                }
+            } catch (CodegenException ex) {
+                error(ex.element, ex.getMessage());
+            } catch (IOException ex) {
+                error(type, "Failed to write the codec: " + ex);
+            }
+        }
+        return true;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private String packageName(TypeElement type) {
+        return elements.getPackageOf(type).getQualifiedName().toString();
+    }
+
+    /**
+     * @return the simple name of the codec of the type. Codecs of nested classes are named after the enclosing classes too.
+     */
+    private String codecName(TypeElement type) {
+        String packageName = packageName(type);
+        String name = type.getQualifiedName().toString();
+        if (!packageName.isEmpty()) {
+            name = name.substring(packageName.length() + 1);
+        }
+        return name.replace('.', '_') + "Codec";
+    }
+
+    private String qualifiedCodecName(TypeElement type) {
+        String packageName = packageName(type);
+        return packageName.isEmpty() ? codecName(type) : packageName + "." + codecName(type);
+    }
+
+    private boolean isInstantiable(TypeElement type) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT) || type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isSubtype(TypeMirror type, String qualifiedName) {
+        TypeElement element = elements.getTypeElement(qualifiedName);
+        return element != null && types.isAssignable(types.erasure(type), types.erasure(element.asType()));
+    }
+
+    private static String qualifiedName(TypeMirror type) {
+        return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+    }
+
+    private static final class CodegenException extends Exception {
+        final Element element;
+
+        CodegenException(Element element, String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+
+    private static final class Property {
+        // the element to which errors of the property are reported
+        final Element site;
+        final VariableElement field;
+        final String name;
+        final TypeMirror type;
+        // the expression through which the field is accessed
+        final String access;
+
+        Property(Element site, VariableElement field, String name, TypeMirror type, String access) {
+            this.site = site;
+            this.field = field;
+            this.name = name;
+            this.type = type;
+            this.access = access;
+        }
+
+        String expression() {
+            return access + "." + field.getSimpleName();
+        }
+    }
+
+    private final class Generator {
+        private final TypeElement type;
+        private final String typeName;
+        private final StringBuilder out = new StringBuilder();
+        private int indent;
+        private int variables;
+        // the field that is being generated, to which errors are reported
+        private Element site;
+
+        Generator(TypeElement type) {
+            this.type = type;
+            this.typeName = type.getQualifiedName().toString();
+        }
+
+        String generate() throws CodegenException {
+            if (type.getModifiers().contains(Modifier.PRIVATE)) {
+                throw new CodegenException(type, "@JsonCodec classes can't be private");
+            }
+            if (!type.getTypeParameters().isEmpty()) {
+                throw new CodegenException(type, "@JsonCodec classes can't be generic");
+            }
+
+            List<Property> properties = collectProperties();
+            // a codec of a class that can't be instantiated has no TypeAdapter, such that registering it fails to compile
+            boolean instantiable = isInstantiable(type);
+
+            String packageName = packageName(type);
+            String codecName = codecName(type);
+            line("// Generated by " + CodecProcessor.class.getSimpleName() + " from " + typeName + ". Do not edit.");
+            if (!packageName.isEmpty()) {
+                line("package " + packageName + ";");
+            }
+            line("");
+            if (instantiable) {
+                line("import com.google.gson.TypeAdapter;");
+            }
+            line("import com.google.gson.stream.JsonReader;");
+            line("import com.google.gson.stream.JsonToken;");
+            line("import com.google.gson.stream.JsonWriter;");
+            line("");
+            line("import java.io.IOException;");
+            line("");
+            if (instantiable) {
+                open("public final class " + codecName + " extends TypeAdapter<" + typeName + ">");
+                line("public static final " + codecName + " INSTANCE = new " + codecName + "();");
+                line("");
+            } else {
+                open("public final class " + codecName);
+            }
+            open("private " + codecName + "()");
+            close();
+            line("");
+
+            open("public static void writeTo(" + typeName + " object, JsonWriter writer) throws IOException");
+            line("writer.beginObject();");
+            for (Property property : properties) {
+                site = property.site;
+                String expression = property.expression();
+                boolean nullable = !property.type.getKind().isPrimitive();
+                if (nullable) {
+                    open("if (" + expression + " != null)");
+                }
+                line("writer.name(" + literal(property.name) + ");");
+                writeValue(property.type, expression);
+                if (nullable) {
+                    close();
+                }
+            }
+            line("writer.endObject();");
+            close();
+            line("");
+
+            open("public static void loadFrom(" + typeName + " object, JsonReader reader) throws IOException");
+            line("reader.beginObject();");
+            open("while (reader.hasNext())");
+            open("switch (reader.nextName())");
+            for (Property property : properties) {
+                site = property.site;
+                open("case " + literal(property.name) + ":");
+                String variable = readValue(property.type);
+                line(property.expression() + " = " + variable + ";");
+                line("break;");
+                close();
+            }
+            line("default:");
+            line("    reader.skipValue();");
+            close();
+            close();
+            line("reader.endObject();");
+            close();
+
+            if (!instantiable) {
+                close();
+                return out.toString();
+            }
+            line("");
+
+            line("@Override");
+            open("public void write(JsonWriter writer, " + typeName + " value) throws IOException");
+            open("if (value == null)");
+            line("writer.nullValue();");
+            closeOpen("else");
+            line("writeTo(value, writer);");
+            close();
+            close();
+            line("");
+
+            line("@Override");
+            open("public " + typeName + " read(JsonReader reader) throws IOException");
+            open("if (reader.peek() == JsonToken.NULL)");
+            line("reader.nextNull();");
+            line("return null;");
+            close();
+            line(typeName + " result = new " + typeName + "();");
+            line("loadFrom(result, reader);");
+            line("return result;");
+            close();
+            line("");
+            close();
+            return out.toString();
+        }
+
+        /**
+         * Collect the fields that are serialized, which like Gson includes the fields of superclasses after those of the class
+         */
+        private List<Property> collectProperties() throws CodegenException {
+            List<Property> result = new ArrayList<>();
+            Set<String> names = new HashSet<>();
+            DeclaredType declaredType = (DeclaredType) type.asType();
+            for (DeclaredType owner = declaredType; owner != null; owner = superclass(owner)) {
+                TypeElement ownerElement = (TypeElement) owner.asElement();
+                boolean inherited = owner != declaredType;
+                boolean samePackage = elements.getPackageOf(ownerElement).equals(elements.getPackageOf(type));
+                for (VariableElement field : ElementFilter.fieldsIn(ownerElement.getEnclosedElements())) {
+                    Set<Modifier> modifiers = field.getModifiers();
+                    if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                        continue;
+                    }
+
+                    // the field of a superclass might not be in the sources that are compiled
+                    Element errorSite = inherited ? type : field;
+                    String description = inherited ? "Inherited field " + ownerElement.getQualifiedName() + "." + field.getSimpleName() : "Field " + field.getSimpleName();
+                    if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)) {
+                        throw new CodegenException(errorSite, description + " can't be private or final. Make the field transient to exclude it.");
+                    }
+                    if (!samePackage && !modifiers.contains(Modifier.PUBLIC)) {
+                        throw new CodegenException(errorSite, description + " must be public, because it is in another package. Make the field transient to exclude it.");
+                    }
+
+                    JsonName annotation = field.getAnnotation(JsonName.class);
+                    String name = annotation == null ? field.getSimpleName().toString() : annotation.value();
+                    if (!names.add(name)) {
+                        throw new CodegenException(errorSite, "Duplicate JSON name: " + name);
+                    }
+                    // a superclass field is accessed through a cast, in case a subclass field hides it
+                    String access = inherited ? "((" + owner + ") object)" : "object";
+                    result.add(new Property(errorSite, field, name, types.asMemberOf(declaredType, field), access));
+                }
+            }
+            return result;
+        }
+
+        private DeclaredType superclass(DeclaredType type) {
+            for (TypeMirror supertype : types.directSupertypes(type)) {
+                if (supertype.getKind() == TypeKind.DECLARED && ((DeclaredType) supertype).asElement().getKind() == ElementKind.CLASS) {
+                    return qualifiedName(supertype).equals("java.lang.Object") ? null : (DeclaredType) supertype;
+                }
+            }
+            return null;
+        }
+
+        private void writeValue(TypeMirror type, String expression) throws CodegenException {
+            switch (type.getKind()) {
+                case BOOLEAN:
+                case BYTE:
+                case SHORT:
+                case INT:
+                case LONG:
+                case DOUBLE:
+                    line("writer.value(" + expression + ");");
+                    return;
+                case FLOAT:
+                    // written as a Number, such that it isn't widened to a double with a long fraction
+                    line("writer.value(Float.valueOf(" + expression + "));");
+                    return;
+                case CHAR:
+                    line("writer.value(String.valueOf(" + expression + "));");
+                    return;
+                case DECLARED:
+                    break;
+                default:
+                    throw unsupported(type);
+            }
+
+            String qualifiedName = qualifiedName(type);
+            switch (qualifiedName) {
+                case "java.lang.String":
+                    line("writer.value(" + expression + ");");
+                    return;
+                case "java.lang.Boolean":
+                    line("writer.value(" + expression + ".booleanValue());");
+                    return;
+                case "java.lang.Byte":
+                case "java.lang.Short":
+                case "java.lang.Integer":
+                case "java.lang.Long":
+                    line("writer.value(" + expression + ".longValue());");
+                    return;
+                case "java.lang.Double":
+                    line("writer.value(" + expression + ".doubleValue());");
+                    return;
+                case "java.lang.Float":
+                    line("writer.value((Number) " + expression + ");");
+                    return;
+                case "java.lang.Character":
+                    line("writer.value(String.valueOf(" + expression + ".charValue()));");
+                    return;
+            }
+
+            TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+            if (element.getKind() == ElementKind.ENUM) {
+                line("writer.value(" + expression + ".name());");
+            } else if (element.getAnnotation(JsonCodec.class) != null) {
+                line(qualifiedCodecName(element) + ".writeTo(" + expression + ", writer);");
+            } else if (isSubtype(type, JSON_LOADABLE)) {
+                line(expression + ".writeTo(writer);");
+            } else if (isSubtype(type, "java.util.Map")) {
+                List<TypeMirror> arguments = typeArguments(type, "java.util.Map");
+                checkStringKeys(arguments.get(0));
+                String entry = variable("entry");
+                line("writer.beginObject();");
+                open("for (java.util.Map.Entry<String, " + arguments.get(1) + "> " + entry + " : " + expression + ".entrySet())");
+                line("writer.name(" + entry + ".getKey());");
+                writeNullable(arguments.get(1), entry + ".getValue()");
+                close();
+                line("writer.endObject();");
+            } else if (isSubtype(type, "java.util.Collection")) {
+                TypeMirror elementType = typeArguments(type, "java.util.Collection").get(0);
+                String value = variable("element");
+                line("writer.beginArray();");
+                open("for (" + elementType + " " + value + " : " + expression + ")");
+                writeNullable(elementType, value);
+                close();
+                line("writer.endArray();");
+            } else {
+                throw unsupported(type);
+            }
+        }
+
+        private void writeNullable(TypeMirror type, String expression) throws CodegenException {
+            String value = variable("value");
+            line(type + " " + value + " = " + expression + ";");
+            open("if (" + value + " == null)");
+            line("writer.nullValue();");
+            closeOpen("else");
+            writeValue(type, value);
+            close();
+        }
+
+        /**
+         * Generate the statements that read a value of the type
+         *
+         * @return the name of the variable that holds the value
+         */
+        private String readValue(TypeMirror type) throws CodegenException {
+            String variable = variable("value");
+            switch (type.getKind()) {
+                case BOOLEAN:
+                    line("boolean " + variable + " = reader.nextBoolean();");
+                    return variable;
+                case BYTE:
+                case SHORT:
+                    line(type + " " + variable + " = (" + type + ") reader.nextInt();");
+                    return variable;
+                case INT:
+                    line("int " + variable + " = reader.nextInt();");
+                    return variable;
+                case LONG:
+                    line("long " + variable + " = reader.nextLong();");
+                    return variable;
+                case FLOAT:
+                    line("float " + variable + " = (float) reader.nextDouble();");
+                    return variable;
+                case DOUBLE:
+                    line("double " + variable + " = reader.nextDouble();");
+                    return variable;
+                case CHAR:
+                    line("char " + variable + " = reader.nextString().charAt(0);");
+                    return variable;
+                case DECLARED:
+                    break;
+                default:
+                    throw unsupported(type);
+            }
+
+            line(type + " " + variable + ";");
+            open("if (reader.peek() == JsonToken.NULL)");
+            line("reader.nextNull();");
+            line(variable + " = null;");
+            closeOpen("else");
+
+            String qualifiedName = qualifiedName(type);
+            switch (qualifiedName) {
+                case "java.lang.String":
+                    line(variable + " = reader.nextString();");
+                    break;
+                case "java.lang.Boolean":
+                    line(variable + " = reader.nextBoolean();");
+                    break;
+                case "java.lang.Byte":
+                    line(variable + " = (byte) reader.nextInt();");
+                    break;
+                case "java.lang.Short":
+                    line(variable + " = (short) reader.nextInt();");
+                    break;
+                case "java.lang.Integer":
+                    line(variable + " = reader.nextInt();");
+                    break;
+                case "java.lang.Long":
+                    line(variable + " = reader.nextLong();");
+                    break;
+                case "java.lang.Float":
+                    line(variable + " = (float) reader.nextDouble();");
+                    break;
+                case "java.lang.Double":
+                    line(variable + " = reader.nextDouble();");
+                    break;
+                case "java.lang.Character":
+                    line(variable + " = reader.nextString().charAt(0);");
+                    break;
+                default:
+                    readObject(type, variable);
+                    break;
+            }
+
+            close();
+            return variable;
+        }
+
+        private void readObject(TypeMirror type, String variable) throws CodegenException {
+            TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+            if (element.getKind() == ElementKind.ENUM) {
+                // like Gson, unknown constants are read as null
+                String name = variable("name");
+                line("String " + name + " = reader.nextString();");
+                open("try");
+                line(variable + " = " + type + ".valueOf(" + name + ");");
+                closeOpen("catch (IllegalArgumentException " + variable("ex") + ")");
+                line(variable + " = null;");
+                close();
+            } else if (element.getAnnotation(JsonCodec.class) != null) {
+                requireInstantiable(element);
+                line(variable + " = " + qualifiedCodecName(element) + ".INSTANCE.read(reader);");
+            } else if (isSubtype(type, JSON_LOADABLE)) {
+                requireInstantiable(element);
+                line(variable + " = new " + type + "();");
+                line(variable + ".loadFrom(reader);");
+            } else if (isSubtype(type, "java.util.Map")) {
+                List<TypeMirror> arguments = typeArguments(type, "java.util.Map");
+                checkStringKeys(arguments.get(0));
+                line(variable + " = new " + implementation(type, MAP_TYPES) + "<>();");
+                line("reader.beginObject();");
+                open("while (reader.hasNext())");
+                String key = variable("key");
+                line("String " + key + " = reader.nextName();");
+                String value = readValue(arguments.get(1));
+                line(variable + ".put(" + key + ", " + value + ");");
+                close();
+                line("reader.endObject();");
+            } else if (isSubtype(type, "java.util.Collection")) {
+                TypeMirror elementType = typeArguments(type, "java.util.Collection").get(0);
+                line(variable + " = new " + implementation(type, COLLECTION_TYPES) + "<>();");
+                line("reader.beginArray();");
+                open("while (reader.hasNext())");
+                String value = readValue(elementType);
+                line(variable + ".add(" + value + ");");
+                close();
+                line("reader.endArray();");
+            } else {
+                throw unsupported(type);
+            }
+        }
+
+        private void requireInstantiable(TypeElement element) throws CodegenException {
+            if (!isInstantiable(element)) {
+                throw new CodegenException(site, element.getQualifiedName() + " needs a constructor without parameters that isn't private");
+            }
+        }
+
+        private void checkStringKeys(TypeMirror keyType) throws CodegenException {
+            if (keyType.getKind() != TypeKind.DECLARED || !qualifiedName(keyType).equals("java.lang.String")) {
+                throw new CodegenException(site, "Maps must have String keys, but has " + keyType);
+            }
+        }
+
+        /**
+         * @return the type arguments of the supertype of the type with the qualified name
+         */
+        private List<TypeMirror> typeArguments(TypeMirror type, String qualifiedName) throws CodegenException {
+            Deque<TypeMirror> queue = new ArrayDeque<>();
+            queue.add(type);
+            while (!queue.isEmpty()) {
+                DeclaredType current = (DeclaredType) queue.poll();
+                if (qualifiedName(current).equals(qualifiedName)) {
+                    List<TypeMirror> result = new ArrayList<>(current.getTypeArguments());
+                    if (result.isEmpty()) {
+                        throw new CodegenException(site, "Raw types aren't supported: " + type);
+                    }
+                    for (TypeMirror argument : result) {
+                        if (argument.getKind() != TypeKind.DECLARED) {
+                            throw new CodegenException(site, "Type arguments must be classes, but " + type + " has " + argument);
+                        }
+                    }
+                    return result;
+                }
+                for (TypeMirror supertype : types.directSupertypes(current)) {
+                    if (supertype.getKind() == TypeKind.DECLARED) {
+                        queue.add(supertype);
+                    }
+                }
+            }
+            throw unsupported(type);
+        }
+
+        /**
+         * @return the class that is instantiated for the collection or map type
+         */
+        private String implementation(TypeMirror type, String[] candidates) throws CodegenException {
+            TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+            if (element.getKind() == ElementKind.CLASS && isInstantiable(element)) {
+                return element.getQualifiedName().toString();
+            }
+            for (String candidate : candidates) {
+                if (isSubtype(elements.getTypeElement(candidate).asType(), qualifiedName(type))) {
+                    return candidate;
+                }
+            }
+            throw new CodegenException(site, "No implementation of " + type + " is known");
+        }
+
+        private CodegenException unsupported(TypeMirror type) {
+            return new CodegenException(site, "Unsupported type: " + type);
+        }
+
+        private String variable(String name) {
+            return name + variables++;
+        }
+
+        private void line(String line) {
+            if (!line.isEmpty()) {
+                for (int i = 0; i < indent; i++) {
+                    out.append("    ");
+                }
+            }
+            out.append(line).append('\n');
+        }
+
+        private void open(String line) {
+            line(line + " {");
+            indent++;
+        }
+
+        private void close() {
+            indent--;
+            line("}");
+        }
+
+        private void closeOpen(String line) {
+            indent--;
+            line("} " + line + " {");
+            indent++;
+        }
+    }
+
+    private static String literal(String value) {
+        StringBuilder result = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    result.append("\\\"");
+                    break;
+                case '\\':
+                    result.append("\\\\");
+                    break;
+                case '\n':
+                    result.append("\\n");
+                    break;
+                case '\r':
+                    result.append("\\r");
+                    break;
+                case '\t':
+                    result.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        result.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        result.append(c);
+                    }
+            }
+        }
+        return result.append('"').toString();
+    }
+
+}
@@ -0,0 +1,26 @@
+package io.dico.dicore.codegen;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a codec for the annotated class at compile time, named after the class with a {@code Codec} suffix.
+ * The codec is a Gson {@code TypeAdapter} with static {@code writeTo(object, writer)} and {@code loadFrom(object, reader)} methods,
+ * which {@code JsonLoadable} implementations can delegate to.
+ * <p>
+ * Like Gson, the codec serializes the fields of the class and its superclasses that aren't static or transient.
+ * They can't be private or final, and inherited fields from another package must be public.
+ * Supported field types are primitives and their wrappers, strings, enums, classes with a generated codec,
+ * {@code JsonLoadable} implementations, collections, and maps with string keys of any of these.
+ * <p>
+ * The codec is only a {@code TypeAdapter} if the class has a constructor without parameters that isn't private.
+ * Otherwise, only the static methods are generated, and fields of the class in other codecs are compilation errors.
+ *
+ * @see JsonName
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface JsonCodec {
+}
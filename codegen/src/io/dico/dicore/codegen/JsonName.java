@@ -0,0 +1,17 @@
+package io.dico.dicore.codegen;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The name of a field in the JSON written by a {@link JsonCodec}. The name of the field is used by default.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface JsonName {
+    
+    String value();
+    
+}
@@ -0,0 +1,381 @@
+package io.dico.dicore.codegen;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.tools.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+public class CodecProcessorTest {
+    private final List<File> outputs = new ArrayList<>();
+
+    private static final class Source extends SimpleJavaFileObject {
+        private final String code;
+
+        Source(String className, String code) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return code;
+        }
+    }
+
+    private static final class Compilation {
+        final boolean success;
+        final List<String> errors = new ArrayList<>();
+        final ClassLoader loader;
+
+        Compilation(boolean success, DiagnosticCollector<JavaFileObject> diagnostics, ClassLoader loader) {
+            this.success = success;
+            this.loader = loader;
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                    errors.add(diagnostic.getMessage(Locale.ROOT));
+                }
+            }
+        }
+
+        boolean hasError(String fragment) {
+            for (String error : errors) {
+                if (error.contains(fragment)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Compile the sources with the processor
+     *
+     * @param sources the class names and sources
+     * @return the result, with a class loader of the compiled classes
+     */
+    private Compilation compile(String... sources) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assert.assertNotNull("Tests must run on a JDK", compiler);
+
+        File output = Files.createTempDirectory("codegen").toFile();
+        outputs.add(output);
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8);
+        fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(output));
+        fileManager.setLocation(StandardLocation.SOURCE_OUTPUT, Collections.singletonList(output));
+
+        List<JavaFileObject> units = new ArrayList<>();
+        for (int i = 0; i < sources.length; i += 2) {
+            units.add(new Source(sources[i], sources[i + 1]));
+        }
+        List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"));
+        JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null, units);
+        task.setProcessors(Collections.singletonList(new CodecProcessor()));
+        boolean success = task.call();
+        fileManager.close();
+
+        ClassLoader loader = new URLClassLoader(new URL[]{output.toURI().toURL()}, CodecProcessorTest.class.getClassLoader());
+        return new Compilation(success, diagnostics, loader);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @After
+    public void deleteOutputs() {
+        for (File output : outputs) {
+            delete(output);
+        }
+        outputs.clear();
+    }
+
+    private static Field field(Class<?> type, String name) throws NoSuchFieldException {
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            try {
+                Field result = current.getDeclaredField(name);
+                result.setAccessible(true);
+                return result;
+            } catch (NoSuchFieldException ignored) {
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+
+    private static void set(Object object, String name, Object value) throws ReflectiveOperationException {
+        field(object.getClass(), name).set(object, value);
+    }
+
+    private static Object get(Object object, String name) throws ReflectiveOperationException {
+        return field(object.getClass(), name).get(object);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static TypeAdapter<Object> codec(Compilation compilation, String className) throws ReflectiveOperationException {
+        return (TypeAdapter<Object>) compilation.loader.loadClass(className).getField("INSTANCE").get(null);
+    }
+
+    private static final String[] SAMPLE = {
+            "sample.Base", "package sample;\n" +
+            "public class Base<T> {\n" +
+            "    public T label;\n" +
+            "    int id;\n" +
+            "}\n",
+
+            "sample.Color", "package sample;\n" +
+            "public enum Color { RED, GREEN }\n",
+
+            "sample.Point", "package sample;\n" +
+            "@io.dico.dicore.codegen.JsonCodec\n" +
+            "public class Point {\n" +
+            "    public int x;\n" +
+            "    public int y;\n" +
+            "}\n",
+
+            "sample.Sample", "package sample;\n" +
+            "import io.dico.dicore.codegen.*;\n" +
+            "import java.util.*;\n" +
+            "@JsonCodec\n" +
+            "public class Sample extends Base<String> {\n" +
+            "    public String name;\n" +
+            "    @JsonName(\"lvl\") int level;\n" +
+            "    double ratio;\n" +
+            "    float speed;\n" +
+            "    Boolean flag;\n" +
+            "    char letter;\n" +
+            "    transient int ignored;\n" +
+            "    static int counter;\n" +
+            "    Color color;\n" +
+            "    Point point;\n" +
+            "    List<String> tags;\n" +
+            "    Set<Color> colors;\n" +
+            "    Map<String, List<Point>> paths;\n" +
+            "    Long missing;\n" +
+            "}\n",
+    };
+
+    @Test
+    public void testCodec_roundTrip() throws Exception {
+        Compilation compilation = compile(SAMPLE);
+        Assert.assertTrue(compilation.errors.toString(), compilation.success);
+
+        ClassLoader loader = compilation.loader;
+        Class<?> pointClass = loader.loadClass("sample.Point");
+        Class<?> colorClass = loader.loadClass("sample.Color");
+        Object red = colorClass.getField("RED").get(null);
+        Object green = colorClass.getField("GREEN").get(null);
+
+        Object point = pointClass.newInstance();
+        set(point, "x", 1);
+        set(point, "y", -2);
+        Object sample = loader.loadClass("sample.Sample").newInstance();
+        set(sample, "name", "dico");
+        set(sample, "level", 3);
+        set(sample, "ratio", 0.25);
+        set(sample, "speed", 1.5F);
+        set(sample, "flag", Boolean.TRUE);
+        set(sample, "letter", 'q');
+        set(sample, "ignored", 7);
+        set(sample, "color", green);
+        set(sample, "point", point);
+        set(sample, "tags", Arrays.asList("a", null, "c"));
+        set(sample, "colors", new LinkedHashSet<>(Arrays.asList(red, green)));
+        set(sample, "paths", Collections.singletonMap("home", Collections.singletonList(point)));
+        set(sample, "label", "inherited");
+        set(sample, "id", 42);
+
+        String json = codec(compilation, "sample.SampleCodec").toJson(sample);
+        Assert.assertEquals("{\"name\":\"dico\",\"lvl\":3,\"ratio\":0.25,\"speed\":1.5,\"flag\":true,\"letter\":\"q\",\"color\":\"GREEN\"," +
+                "\"point\":{\"x\":1,\"y\":-2},\"tags\":[\"a\",null,\"c\"],\"colors\":[\"RED\",\"GREEN\"]," +
+                "\"paths\":{\"home\":[{\"x\":1,\"y\":-2}]},\"label\":\"inherited\",\"id\":42}", json);
+
+        Object result = codec(compilation, "sample.SampleCodec").fromJson(json.replace("{\"name\"", "{\"unknown\":[1,{}],\"name\""));
+        Assert.assertEquals("dico", get(result, "name"));
+        Assert.assertEquals(3, get(result, "level"));
+        Assert.assertEquals(0.25, get(result, "ratio"));
+        Assert.assertEquals(1.5F, get(result, "speed"));
+        Assert.assertEquals(Boolean.TRUE, get(result, "flag"));
+        Assert.assertEquals('q', get(result, "letter"));
+        Assert.assertEquals(0, get(result, "ignored"));
+        Assert.assertEquals(green, get(result, "color"));
+        Assert.assertEquals(Arrays.asList("a", null, "c"), get(result, "tags"));
+        Assert.assertEquals(new LinkedHashSet<>(Arrays.asList(red, green)), get(result, "colors"));
+        Assert.assertNull(get(result, "missing"));
+        Assert.assertEquals("inherited", get(result, "label"));
+        Assert.assertEquals(42, get(result, "id"));
+
+        Object resultPoint = get(result, "point");
+        Assert.assertEquals(-2, get(resultPoint, "y"));
+        Map<?, ?> paths = (Map<?, ?>) get(result, "paths");
+        Assert.assertEquals(1, paths.size());
+        Assert.assertEquals(1, get(((List<?>) paths.get("home")).get(0), "x"));
+
+        // unknown enum constants are read as null, like Gson
+        Object unknownColor = codec(compilation, "sample.SampleCodec").fromJson("{\"color\":\"BLUE\",\"lvl\":4}");
+        Assert.assertNull(get(unknownColor, "color"));
+        Assert.assertEquals(4, get(unknownColor, "level"));
+    }
+
+    @Test
+    public void testCodec_notInstantiable() throws Exception {
+        String[] shape = {
+                "sample.Shape", "package sample;\n" +
+                "@io.dico.dicore.codegen.JsonCodec\n" +
+                "public abstract class Shape {\n" +
+                "    public int sides;\n" +
+                "}\n",
+        };
+
+        Compilation compilation = compile(shape);
+        Assert.assertTrue(compilation.errors.toString(), compilation.success);
+        Class<?> codec = compilation.loader.loadClass("sample.ShapeCodec");
+        Assert.assertFalse(TypeAdapter.class.isAssignableFrom(codec));
+        Method writeTo = codec.getMethod("writeTo", compilation.loader.loadClass("sample.Shape"), JsonWriter.class);
+        Assert.assertNotNull(writeTo);
+
+        // the codec can't be registered with Gson, because it isn't a TypeAdapter
+        compilation = compile(shape[0], shape[1],
+                "sample.Use", "package sample;\n" +
+                "class Use {\n" +
+                "    Object adapter = ShapeCodec.INSTANCE;\n" +
+                "}\n");
+        Assert.assertFalse(compilation.success);
+        Assert.assertTrue(compilation.errors.toString(), compilation.hasError("INSTANCE"));
+
+        // nor can another codec read it
+        compilation = compile(shape[0], shape[1],
+                "sample.Holder", "package sample;\n" +
+                "@io.dico.dicore.codegen.JsonCodec\n" +
+                "public class Holder {\n" +
+                "    Shape shape;\n" +
+                "}\n");
+        Assert.assertFalse(compilation.success);
+        Assert.assertTrue(compilation.errors.toString(), compilation.hasError("sample.Shape needs a constructor without parameters"));
+    }
+
+    @Test
+    public void testCodec_inaccessibleInheritedFields() throws Exception {
+        Compilation compilation = compile(
+                "base.Base", "package base;\n" +
+                "public class Base {\n" +
+                "    int hidden;\n" +
+                "}\n",
+
+                "sample.Derived", "package sample;\n" +
+                "@io.dico.dicore.codegen.JsonCodec\n" +
+                "public class Derived extends base.Base {\n" +
+                "    public int value;\n" +
+                "}\n");
+        Assert.assertFalse(compilation.success);
+        Assert.assertTrue(compilation.errors.toString(), compilation.hasError("Inherited field base.Base.hidden must be public"));
+
+        compilation = compile(
+                "sample.Base", "package sample;\n" +
+                "public class Base {\n" +
+                "    private int secret;\n" +
+                "}\n",
+
+                "sample.Derived", "package sample;\n" +
+                "@io.dico.dicore.codegen.JsonCodec\n" +
+                "public class Derived extends Base {\n" +
+                "    public int value;\n" +
+                "}\n");
+        Assert.assertFalse(compilation.success);
+        Assert.assertTrue(compilation.errors.toString(), compilation.hasError("Inherited field sample.Base.secret can't be private"));
+    }
+
+    @Test
+    public void testCodec_jsonLoadable() throws Exception {
+        Compilation compilation = compile(
+                // the interface of the core module, which isn't a dependency of the processor
+                "io.dico.dicore.serialization.JsonLoadable", "package io.dico.dicore.serialization;\n" +
+                "public interface JsonLoadable {\n" +
+                "    void writeTo(com.google.gson.stream.JsonWriter writer) throws java.io.IOException;\n" +
+                "    void loadFrom(com.google.gson.stream.JsonReader reader) throws java.io.IOException;\n" +
+                "}\n",
+
+                "sample.Tag", "package sample;\n" +
+                "import com.google.gson.stream.*;\n" +
+                "public class Tag implements io.dico.dicore.serialization.JsonLoadable {\n" +
+                "    public String value;\n" +
+                "    public void writeTo(JsonWriter writer) throws java.io.IOException {\n" +
+                "        writer.value(\"#\" + value);\n" +
+                "    }\n" +
+                "    public void loadFrom(JsonReader reader) throws java.io.IOException {\n" +
+                "        value = reader.nextString().substring(1);\n" +
+                "    }\n" +
+                "}\n",
+
+                // a JsonLoadable implementation that delegates to its generated codec
+                "sample.Settings", "package sample;\n" +
+                "import com.google.gson.stream.*;\n" +
+                "@io.dico.dicore.codegen.JsonCodec\n" +
+                "public class Settings implements io.dico.dicore.serialization.JsonLoadable {\n" +
+                "    public int volume;\n" +
+                "    public Tag tag;\n" +
+                "    public java.util.List<Tag> tags;\n" +
+                "    public java.util.Map<String, Tag> byName;\n" +
+                "    public void writeTo(JsonWriter writer) throws java.io.IOException {\n" +
+                "        SettingsCodec.writeTo(this, writer);\n" +
+                "    }\n" +
+                "    public void loadFrom(JsonReader reader) throws java.io.IOException {\n" +
+                "        SettingsCodec.loadFrom(this, reader);\n" +
+                "    }\n" +
+                "}\n");
+        Assert.assertTrue(compilation.errors.toString(), compilation.success);
+
+        ClassLoader loader = compilation.loader;
+        Class<?> tagClass = loader.loadClass("sample.Tag");
+        Object first = tagClass.newInstance();
+        set(first, "value", "first");
+        Object second = tagClass.newInstance();
+        set(second, "value", "second");
+        Object settings = loader.loadClass("sample.Settings").newInstance();
+        set(settings, "volume", 7);
+        set(settings, "tag", first);
+        set(settings, "tags", Arrays.asList(first, null, second));
+        set(settings, "byName", Collections.singletonMap("key", second));
+
+        StringWriter out = new StringWriter();
+        JsonWriter writer = new JsonWriter(out);
+        settings.getClass().getMethod("writeTo", JsonWriter.class).invoke(settings, writer);
+        writer.flush();
+        String json = out.toString();
+        Assert.assertEquals("{\"volume\":7,\"tag\":\"#first\",\"tags\":[\"#first\",null,\"#second\"],\"byName\":{\"key\":\"#second\"}}", json);
+        Assert.assertEquals(json, codec(compilation, "sample.SettingsCodec").toJson(settings));
+
+        Object result = loader.loadClass("sample.Settings").newInstance();
+        result.getClass().getMethod("loadFrom", JsonReader.class).invoke(result, new JsonReader(new StringReader(json)));
+        Assert.assertEquals(7, get(result, "volume"));
+        Assert.assertEquals("first", get(get(result, "tag"), "value"));
+        List<?> tags = (List<?>) get(result, "tags");
+        Assert.assertEquals(3, tags.size());
+        Assert.assertEquals("first", get(tags.get(0), "value"));
+        Assert.assertNull(tags.get(1));
+        Assert.assertEquals("second", get(tags.get(2), "value"));
+        Assert.assertEquals("second", get(((Map<?, ?>) get(result, "byName")).get("key"), "value"));
+    }
+
+}
@@ -0,0 +1,181 @@
+package io.dico.dicore;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import io.dico.dicore.task.TimingWheel;
+import org.bukkit.entity.Player;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps track of cooldowns per player and action.
+ * <p>
+ * Every online player that has acquired a cooldown is assigned a slot, and every action is assigned an id
+ * by {@link #registerAction(String, long)}. The expiry ticks are stored in a single primitive array indexed by
+ * (slot, action id), so checking and acquiring a cooldown doesn't allocate or box anything.
+ * A player's slot is released when the player leaves the server.
+ * <p>
+ * Ticks are read from the given clock, for instance {@link TimingWheel#getCurrentTick()}.
+ * This class is not thread safe.
+ */
+public class CooldownRegistry {
+    private static final int NO_SLOT = -1;
+
+    private final LongSupplier clock;
+    private final TObjectIntMap<UUID> slots = new TObjectIntHashMap<>(64, .5F, NO_SLOT);
+    private final TObjectIntMap<String> actionIds = new TObjectIntHashMap<>(16, .5F, -1);
+    private final TIntArrayList freeSlots = new TIntArrayList();
+    private long[] durations = new long[8];
+    private long[] expiries;
+    private int actionCount;
+    private int stride = 8;
+    private int slotCount;
+
+    public CooldownRegistry(Registrator registrator, LongSupplier clock) {
+        this.clock = Objects.requireNonNull(clock);
+        expiries = new long[stride * 16];
+        registrator.registerPlayerQuitListener(event -> release(event.getPlayer().getUniqueId()));
+    }
+
+    public CooldownRegistry(Registrator registrator, TimingWheel timingWheel) {
+        this(registrator, timingWheel::getCurrentTick);
+    }
+
+    /**
+     * Register an action, or change the cooldown of an action that was registered before.
+     *
+     * @param name          the name of the action
+     * @param cooldownTicks the default cooldown of the action in ticks
+     * @return the action id
+     */
+    public int registerAction(String name, long cooldownTicks) {
+        int id = actionIds.get(name);
+        if (id == -1) {
+            id = actionCount++;
+            actionIds.put(name, id);
+            if (id == stride) {
+                growStride();
+            }
+            if (id == durations.length) {
+                durations = Arrays.copyOf(durations, stride);
+            }
+        }
+        durations[id] = cooldownTicks;
+        return id;
+    }
+
+    /**
+     * @param name the name of the action
+     * @return the action id, or -1 if no action was registered with the name
+     */
+    public int getActionId(String name) {
+        return actionIds.get(name);
+    }
+
+    public boolean tryAcquire(Player player, int action) {
+        return tryAcquire(player.getUniqueId(), action);
+    }
+
+    public boolean tryAcquire(UUID player, int action) {
+        return tryAcquire(player, action, durations[checkAction(action)]);
+    }
+
+    /**
+     * Acquires the cooldown of the action if it isn't active
+     *
+     * @param player        the player
+     * @param action        the action id
+     * @param cooldownTicks the cooldown to apply if acquired
+     * @return true if the cooldown was not active and has been acquired
+     */
+    public boolean tryAcquire(UUID player, int action, long cooldownTicks) {
+        checkAction(action);
+        long now = clock.getAsLong();
+        int index = slotOf(player) * stride + action;
+        if (expiries[index] > now) {
+            return false;
+        }
+        expiries[index] = now + cooldownTicks;
+        return true;
+    }
+
+    public boolean isActive(UUID player, int action) {
+        return getRemainingTicks(player, action) > 0;
+    }
+
+    /**
+     * @param player the player
+     * @param action the action id
+     * @return the amount of ticks until the cooldown expires, or 0 if it is not active
+     */
+    public long getRemainingTicks(UUID player, int action) {
+        checkAction(action);
+        int slot = slots.get(player);
+        if (slot == NO_SLOT) {
+            return 0;
+        }
+        return Math.max(0, expiries[slot * stride + action] - clock.getAsLong());
+    }
+
+    public void reset(UUID player, int action) {
+        checkAction(action);
+        int slot = slots.get(player);
+        if (slot != NO_SLOT) {
+            expiries[slot * stride + action] = 0;
+        }
+    }
+
+    /**
+     * Clears all cooldowns of the player and frees its slot.
+     * This is called automatically when the player leaves the server.
+     *
+     * @param player the player
+     */
+    public void release(UUID player) {
+        int slot = slots.remove(player);
+        if (slot != NO_SLOT) {
+            int from = slot * stride;
+            Arrays.fill(expiries, from, from + stride, 0);
+            freeSlots.add(slot);
+        }
+    }
+
+    private int checkAction(int action) {
+        if (action < 0 || action >= actionCount) {
+            throw new IllegalArgumentException("Unknown action id: " + action);
+        }
+        return action;
+    }
+
+    private int slotOf(UUID player) {
+        int slot = slots.get(player);
+        if (slot == NO_SLOT) {
+            if (freeSlots.isEmpty()) {
+                slot = slotCount++;
+                int required = slotCount * stride;
+                if (required > expiries.length) {
+                    expiries = Arrays.copyOf(expiries, Math.max(required, expiries.length * 2));
+                }
+            } else {
+                slot = freeSlots.removeAt(freeSlots.size() - 1);
+            }
+            slots.put(player, slot);
+        }
+        return slot;
+    }
+
+    private void growStride() {
+        int newStride = stride * 2;
+        long[] result = new long[Math.max(slotCount, 16) * newStride];
+        for (int slot = 0; slot < slotCount; slot++) {
+            System.arraycopy(expiries, slot * stride, result, slot * newStride, stride);
+        }
+        expiries = result;
+        stride = newStride;
+    }
+
+}
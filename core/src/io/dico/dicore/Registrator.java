@@ -236,6 +236,41 @@ public final class Registrator {
         return Collections.unmodifiableList(registrations);
     }
 
+    /**
+     * Unregister and forget all listeners registered by this {@link Registrator}.
+     * Listener handles made by this registrator are not affected.
+     * The registrator remains usable afterwards.
+     */
+    public void unregisterAll() {
+        unregisterAllListeners();
+        registrations.clear();
+    }
+
+    /**
+     * Unregister and forget all listeners registered by this {@link Registrator}, as well as the listeners it uses to follow
+     * the plugin being enabled and disabled, such that nothing registered with bukkit references this registrator anymore.
+     * The registrator must not be used afterwards.
+     */
+    public void dispose() {
+        if (this == instance) {
+            throw new IllegalStateException("You may not dispose the universal Registrator instance");
+        }
+        unregisterAll();
+        setPluginListenerRegisteredStates(false, false);
+        pluginEnableListener = pluginDisableListener = null;
+        enabled = false;
+    }
+
+    /**
+     * Forget the cached handler lists of the event classes defined by the class loader, such that it can be garbage collected.
+     * This should be called after the class loader of a module jar or plugin is closed.
+     *
+     * @param classLoader the class loader
+     */
+    public static void evictEventClasses(ClassLoader classLoader) {
+        handlerListCache.keySet().removeIf(eventClass -> eventClass.getClassLoader() == classLoader);
+    }
+
     /**
      * Make a new listener handle for the given event type.
      * The returned listener handle is not managed by this {@link Registrator}, and you must register it yourself.
@@ -1,25 +1,39 @@
 package io.dico.dicore;
 
+import io.dico.dicore.task.scheduler.ScheduledTask;
+import io.dico.dicore.task.scheduler.TaskScheduler;
 import org.bukkit.plugin.Plugin;
-import org.bukkit.scheduler.BukkitTask;
 
 public abstract class TickTask {
     private final Plugin plugin;
-    private BukkitTask task;
+    private TaskScheduler scheduler;
+    private ScheduledTask task;
     
     public TickTask(Plugin plugin) {
         this.plugin = plugin;
     }
     
+    public TickTask(TaskScheduler scheduler) {
+        this.plugin = scheduler.getPlugin();
+        this.scheduler = scheduler;
+    }
+    
     protected abstract void tick();
     
+    protected TaskScheduler getScheduler() {
+        if (scheduler == null) {
+            scheduler = TaskScheduler.of(plugin);
+        }
+        return scheduler;
+    }
+    
     public void start(int delay, int period) {
         stop();
-        task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::tick, delay, period);
+        task = getScheduler().runTaskTimer(this::tick, delay, period);
     }
     
     public boolean isTicking() {
-        return task != null && plugin.getServer().getScheduler().isCurrentlyRunning(task.getTaskId());
+        return task != null && !task.isDone();
     }
     
     public void stop() {
@@ -0,0 +1,496 @@
+package io.dico.dicore.collection;
+
+import java.util.*;
+
+/**
+ * An immutable hash map that shares structure with the maps it is derived from.
+ * <p>
+ * The map is a hash array mapped trie: a tree of nodes with up to 32 children, indexed by 5 bits of the hash codes of the keys.
+ * {@link #plus(Object, Object)} and {@link #minus(Object)} copy only the path from the root to the changed entry,
+ * which takes O(log32 n) time, and return a new map. The map they are called on is unchanged, such that it is a snapshot
+ * that can be read by other threads without locking or copying.
+ * <p>
+ * Batches of changes are made more cheaply through a {@link Transient}, which changes the nodes it created in place.
+ * <p>
+ * Keys must not be null. Values may be null.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+    private static final Object NOT_FOUND = new Object();
+    private final Node root;
+    private final int size;
+    private Set<Entry<K, V>> entrySet;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    public static <K, V> PersistentHashMap<K, V> copyOf(Map<? extends K, ? extends V> map) {
+        if (map instanceof PersistentHashMap) {
+            @SuppressWarnings("unchecked")
+            PersistentHashMap<K, V> result = (PersistentHashMap<K, V>) map;
+            return result;
+        }
+        return PersistentHashMap.<K, V>empty().plusAll(map);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return root != null && root.find(0, hash(key), key, NOT_FOUND) != NOT_FOUND;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        return root == null ? null : (V) root.find(0, hash(key), key, null);
+    }
+
+    /**
+     * @param key   the key
+     * @param value the value
+     * @return a map with the key mapped to the value, which is this map if it already was
+     */
+    public PersistentHashMap<K, V> plus(K key, V value) {
+        Box added = new Box();
+        Node newRoot = (root == null ? BitmapNode.EMPTY : root).assoc(null, 0, hash(key), key, value, added);
+        return newRoot == root ? this : new PersistentHashMap<>(newRoot, added.value ? size + 1 : size);
+    }
+
+    /**
+     * @param map the entries to add
+     * @return a map with the entries of this map and the map, preferring the values of the map
+     */
+    public PersistentHashMap<K, V> plusAll(Map<? extends K, ? extends V> map) {
+        if (map.isEmpty()) {
+            return this;
+        }
+        Transient<K, V> result = asTransient();
+        for (Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result.persistent();
+    }
+
+    /**
+     * @param key the key
+     * @return a map without the key, which is this map if it didn't contain the key
+     */
+    public PersistentHashMap<K, V> minus(Object key) {
+        if (root == null) {
+            return this;
+        }
+        Box removed = new Box();
+        Node newRoot = root.without(null, 0, hash(key), key, removed);
+        if (!removed.value) {
+            return this;
+        }
+        return newRoot == null ? empty() : new PersistentHashMap<>(newRoot, size - 1);
+    }
+
+    /**
+     * @return a mutable copy of this map, which shares the structure of this map until it is changed
+     */
+    public Transient<K, V> asTransient() {
+        return new Transient<>(root, size);
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        Set<Entry<K, V>> result = entrySet;
+        if (result == null) {
+            entrySet = result = new AbstractSet<Entry<K, V>>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new EntryIterator<>(root);
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return result;
+    }
+
+    private static int hash(Object key) {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int mask(int hash, int shift) {
+        return (hash >>> shift) & 31;
+    }
+
+    private static int bitpos(int hash, int shift) {
+        return 1 << mask(hash, shift);
+    }
+
+    /**
+     * A mutable map that changes the nodes it created in place. It must not be used after {@link #persistent()} is called,
+     * and must not be used by multiple threads at once.
+     */
+    public static final class Transient<K, V> {
+        private Object edit = new Object();
+        private Node root;
+        private int size;
+
+        Transient(Node root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        private void ensureEditable() {
+            if (edit == null) {
+                throw new IllegalStateException("The transient was made persistent");
+            }
+        }
+
+        public int size() {
+            ensureEditable();
+            return size;
+        }
+
+        public boolean containsKey(Object key) {
+            ensureEditable();
+            return root != null && root.find(0, hash(key), key, NOT_FOUND) != NOT_FOUND;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V get(Object key) {
+            ensureEditable();
+            return root == null ? null : (V) root.find(0, hash(key), key, null);
+        }
+
+        public Transient<K, V> put(K key, V value) {
+            ensureEditable();
+            Box added = new Box();
+            root = (root == null ? BitmapNode.EMPTY : root).assoc(edit, 0, hash(key), key, value, added);
+            if (added.value) {
+                size++;
+            }
+            return this;
+        }
+
+        public Transient<K, V> remove(Object key) {
+            ensureEditable();
+            if (root != null) {
+                Box removed = new Box();
+                root = root.without(edit, 0, hash(key), key, removed);
+                if (removed.value) {
+                    size--;
+                }
+            }
+            return this;
+        }
+
+        /**
+         * @return an immutable map with the contents of this map
+         */
+        public PersistentHashMap<K, V> persistent() {
+            ensureEditable();
+            edit = null;
+            return size == 0 ? empty() : new PersistentHashMap<>(root, size);
+        }
+    }
+
+    private static final class Box {
+        boolean value;
+    }
+
+    private static abstract class Node {
+        final Object edit;
+        // pairs of keys and values. A null key means that the value is a child node.
+        Object[] array;
+
+        Node(Object edit, Object[] array) {
+            this.edit = edit;
+            this.array = array;
+        }
+
+        abstract Object find(int shift, int hash, Object key, Object notFound);
+
+        abstract Node assoc(Object edit, int shift, int hash, Object key, Object value, Box added);
+
+        abstract Node without(Object edit, int shift, int hash, Object key, Box removed);
+
+        boolean isEditable(Object edit) {
+            return edit != null && this.edit == edit;
+        }
+    }
+
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(null, 0, new Object[0]);
+        int bitmap;
+
+        BitmapNode(Object edit, int bitmap, Object[] array) {
+            super(edit, array);
+            this.bitmap = bitmap;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key, Object notFound) {
+            int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return notFound;
+            }
+            int index = index(bit);
+            Object k = array[2 * index];
+            Object v = array[2 * index + 1];
+            if (k == null) {
+                return ((Node) v).find(shift + 5, hash, key, notFound);
+            }
+            return key.equals(k) ? v : notFound;
+        }
+
+        @Override
+        Node assoc(Object edit, int shift, int hash, Object key, Object value, Box added) {
+            int bit = bitpos(hash, shift);
+            int index = index(bit);
+
+            if ((bitmap & bit) != 0) {
+                Object k = array[2 * index];
+                Object v = array[2 * index + 1];
+                if (k == null) {
+                    Node child = ((Node) v).assoc(edit, shift + 5, hash, key, value, added);
+                    return child == v ? this : editAndSet(edit, 2 * index + 1, child);
+                }
+                if (key.equals(k)) {
+                    return v == value ? this : editAndSet(edit, 2 * index + 1, value);
+                }
+                added.value = true;
+                Node child = createNode(edit, shift + 5, k, v, hash, key, value);
+                BitmapNode result = editable(edit);
+                result.array[2 * index] = null;
+                result.array[2 * index + 1] = child;
+                return result;
+            }
+
+            added.value = true;
+            int count = Integer.bitCount(bitmap);
+            Object[] newArray = new Object[2 * (count + 1)];
+            System.arraycopy(array, 0, newArray, 0, 2 * index);
+            newArray[2 * index] = key;
+            newArray[2 * index + 1] = value;
+            System.arraycopy(array, 2 * index, newArray, 2 * (index + 1), 2 * (count - index));
+            if (isEditable(edit)) {
+                array = newArray;
+                bitmap |= bit;
+                return this;
+            }
+            return new BitmapNode(edit, bitmap | bit, newArray);
+        }
+
+        @Override
+        Node without(Object edit, int shift, int hash, Object key, Box removed) {
+            int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = index(bit);
+            Object k = array[2 * index];
+            Object v = array[2 * index + 1];
+
+            if (k == null) {
+                Node child = ((Node) v).without(edit, shift + 5, hash, key, removed);
+                if (child == v) {
+                    return this;
+                }
+                if (child != null) {
+                    return editAndSet(edit, 2 * index + 1, child);
+                }
+            } else if (!key.equals(k)) {
+                return this;
+            } else {
+                removed.value = true;
+            }
+
+            if (bitmap == bit) {
+                return null;
+            }
+            int count = Integer.bitCount(bitmap);
+            Object[] newArray = new Object[2 * (count - 1)];
+            System.arraycopy(array, 0, newArray, 0, 2 * index);
+            System.arraycopy(array, 2 * (index + 1), newArray, 2 * index, 2 * (count - index - 1));
+            if (isEditable(edit)) {
+                array = newArray;
+                bitmap ^= bit;
+                return this;
+            }
+            return new BitmapNode(edit, bitmap ^ bit, newArray);
+        }
+
+        private BitmapNode editable(Object edit) {
+            return isEditable(edit) ? this : new BitmapNode(edit, bitmap, array.clone());
+        }
+
+        private BitmapNode editAndSet(Object edit, int index, Object value) {
+            BitmapNode result = editable(edit);
+            result.array[index] = value;
+            return result;
+        }
+
+        private static Node createNode(Object edit, int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+            int hash1 = hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(edit, hash1, new Object[]{key1, value1, key2, value2});
+            }
+            Box added = new Box();
+            return EMPTY.assoc(edit, shift, hash1, key1, value1, added).assoc(edit, shift, hash2, key2, value2, added);
+        }
+    }
+
+    /**
+     * The entries of keys with the same hash code
+     */
+    private static final class CollisionNode extends Node {
+        final int hash;
+
+        CollisionNode(Object edit, int hash, Object[] array) {
+            super(edit, array);
+            this.hash = hash;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key, Object notFound) {
+            int index = indexOf(key);
+            return index == -1 ? notFound : array[index + 1];
+        }
+
+        @Override
+        Node assoc(Object edit, int shift, int hash, Object key, Object value, Box added) {
+            if (hash != this.hash) {
+                // the key goes next to this node in a new level
+                return new BitmapNode(edit, bitpos(this.hash, shift), new Object[]{null, this})
+                        .assoc(edit, shift, hash, key, value, added);
+            }
+
+            int index = indexOf(key);
+            if (index != -1) {
+                if (array[index + 1] == value) {
+                    return this;
+                }
+                CollisionNode result = isEditable(edit) ? this : new CollisionNode(edit, hash, array.clone());
+                result.array[index + 1] = value;
+                return result;
+            }
+
+            added.value = true;
+            Object[] newArray = Arrays.copyOf(array, array.length + 2);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            if (isEditable(edit)) {
+                array = newArray;
+                return this;
+            }
+            return new CollisionNode(edit, hash, newArray);
+        }
+
+        @Override
+        Node without(Object edit, int shift, int hash, Object key, Box removed) {
+            int index = indexOf(key);
+            if (index == -1) {
+                return this;
+            }
+            removed.value = true;
+            if (array.length == 2) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, index);
+            System.arraycopy(array, index + 2, newArray, index, array.length - index - 2);
+            if (isEditable(edit)) {
+                array = newArray;
+                return this;
+            }
+            return new CollisionNode(edit, hash, newArray);
+        }
+    }
+
+    private static final class EntryIterator<K, V> implements Iterator<Entry<K, V>> {
+        // 7 levels of bitmap nodes consume the 32 bits of a hash, which can be followed by a collision node
+        private final Object[][] arrays = new Object[8][];
+        private final int[] positions = new int[8];
+        private int depth = -1;
+        private Entry<K, V> next;
+
+        EntryIterator(Node root) {
+            if (root != null) {
+                push(root.array);
+            }
+            advance();
+        }
+
+        private void push(Object[] array) {
+            depth++;
+            arrays[depth] = array;
+            positions[depth] = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                Object[] array = arrays[depth];
+                int position = positions[depth];
+                if (position >= array.length) {
+                    arrays[depth--] = null;
+                    continue;
+                }
+                positions[depth] = position + 2;
+
+                Object key = array[position];
+                Object value = array[position + 1];
+                if (key == null) {
+                    push(((Node) value).array);
+                } else {
+                    next = new SimpleImmutableEntry<>((K) key, (V) value);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            Entry<K, V> result = next;
+            if (result == null) {
+                throw new NoSuchElementException();
+            }
+            advance();
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,460 @@
+package io.dico.dicore.collection;
+
+import java.util.*;
+
+/**
+ * An immutable sorted map that shares structure with the maps it is derived from.
+ * <p>
+ * The map is an AVL tree. {@link #plus(Object, Object)} and {@link #minus(Object)} copy only the path from the root
+ * to the changed entry and the nodes that are rotated, which takes O(log n) time, and return a new map.
+ * The map they are called on is unchanged, such that it is a snapshot that can be read by other threads without locking or copying.
+ * <p>
+ * Batches of changes are made more cheaply through a {@link Transient}, which changes the nodes it created in place.
+ * <p>
+ * The entries are iterated in the order of their keys. Keys must not be null. Values may be null.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public final class PersistentSortedMap<K, V> extends AbstractMap<K, V> {
+    private static final PersistentSortedMap<?, ?> EMPTY = new PersistentSortedMap<>(null, null, 0);
+    private final Comparator<? super K> comparator;
+    private final Node<K, V> root;
+    private final int size;
+    private Set<Entry<K, V>> entrySet;
+
+    private PersistentSortedMap(Comparator<? super K> comparator, Node<K, V> root, int size) {
+        this.comparator = comparator;
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @return an empty map that sorts its keys by their natural ordering
+     */
+    @SuppressWarnings("unchecked")
+    public static <K extends Comparable<? super K>, V> PersistentSortedMap<K, V> empty() {
+        return (PersistentSortedMap<K, V>) EMPTY;
+    }
+
+    /**
+     * @param comparator the comparator of the keys, or null for their natural ordering
+     * @return an empty map that sorts its keys with the comparator
+     */
+    public static <K, V> PersistentSortedMap<K, V> empty(Comparator<? super K> comparator) {
+        return new PersistentSortedMap<>(comparator, null, 0);
+    }
+
+    /**
+     * @return the comparator of the keys, or null if they are sorted by their natural ordering
+     */
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(root, key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        Node<K, V> node = find(root, key);
+        return node == null ? null : node.value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node<K, V> find(Node<K, V> node, Object key) {
+        while (node != null) {
+            int c = compare((K) key, node.key);
+            if (c == 0) {
+                return node;
+            }
+            node = c < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(K a, K b) {
+        return comparator == null ? ((Comparable<? super K>) a).compareTo(b) : comparator.compare(a, b);
+    }
+
+    /**
+     * @param key   the key
+     * @param value the value
+     * @return a map with the key mapped to the value, which is this map if it already was
+     */
+    public PersistentSortedMap<K, V> plus(K key, V value) {
+        Objects.requireNonNull(key, "key");
+        Box added = new Box();
+        Node<K, V> newRoot = insert(null, root, key, value, added);
+        return newRoot == root ? this : new PersistentSortedMap<>(comparator, newRoot, added.value ? size + 1 : size);
+    }
+
+    /**
+     * @param map the entries to add
+     * @return a map with the entries of this map and the map, preferring the values of the map
+     */
+    public PersistentSortedMap<K, V> plusAll(Map<? extends K, ? extends V> map) {
+        if (map.isEmpty()) {
+            return this;
+        }
+        Transient<K, V> result = asTransient();
+        for (Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result.persistent();
+    }
+
+    /**
+     * @param key the key
+     * @return a map without the key, which is this map if it didn't contain the key
+     */
+    public PersistentSortedMap<K, V> minus(Object key) {
+        Box removed = new Box();
+        Node<K, V> newRoot = delete(null, root, key, removed);
+        return removed.value ? new PersistentSortedMap<>(comparator, newRoot, size - 1) : this;
+    }
+
+    public K firstKey() {
+        return key(first(root));
+    }
+
+    public K lastKey() {
+        return key(last(root));
+    }
+
+    private static <K> K key(Node<K, ?> node) {
+        if (node == null) {
+            throw new NoSuchElementException();
+        }
+        return node.key;
+    }
+
+    private static <K, V> Node<K, V> first(Node<K, V> node) {
+        if (node != null) {
+            while (node.left != null) {
+                node = node.left;
+            }
+        }
+        return node;
+    }
+
+    private static <K, V> Node<K, V> last(Node<K, V> node) {
+        if (node != null) {
+            while (node.right != null) {
+                node = node.right;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * @param key the key
+     * @return the greatest key that is less than or equal to the key, or null if there is none
+     */
+    public K floorKey(K key) {
+        K result = null;
+        Node<K, V> node = root;
+        while (node != null) {
+            int c = compare(key, node.key);
+            if (c == 0) {
+                return node.key;
+            }
+            if (c < 0) {
+                node = node.left;
+            } else {
+                result = node.key;
+                node = node.right;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param key the key
+     * @return the least key that is greater than or equal to the key, or null if there is none
+     */
+    public K ceilingKey(K key) {
+        K result = null;
+        Node<K, V> node = root;
+        while (node != null) {
+            int c = compare(key, node.key);
+            if (c == 0) {
+                return node.key;
+            }
+            if (c > 0) {
+                node = node.right;
+            } else {
+                result = node.key;
+                node = node.left;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a mutable copy of this map, which shares the structure of this map until it is changed
+     */
+    public Transient<K, V> asTransient() {
+        return new Transient<>(this);
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        Set<Entry<K, V>> result = entrySet;
+        if (result == null) {
+            entrySet = result = new AbstractSet<Entry<K, V>>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new EntryIterator<>(root);
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return result;
+    }
+
+    private Node<K, V> insert(Object edit, Node<K, V> node, K key, V value, Box added) {
+        if (node == null) {
+            added.value = true;
+            return new Node<>(edit, key, value, null, null, 1);
+        }
+
+        int c = compare(key, node.key);
+        if (c < 0) {
+            Node<K, V> left = insert(edit, node.left, key, value, added);
+            return left == node.left ? node : balance(edit, node, left, node.right);
+        }
+        if (c > 0) {
+            Node<K, V> right = insert(edit, node.right, key, value, added);
+            return right == node.right ? node : balance(edit, node, node.left, right);
+        }
+        if (node.value == value) {
+            return node;
+        }
+        Node<K, V> result = node.editable(edit);
+        result.value = value;
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node<K, V> delete(Object edit, Node<K, V> node, Object key, Box removed) {
+        if (node == null) {
+            return null;
+        }
+
+        int c = compare((K) key, node.key);
+        if (c < 0) {
+            Node<K, V> left = delete(edit, node.left, key, removed);
+            return left == node.left ? node : balance(edit, node, left, node.right);
+        }
+        if (c > 0) {
+            Node<K, V> right = delete(edit, node.right, key, removed);
+            return right == node.right ? node : balance(edit, node, node.left, right);
+        }
+
+        removed.value = true;
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        // replace the node with the least node of its right subtree
+        Node<K, V> successor = first(node.right);
+        Node<K, V> right = deleteFirst(edit, node.right);
+        Node<K, V> replacement = new Node<>(edit, successor.key, successor.value, null, null, 1);
+        return balance(edit, replacement, node.left, right);
+    }
+
+    private static <K, V> Node<K, V> deleteFirst(Object edit, Node<K, V> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(edit, node, deleteFirst(edit, node.left), node.right);
+    }
+
+    private static int height(Node<?, ?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    /**
+     * @return a node with the key and value of the template and the children, rotated such that it is balanced
+     */
+    private static <K, V> Node<K, V> balance(Object edit, Node<K, V> template, Node<K, V> left, Node<K, V> right) {
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+
+        if (leftHeight > rightHeight + 1) {
+            Node<K, V> leftLeft = left.left;
+            Node<K, V> leftRight = left.right;
+            if (height(leftLeft) >= height(leftRight)) {
+                return make(edit, left, leftLeft, make(edit, template, leftRight, right));
+            }
+            return make(edit, leftRight,
+                    make(edit, left, leftLeft, leftRight.left),
+                    make(edit, template, leftRight.right, right));
+        }
+
+        if (rightHeight > leftHeight + 1) {
+            Node<K, V> rightLeft = right.left;
+            Node<K, V> rightRight = right.right;
+            if (height(rightRight) >= height(rightLeft)) {
+                return make(edit, right, make(edit, template, left, rightLeft), rightRight);
+            }
+            return make(edit, rightLeft,
+                    make(edit, template, left, rightLeft.left),
+                    make(edit, right, rightLeft.right, rightRight));
+        }
+
+        return make(edit, template, left, right);
+    }
+
+    private static <K, V> Node<K, V> make(Object edit, Node<K, V> template, Node<K, V> left, Node<K, V> right) {
+        int height = Math.max(height(left), height(right)) + 1;
+        if (template.left == left && template.right == right && template.height == height) {
+            return template;
+        }
+        Node<K, V> result = template.editable(edit);
+        result.left = left;
+        result.right = right;
+        result.height = height;
+        return result;
+    }
+
+    /**
+     * A mutable map that changes the nodes it created in place. It must not be used after {@link #persistent()} is called,
+     * and must not be used by multiple threads at once.
+     */
+    public static final class Transient<K, V> {
+        private final PersistentSortedMap<K, V> base;
+        private Object edit = new Object();
+        private Node<K, V> root;
+        private int size;
+
+        Transient(PersistentSortedMap<K, V> base) {
+            this.base = base;
+            this.root = base.root;
+            this.size = base.size;
+        }
+
+        private void ensureEditable() {
+            if (edit == null) {
+                throw new IllegalStateException("The transient was made persistent");
+            }
+        }
+
+        public int size() {
+            ensureEditable();
+            return size;
+        }
+
+        public boolean containsKey(Object key) {
+            ensureEditable();
+            return base.find(root, key) != null;
+        }
+
+        public V get(Object key) {
+            ensureEditable();
+            Node<K, V> node = base.find(root, key);
+            return node == null ? null : node.value;
+        }
+
+        public Transient<K, V> put(K key, V value) {
+            ensureEditable();
+            Objects.requireNonNull(key, "key");
+            Box added = new Box();
+            root = base.insert(edit, root, key, value, added);
+            if (added.value) {
+                size++;
+            }
+            return this;
+        }
+
+        public Transient<K, V> remove(Object key) {
+            ensureEditable();
+            Box removed = new Box();
+            root = base.delete(edit, root, key, removed);
+            if (removed.value) {
+                size--;
+            }
+            return this;
+        }
+
+        /**
+         * @return an immutable map with the contents of this map
+         */
+        public PersistentSortedMap<K, V> persistent() {
+            ensureEditable();
+            edit = null;
+            return root == base.root ? base : new PersistentSortedMap<>(base.comparator, root, size);
+        }
+    }
+
+    private static final class Box {
+        boolean value;
+    }
+
+    private static final class Node<K, V> {
+        final Object edit;
+        final K key;
+        V value;
+        Node<K, V> left;
+        Node<K, V> right;
+        int height;
+
+        Node(Object edit, K key, V value, Node<K, V> left, Node<K, V> right, int height) {
+            this.edit = edit;
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = height;
+        }
+
+        Node<K, V> editable(Object edit) {
+            return edit != null && this.edit == edit ? this : new Node<>(edit, key, value, left, right, height);
+        }
+    }
+
+    private static final class EntryIterator<K, V> implements Iterator<Entry<K, V>> {
+        private final Deque<Node<K, V>> stack = new ArrayDeque<>();
+
+        EntryIterator(Node<K, V> root) {
+            pushLeft(root);
+        }
+
+        private void pushLeft(Node<K, V> node) {
+            for (; node != null; node = node.left) {
+                stack.push(node);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            Node<K, V> node = stack.poll();
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            pushLeft(node.right);
+            return new SimpleImmutableEntry<>(node.key, node.value);
+        }
+    }
+
+}
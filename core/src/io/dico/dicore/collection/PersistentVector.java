@@ -0,0 +1,415 @@
+package io.dico.dicore.collection;
+
+import java.util.*;
+
+/**
+ * An immutable list that shares structure with the lists it is derived from.
+ * <p>
+ * The elements are stored in a tree of nodes with 32 children, with the last 32 elements in a separate tail.
+ * Elements are read in O(log32 n) time. {@link #plus(Object)}, {@link #with(int, Object)} and {@link #pop()} copy only
+ * the tail or the path to the changed element, and return a new list. The list they are called on is unchanged,
+ * such that it is a snapshot that can be read by other threads without locking or copying.
+ * <p>
+ * Batches of changes are made more cheaply through a {@link Transient}, which changes the nodes it created in place.
+ *
+ * @param <E> the type of the elements
+ */
+public final class PersistentVector<E> extends AbstractList<E> implements RandomAccess {
+    private static final Node EMPTY_NODE = new Node(null, new Object[32]);
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(0, 5, EMPTY_NODE, new Object[0]);
+    private final int size;
+    private final int shift;
+    private final Node root;
+    private final Object[] tail;
+
+    private PersistentVector(int size, int shift, Node root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> empty() {
+        return (PersistentVector<E>) EMPTY;
+    }
+
+    public static <E> PersistentVector<E> copyOf(Collection<? extends E> collection) {
+        if (collection instanceof PersistentVector) {
+            @SuppressWarnings("unchecked")
+            PersistentVector<E> result = (PersistentVector<E>) collection;
+            return result;
+        }
+        return PersistentVector.<E>empty().plusAll(collection);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        return (E) arrayFor(index)[index & 31];
+    }
+
+    private int tailOffset() {
+        return tailOffset(size);
+    }
+
+    private static int tailOffset(int size) {
+        return size < 32 ? 0 : ((size - 1) >>> 5) << 5;
+    }
+
+    private Object[] arrayFor(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (index >= tailOffset()) {
+            return tail;
+        }
+        return leafFor(root, shift, index);
+    }
+
+    private static Object[] leafFor(Node root, int shift, int index) {
+        Node node = root;
+        for (int level = shift; level > 0; level -= 5) {
+            node = (Node) node.array[(index >>> level) & 31];
+        }
+        return node.array;
+    }
+
+    /**
+     * @param element the element
+     * @return a list with the element appended
+     */
+    public PersistentVector<E> plus(E element) {
+        if (size - tailOffset() < 32) {
+            Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+            newTail[tail.length] = element;
+            return new PersistentVector<>(size + 1, shift, root, newTail);
+        }
+
+        Node tailNode = new Node(null, tail);
+        Node newRoot;
+        int newShift = shift;
+        if ((size >>> 5) > (1 << shift)) {
+            // the tree is full
+            newRoot = new Node(null, new Object[32]);
+            newRoot.array[0] = root;
+            newRoot.array[1] = newPath(null, shift, tailNode);
+            newShift += 5;
+        } else {
+            newRoot = pushTail(null, size, shift, root, tailNode);
+        }
+        return new PersistentVector<>(size + 1, newShift, newRoot, new Object[]{element});
+    }
+
+    /**
+     * @param collection the elements
+     * @return a list with the elements appended
+     */
+    public PersistentVector<E> plusAll(Collection<? extends E> collection) {
+        if (collection.isEmpty()) {
+            return this;
+        }
+        Transient<E> result = asTransient();
+        for (E element : collection) {
+            result.add(element);
+        }
+        return result.persistent();
+    }
+
+    /**
+     * @param index   the index, which may be the size of this list to append the element
+     * @param element the element
+     * @return a list with the element at the index replaced
+     */
+    public PersistentVector<E> with(int index, E element) {
+        if (index == size) {
+            return plus(element);
+        }
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (index >= tailOffset()) {
+            Object[] newTail = tail.clone();
+            newTail[index & 31] = element;
+            return new PersistentVector<>(size, shift, root, newTail);
+        }
+        return new PersistentVector<>(size, shift, assoc(null, shift, root, index, element), tail);
+    }
+
+    /**
+     * @return a list without the last element
+     * @throws IllegalStateException if this list is empty
+     */
+    public PersistentVector<E> pop() {
+        if (size == 0) {
+            throw new IllegalStateException("Can't pop an empty list");
+        }
+        if (size == 1) {
+            return empty();
+        }
+        if (size - tailOffset() > 1) {
+            return new PersistentVector<>(size - 1, shift, root, Arrays.copyOf(tail, tail.length - 1));
+        }
+
+        Object[] newTail = arrayFor(size - 2);
+        Node newRoot = popTail(shift, root);
+        int newShift = shift;
+        if (newRoot == null) {
+            newRoot = EMPTY_NODE;
+        }
+        if (shift > 5 && newRoot.array[1] == null) {
+            newRoot = (Node) newRoot.array[0];
+            newShift -= 5;
+        }
+        return new PersistentVector<>(size - 1, newShift, newRoot, newTail);
+    }
+
+    private Node popTail(int level, Node node) {
+        int index = ((size - 2) >>> level) & 31;
+        if (level > 5) {
+            Node newChild = popTail(level - 5, (Node) node.array[index]);
+            if (newChild == null && index == 0) {
+                return null;
+            }
+            Node result = new Node(null, node.array.clone());
+            result.array[index] = newChild;
+            return result;
+        }
+        if (index == 0) {
+            return null;
+        }
+        Node result = new Node(null, node.array.clone());
+        result.array[index] = null;
+        return result;
+    }
+
+    /**
+     * @return a mutable copy of this list, which shares the structure of this list until it is changed
+     */
+    public Transient<E> asTransient() {
+        return new Transient<>(this);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return listIterator();
+    }
+
+    @Override
+    public ListIterator<E> listIterator(int index) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return new ListIterator<E>() {
+            private int next = index;
+            private Object[] leaf;
+            private int leafStart = -32;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                if (next - leafStart >= 32 || next < leafStart) {
+                    // the elements of a leaf are read from the same array
+                    leaf = arrayFor(next);
+                    leafStart = next & ~31;
+                }
+                return (E) leaf[next++ & 31];
+            }
+
+            @Override
+            public boolean hasPrevious() {
+                return next > 0;
+            }
+
+            @Override
+            public E previous() {
+                if (next <= 0) {
+                    throw new NoSuchElementException();
+                }
+                return get(--next);
+            }
+
+            @Override
+            public int nextIndex() {
+                return next;
+            }
+
+            @Override
+            public int previousIndex() {
+                return next - 1;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void set(E e) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void add(E e) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static Node newPath(Object edit, int level, Node node) {
+        if (level == 0) {
+            return node;
+        }
+        Node result = new Node(edit, new Object[32]);
+        result.array[0] = newPath(edit, level - 5, node);
+        return result;
+    }
+
+    /**
+     * Insert a full tail into the tree
+     *
+     * @param size the size of the list before the element that doesn't fit in the tail is added
+     */
+    private static Node pushTail(Object edit, int size, int level, Node parent, Node tailNode) {
+        int index = ((size - 1) >>> level) & 31;
+        Node result = parent.editable(edit);
+        Node child;
+        if (level == 5) {
+            child = tailNode;
+        } else {
+            Node existing = (Node) parent.array[index];
+            child = existing != null ? pushTail(edit, size, level - 5, existing, tailNode) : newPath(edit, level - 5, tailNode);
+        }
+        result.array[index] = child;
+        return result;
+    }
+
+    private static Node assoc(Object edit, int level, Node node, int index, Object element) {
+        Node result = node.editable(edit);
+        if (level == 0) {
+            result.array[index & 31] = element;
+        } else {
+            int childIndex = (index >>> level) & 31;
+            result.array[childIndex] = assoc(edit, level - 5, (Node) node.array[childIndex], index, element);
+        }
+        return result;
+    }
+
+    /**
+     * A mutable list that changes the nodes it created in place. It must not be used after {@link #persistent()} is called,
+     * and must not be used by multiple threads at once.
+     */
+    public static final class Transient<E> {
+        private Object edit = new Object();
+        private int size;
+        private int shift;
+        private Node root;
+        // always has room for 32 elements
+        private Object[] tail;
+
+        Transient(PersistentVector<E> vector) {
+            size = vector.size;
+            shift = vector.shift;
+            root = new Node(edit, vector.root.array.clone());
+            tail = Arrays.copyOf(vector.tail, 32);
+        }
+
+        private void ensureEditable() {
+            if (edit == null) {
+                throw new IllegalStateException("The transient was made persistent");
+            }
+        }
+
+        public int size() {
+            ensureEditable();
+            return size;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            ensureEditable();
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            Object[] array = index >= tailOffset(size) ? tail : leafFor(root, shift, index);
+            return (E) array[index & 31];
+        }
+
+        public Transient<E> add(E element) {
+            ensureEditable();
+            if (size - tailOffset(size) < 32) {
+                tail[size & 31] = element;
+                size++;
+                return this;
+            }
+
+            Node tailNode = new Node(edit, tail);
+            tail = new Object[32];
+            tail[0] = element;
+            if ((size >>> 5) > (1 << shift)) {
+                Node newRoot = new Node(edit, new Object[32]);
+                newRoot.array[0] = root;
+                newRoot.array[1] = newPath(edit, shift, tailNode);
+                root = newRoot;
+                shift += 5;
+            } else {
+                root = pushTail(edit, size, shift, root, tailNode);
+            }
+            size++;
+            return this;
+        }
+
+        public Transient<E> set(int index, E element) {
+            ensureEditable();
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            if (index >= tailOffset(size)) {
+                tail[index & 31] = element;
+            } else {
+                root = assoc(edit, shift, root, index, element);
+            }
+            return this;
+        }
+
+        /**
+         * @return an immutable list with the contents of this list
+         */
+        public PersistentVector<E> persistent() {
+            ensureEditable();
+            edit = null;
+            if (size == 0) {
+                return empty();
+            }
+            return new PersistentVector<>(size, shift, root, Arrays.copyOf(tail, size - tailOffset(size)));
+        }
+    }
+
+    private static final class Node {
+        final Object edit;
+        final Object[] array;
+
+        Node(Object edit, Object[] array) {
+            this.edit = edit;
+            this.array = array;
+        }
+
+        Node editable(Object edit) {
+            return edit != null && this.edit == edit ? this : new Node(edit, array.clone());
+        }
+    }
+
+}
@@ -4,7 +4,9 @@ import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 import io.dico.dicore.Formatting;
 import io.dico.dicore.serialization.JsonLoadable;
+import io.dico.dicore.serialization.JsonTape;
 import io.dico.dicore.serialization.JsonUtil;
+import io.dico.dicore.serialization.JsonValue;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.configuration.ConfigurationSection;
@@ -186,21 +188,24 @@ public class ItemProperties implements JsonLoadable {
                     } else if (!enchantments.isEmpty()) {
                         enchantments.clear();
                     }
-                    Map<String, Object> read = (Map<String, Object>) JsonUtil.read(reader);
-                    if (read != null) {
-                        for (Map.Entry<String, Object> entry : read.entrySet()) {
-                            Enchantment ench = Enchantment.getByName(entry.getKey());
-                            if (ench != null) {
-                                int level = toInt(entry.getValue(), 1);
-                                enchantments.put(ench, level);
-                            }
+                    JsonValue read = JsonTape.read(reader).root();
+                    List<String> names = read.names();
+                    List<JsonValue> levels = read.values();
+                    for (int i = 0; i < names.size(); i++) {
+                        Enchantment ench = Enchantment.getByName(names.get(i));
+                        if (ench != null) {
+                            enchantments.put(ench, levels.get(i).asInt(1));
                         }
                     }
                     break;
                 }
-                case "lore":
-                    setLoreFromConfig((List<String>) JsonUtil.read(reader));
+                case "lore": {
+                    JsonValue read = JsonTape.read(reader).root();
+                    if (read.isArray()) {
+                        setLoreFromConfig(read.asStringList());
+                    }
                     break;
+                }
                 case "displayName":
                     setDisplayNameFromConfig(reader.nextString());
                     break;
@@ -0,0 +1,139 @@
+package io.dico.dicore.modules;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the data folders of modules for changes to their config file.
+ * <p>
+ * Changed files are parsed on the watcher thread, once no further changes were seen for {@link #DEBOUNCE_MILLIS}.
+ * The parsed config is applied on the main thread, by the next tick.
+ */
+final class ConfigWatcher implements Runnable {
+    static final long DEBOUNCE_MILLIS = 500;
+    private final ModuleManager manager;
+    private final WatchService service;
+    private final Map<WatchKey, Module> modules = new ConcurrentHashMap<>();
+    private final Map<Module, Long> deadlines = new HashMap<>();
+    private final Thread thread;
+    
+    ConfigWatcher(ModuleManager manager) throws IOException {
+        this.manager = manager;
+        this.service = FileSystems.getDefault().newWatchService();
+        this.thread = new Thread(this, manager.getName() + "-config-watcher");
+        thread.setDaemon(true);
+    }
+    
+    void start() {
+        thread.start();
+    }
+    
+    void watch(Module module) {
+        if (!module.isHotReloadingConfig()) {
+            return;
+        }
+        
+        try {
+            WatchKey key = module.getDataFolder().toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            modules.put(key, module);
+        } catch (IOException | ClosedWatchServiceException ex) {
+            manager.error("Failed to watch the config of module " + module.getName());
+            ex.printStackTrace();
+        }
+    }
+    
+    void unwatch(Module module) {
+        modules.entrySet().removeIf(entry -> {
+            if (entry.getValue() == module) {
+                entry.getKey().cancel();
+                return true;
+            }
+            return false;
+        });
+    }
+    
+    void close() {
+        try {
+            service.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        modules.clear();
+    }
+    
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key;
+                if (deadlines.isEmpty()) {
+                    key = service.take();
+                } else {
+                    long timeout = Math.max(0, nextDeadline() - System.currentTimeMillis());
+                    key = service.poll(timeout, TimeUnit.MILLISECONDS);
+                }
+                
+                if (key != null) {
+                    processEvents(key);
+                }
+                reloadDue();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+        }
+    }
+    
+    private void processEvents(WatchKey key) {
+        Module module = modules.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (module != null && (event.kind() == StandardWatchEventKinds.OVERFLOW || Module.CONFIG_FILENAME.equals(String.valueOf(event.context())))) {
+                deadlines.put(module, System.currentTimeMillis() + DEBOUNCE_MILLIS);
+            }
+        }
+        if (!key.reset()) {
+            modules.remove(key);
+        }
+    }
+    
+    private long nextDeadline() {
+        long result = Long.MAX_VALUE;
+        for (long deadline : deadlines.values()) {
+            result = Math.min(result, deadline);
+        }
+        return result;
+    }
+    
+    private void reloadDue() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Module, Long>> iterator = deadlines.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Module, Long> entry = iterator.next();
+            if (entry.getValue() <= now) {
+                iterator.remove();
+                reload(entry.getKey());
+            }
+        }
+    }
+    
+    private void reload(Module module) {
+        YamlConfiguration config;
+        try {
+            config = module.parseChangedConfig();
+        } catch (Exception ex) {
+            manager.error("Not reloading the config of module " + module.getName() + " because it could not be parsed");
+            ex.printStackTrace();
+            return;
+        }
+        
+        if (config != null && manager.isEnabled()) {
+            manager.getTaskScheduler().runTask(() -> module.applyConfig(config));
+        }
+    }
+    
+}
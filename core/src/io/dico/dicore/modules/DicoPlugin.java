@@ -4,21 +4,23 @@ import io.dico.dicore.Formatting;
 import io.dico.dicore.Registrator;
 import io.dico.dicore.TickTask;
 import io.dico.dicore.event.ListenerHandle;
-import org.bukkit.Bukkit;
+import io.dico.dicore.task.scheduler.ScheduledTask;
+import io.dico.dicore.task.scheduler.TaskScheduler;
 import org.bukkit.event.Listener;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.java.JavaPlugin;
-import org.bukkit.scheduler.BukkitTask;
 
-import java.util.Collections;
-import java.util.HashSet;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
 import java.util.Set;
 
 public class DicoPlugin extends JavaPlugin implements ModuleManager {
     private final Registrator registrator;
-    private final Set<Module> modules = new HashSet<>();
+    private final ModuleContainer modules = new ModuleContainer(this);
     private TickTask tickTask;
     private TickTask moduleTickTask;
+    private TaskScheduler taskScheduler;
     private String messagePrefix;
     private boolean debugging;
     
@@ -29,7 +31,7 @@ public class DicoPlugin extends JavaPlugin implements ModuleManager {
     
     @Override
     public Set<Module> getModules() {
-        return Collections.unmodifiableSet(modules);
+        return modules.getModules();
     }
     
     @Override
@@ -50,23 +52,53 @@ public class DicoPlugin extends JavaPlugin implements ModuleManager {
     
     @Override
     public void registerModule(String name, Module module) {
-        try {
-            module.setEnabled(true);
-            if (module instanceof Listener) {
-                Bukkit.getPluginManager().registerEvents((Listener) module, this);
-            }
-        } catch (Throwable t) {
-            error("Failed to enable module " + name);
-            t.printStackTrace();
-            return;
-        }
-        modules.add(module);
+        modules.register(name, module);
+    }
+    
+    @Override
+    public void registerModules(Collection<? extends Module> modules) {
+        this.modules.registerAll(modules);
+    }
+    
+    @Override
+    public void registerLazyModule(Module module, long idleTimeout) {
+        modules.registerLazy(module, idleTimeout);
+    }
+    
+    @Override
+    public ModuleJar loadModuleJar(File jar) throws IOException {
+        return modules.loadJar(jar);
+    }
+    
+    @Override
+    public boolean unloadModuleJar(File jar) throws IOException {
+        return modules.unloadJar(jar);
+    }
+    
+    @Override
+    public ModuleJar reloadModuleJar(File jar) throws IOException {
+        return modules.reloadJar(jar);
+    }
+    
+    @Override
+    public Collection<ModuleJar> getModuleJars() {
+        return modules.getModuleJars();
+    }
+    
+    @Override
+    public boolean isWatchingConfigs() {
+        return modules.isWatchingConfigs();
+    }
+    
+    @Override
+    public void setWatchingConfigs(boolean watching) {
+        modules.setWatchingConfigs(watching);
     }
     
     @Override
     public TickTask getTickTask() {
         if (tickTask == null) {
-            tickTask = new TickTask(this) {
+            tickTask = new TickTask(getTaskScheduler()) {
                 @Override
                 protected void tick() {
                     DicoPlugin.this.tick();
@@ -79,7 +111,7 @@ public class DicoPlugin extends JavaPlugin implements ModuleManager {
     @Override
     public TickTask getModuleTickTask() {
         if (moduleTickTask == null) {
-            moduleTickTask = new TickTask(this) {
+            moduleTickTask = new TickTask(getTaskScheduler()) {
                 @Override
                 protected void tick() {
                     DicoPlugin.this.tickModules();
@@ -89,6 +121,14 @@ public class DicoPlugin extends JavaPlugin implements ModuleManager {
         return moduleTickTask;
     }
     
+    @Override
+    public TaskScheduler getTaskScheduler() {
+        if (taskScheduler == null) {
+            taskScheduler = TaskScheduler.of(this);
+        }
+        return taskScheduler;
+    }
+    
     protected boolean preEnable() {
         return true;
     }
@@ -106,16 +146,7 @@ public class DicoPlugin extends JavaPlugin implements ModuleManager {
     }
     
     protected void tickModules() {
-        for (Module module : modules) {
-            if (module.isEnabled()) {
-                try {
-                    module.update();
-                } catch (Throwable t) {
-                    error("Error occurred whilst ticking module " + module.getName());
-                    t.printStackTrace();
-                }
-            }
-        }
+        modules.tick();
     }
     
     @Override
@@ -176,11 +207,7 @@ public class DicoPlugin extends JavaPlugin implements ModuleManager {
     
     @Override
     public final void onDisable() {
-        for (Module module : modules) {
-            if (module.isEnabled()) {
-                module.setEnabled(false);
-            }
-        }
+        modules.disableAll();
         disable();
     }
     
@@ -190,22 +217,40 @@ public class DicoPlugin extends JavaPlugin implements ModuleManager {
     }
     
     public ListenerHandle makeTaskHandle(long delay, long period, Runnable action) {
-        return makeTaskHandle(this, delay, period, action);
+        return makeTaskHandle(getTaskScheduler(), delay, period, action);
     }
     
     public static ListenerHandle makeTaskHandle(Plugin plugin, long delay, long period, Runnable action) {
+        return makeTaskHandle(TaskScheduler.of(plugin), delay, period, action);
+    }
+    
+    /**
+     * Registering the handle starts the task. Registering it again restarts the task with its initial delay,
+     * unless it is registered by the task itself while it runs.
+     */
+    public static ListenerHandle makeTaskHandle(TaskScheduler scheduler, long delay, long period, Runnable action) {
         return new ListenerHandle() {
-            BukkitTask task;
+            ScheduledTask task;
+            volatile boolean running;
+            
+            private void run() {
+                running = true;
+                try {
+                    action.run();
+                } finally {
+                    running = false;
+                }
+            }
         
             @Override
             public void register() {
                 if (task != null) {
-                    if (plugin.getServer().getScheduler().isCurrentlyRunning(task.getTaskId())) {
+                    if (running) {
                         return;
                     }
                     task.cancel();
                 }
-                task = plugin.getServer().getScheduler().runTaskTimer(plugin, action, delay, period);
+                task = scheduler.runTaskTimer(this::run, delay, period);
             }
         
             @Override
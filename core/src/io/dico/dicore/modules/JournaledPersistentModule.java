@@ -0,0 +1,131 @@
+package io.dico.dicore.modules;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import io.dico.dicore.serialization.FileAdapter;
+import io.dico.dicore.serialization.Journal;
+import io.dico.dicore.serialization.JsonLoadable;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A persistent module that persists changes to its data as records appended to a {@link Journal},
+ * instead of rewriting the data file on every save.
+ * <p>
+ * Changes are persisted by calling {@link #appendRecord(FileAdapter.WriteAction)}, and applied again when the data is loaded
+ * by {@link #replayRecord(JsonLoadable, JsonReader)}. {@link #saveData()} folds the journal into a new snapshot of the data.
+ * This happens when a save is {@link #scheduleSave() scheduled}, which is done automatically when the journal grows beyond
+ * {@link #getCompactionThreshold()}, and when the module is disabled.
+ * If {@link #snapshotData(Object)} returns a snapshot, it is written on a background thread.
+ */
+public abstract class JournaledPersistentModule<Manager extends ModuleManager, Data extends JsonLoadable> extends SimplePersistentModule<Manager, Data> {
+    private Journal<Data> journal;
+    
+    protected JournaledPersistentModule(String name, Manager manager, boolean usesConfig, boolean debugging) {
+        super(name, manager, usesConfig, debugging);
+    }
+    
+    /**
+     * Apply a record that was appended by {@link #appendRecord(FileAdapter.WriteAction)} to the data
+     *
+     * @param data   the data
+     * @param record the reader of the record
+     * @throws IOException if the record can't be read
+     */
+    protected abstract void replayRecord(Data data, JsonReader record) throws IOException;
+    
+    /**
+     * @return the size in bytes of the journal above which it is folded into a new snapshot
+     */
+    protected long getCompactionThreshold() {
+        return 1 << 22;
+    }
+    
+    /**
+     * Persist a change of the data. The data must be loaded.
+     *
+     * @param record the action that writes the record, which must be a JSON object or array
+     * @return a future that completes when the record is written
+     */
+    protected final CompletableFuture<Void> appendRecord(FileAdapter.WriteAction<JsonWriter> record) {
+        Journal<Data> journal = getJournal();
+        CompletableFuture<Void> result = journal.append(record);
+        if (journal.getJournalSize() >= getCompactionThreshold() && !journal.isCompacting()) {
+            scheduleSave();
+        }
+        return result;
+    }
+    
+    /**
+     * @return the journal
+     */
+    protected Journal<Data> getJournal() {
+        if (journal == null) {
+            journal = new Journal<>(getFileAdapter(), getFile(), this::replayRecord, ex -> {
+                if (ex instanceof FileNotFoundException) {
+                    return;
+                }
+                error("Error occurred in the data journal of module " + getName());
+                ex.printStackTrace();
+            });
+        }
+        return journal;
+    }
+    
+    @Override
+    Data readData() {
+        if (journal != null && journal.getGeneration() != -1) {
+            // a journal is loaded once, so reloading waits for its writes and replays the files in a new journal
+            closeJournal();
+        }
+        return getJournal().load(this::generateDefaultData);
+    }
+    
+    @Override
+    protected void saveData() {
+        Data data = getData();
+        if (data == null || journal == null || journal.getRecordCount() == 0) {
+            return;
+        }
+        
+        Data snapshot = snapshotData(data);
+        if (snapshot != null) {
+            journal.compact(snapshot);
+            return;
+        }
+        
+        try {
+            journal.compactNow(data);
+        } catch (Exception ex) {
+            error("Failed to save data for module " + getName());
+            ex.printStackTrace();
+        }
+    }
+    
+    @Override
+    void setEnabled(boolean enabled) {
+        boolean disabling = !enabled && isEnabled();
+        super.setEnabled(enabled);
+        
+        if (disabling && journal != null) {
+            closeJournal();
+        }
+    }
+    
+    private void closeJournal() {
+        long timeout = getFinalSaveTimeout();
+        try {
+            if (!journal.close(timeout, TimeUnit.MILLISECONDS)) {
+                error("Timed out after " + timeout + " ms whilst writing the data journal of module " + getName());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            error("Interrupted whilst writing the data journal of module " + getName());
+        }
+        journal = null;
+    }
+    
+}
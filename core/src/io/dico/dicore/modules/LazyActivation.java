@@ -0,0 +1,179 @@
+package io.dico.dicore.modules;
+
+import io.dico.dicore.event.ListenerHandle;
+import io.dico.dicore.task.scheduler.ScheduledTask;
+import org.bukkit.command.*;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The stubs of a module that is registered using {@link ModuleManager#registerLazyModule(Module, long)}.
+ * <p>
+ * A lazy module is not loaded or enabled when it is registered. Instead, {@link Module#registerStubs(LazyActivation)}
+ * declares the events and commands that should activate it. These stubs stay registered for as long as the manager is enabled.
+ * The first time a stub fires, the module is loaded and enabled, and the event or command is forwarded to the module.
+ * <p>
+ * If an idle timeout is set, the module is disabled and {@link Module#unload() unloaded} again once none of its stubs
+ * have fired for that long. It is activated again by the next stub that fires.
+ */
+public final class LazyActivation {
+    private final ModuleContainer container;
+    private final Module module;
+    private final long idleTimeout;
+    private final List<ListenerHandle> listeners = new ArrayList<>();
+    private final List<PluginCommand> commands = new ArrayList<>();
+    private ScheduledTask idleCheck;
+    private long lastUse;
+    private boolean registered;
+    
+    LazyActivation(ModuleContainer container, Module module, long idleTimeout) {
+        this.container = container;
+        this.module = module;
+        this.idleTimeout = idleTimeout;
+    }
+    
+    public Module getModule() {
+        return module;
+    }
+    
+    public boolean isActive() {
+        return module.isEnabled();
+    }
+    
+    /**
+     * @return the time in milliseconds after which the module is deactivated if its stubs didn't fire, or 0 if it stays active
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+    
+    /**
+     * @return the time in milliseconds at which the module was last used, as per {@link System#currentTimeMillis()}
+     */
+    public long getLastUse() {
+        return lastUse;
+    }
+    
+    /**
+     * Activate the module when the event is called, without forwarding the event.
+     * This is meant for modules that handle the event themselves once they are enabled, for instance
+     * because they are a {@link org.bukkit.event.Listener Listener}. The event that activates the module is not handled by it.
+     *
+     * @param eventClass the event class
+     * @return this
+     */
+    public <T extends Event> LazyActivation activateOn(Class<T> eventClass) {
+        return onEvent(eventClass, EventPriority.MONITOR, null);
+    }
+    
+    /**
+     * Activate the module when the event is called, and pass the event to the handler.
+     * The handler is only called while the module is active.
+     *
+     * @param eventClass the event class
+     * @param handler    the handler
+     * @return this
+     */
+    public <T extends Event> LazyActivation onEvent(Class<T> eventClass, Consumer<? super T> handler) {
+        return onEvent(eventClass, EventPriority.NORMAL, handler);
+    }
+    
+    public <T extends Event> LazyActivation onEvent(Class<T> eventClass, EventPriority priority, Consumer<? super T> handler) {
+        checkNotRegistered();
+        listeners.add(module.getRegistrator().makeListenerHandle(eventClass, priority, (T event) -> {
+            if (use() && handler != null) {
+                handler.accept(event);
+            }
+        }));
+        return this;
+    }
+    
+    /**
+     * Activate the module when the command, which must be declared in the plugin's plugin.yml, is executed.
+     * If the executor is also a {@link TabCompleter}, tab completion is forwarded to it as well.
+     *
+     * @param name     the name of the command
+     * @param executor the executor of the command
+     * @return this
+     */
+    public LazyActivation onCommand(String name, CommandExecutor executor) {
+        checkNotRegistered();
+        PluginCommand command = module.getManager().getServer().getPluginCommand(name);
+        if (command == null) {
+            throw new IllegalArgumentException("Command " + name + " is not declared");
+        }
+        
+        command.setExecutor(new TabExecutor() {
+            @Override
+            public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+                return !use() || executor.onCommand(sender, command, label, args);
+            }
+            
+            @Override
+            public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
+                if (executor instanceof TabCompleter && use()) {
+                    return ((TabCompleter) executor).onTabComplete(sender, command, alias, args);
+                }
+                return Collections.emptyList();
+            }
+        });
+        commands.add(command);
+        return this;
+    }
+    
+    /**
+     * Mark the module as used, and activate it if it is not active.
+     *
+     * @return true if the module is active
+     */
+    public boolean use() {
+        lastUse = System.currentTimeMillis();
+        if (!module.isEnabled() && module.getManager().isEnabled()) {
+            container.activate(module);
+        }
+        return module.isEnabled();
+    }
+    
+    private void checkNotRegistered() {
+        if (registered) {
+            throw new IllegalStateException("Stubs must be declared in Module.registerStubs");
+        }
+    }
+    
+    void register() {
+        registered = true;
+        for (ListenerHandle listener : listeners) {
+            listener.register();
+        }
+        
+        if (idleTimeout > 0) {
+            long period = Math.max(20, idleTimeout / 50 / 4);
+            idleCheck = module.getTaskScheduler().runTaskTimer(this::checkIdle, period, period);
+        }
+    }
+    
+    void unregister() {
+        for (ListenerHandle listener : listeners) {
+            listener.unregister();
+        }
+        for (PluginCommand command : commands) {
+            command.setExecutor(null);
+        }
+        if (idleCheck != null) {
+            idleCheck.cancel();
+            idleCheck = null;
+        }
+    }
+    
+    private void checkIdle() {
+        if (module.isEnabled() && System.currentTimeMillis() - lastUse >= idleTimeout) {
+            container.deactivate(module);
+        }
+    }
+    
+}
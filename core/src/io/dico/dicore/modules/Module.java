@@ -3,7 +3,13 @@ package io.dico.dicore.modules;
 import io.dico.dicore.Logging;
 import io.dico.dicore.Registrator;
 import io.dico.dicore.exceptions.ExceptionHandler;
+import io.dico.dicore.task.ActorExecutor;
+import io.dico.dicore.task.scheduler.TaskScheduler;
+import io.dico.dicore.task.scheduler.TrackingTaskScheduler;
 import org.bukkit.Bukkit;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.command.TabCompleter;
 import org.bukkit.configuration.Configuration;
 import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.FileConfiguration;
@@ -12,16 +18,43 @@ import org.bukkit.event.HandlerList;
 import org.bukkit.event.Listener;
 
 import java.io.*;
-import java.util.Objects;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 public class Module<Manager extends ModuleManager> extends Logging.SubLogging {
+    static final String CONFIG_FILENAME = "config.yml";
+    private static final long EXECUTOR_SHUTDOWN_TIMEOUT = 10000;
     private final Manager manager;
     private final String name;
     private final boolean usesConfig;
     private final String baseFilename;
     private FileConfiguration config;
+    // the digest of the contents of the config file when this module last wrote it
+    private volatile byte[] configWrittenDigest;
     private boolean enabled;
     private boolean enabledBefore;
+    private boolean loaded;
+    private LazyActivation lazyActivation;
+    private Registrator registrator;
+    private TrackingTaskScheduler taskScheduler;
+    private volatile ActorExecutor executor;
+    private final List<PluginCommand> commands = new ArrayList<>();
+    private long loadTime;
+    private long enableTime;
+    private volatile boolean idle;
+    private int tickInterval = 1;
+    private int ticksUntilUpdate;
+    private long tickBudget;
+    private long tickDeadline;
+    private long tickCount;
+    private long totalTickTime;
+    private long lastTickTime;
+    private long maxTickTime;
+    private long budgetOverruns;
     
     protected Module(String name, Manager manager, boolean usesConfig, boolean debugging) {
         super(name, manager, debugging);
@@ -31,10 +64,43 @@ public class Module<Manager extends ModuleManager> extends Logging.SubLogging {
         baseFilename = name.toLowerCase().replaceAll("_| |-", "");
     }
     
+    /**
+     * Load the module's configuration and data.
+     * When modules are registered together using {@link ModuleManager#registerModules(Collection)},
+     * this method is called on a worker thread, and should not touch the bukkit api.
+     */
     protected void load() {
         
     }
     
+    /**
+     * Release what was acquired by {@link #load()}.
+     * This is called after the module is disabled because it was registered lazily and became idle.
+     * {@link #load()} is called again when the module is activated again.
+     */
+    protected void unload() {
+        
+    }
+    
+    /**
+     * Called on a new version of a module that is being {@link ModuleManager#reloadModuleJar(File) reloaded},
+     * before the old version is disabled. The module is not loaded or enabled yet.
+     * This can be used to run code paths that should be compiled before the module takes over.
+     */
+    protected void warmUp() {
+        
+    }
+    
+    /**
+     * Declare the events and commands that activate this module, if it is registered using
+     * {@link ModuleManager#registerLazyModule(Module, long)}.
+     *
+     * @param activation the stubs
+     */
+    protected void registerStubs(LazyActivation activation) {
+        
+    }
+    
     protected void enable() {
         
     }
@@ -43,10 +109,24 @@ public class Module<Manager extends ModuleManager> extends Logging.SubLogging {
         
     }
     
+    /**
+     * Called by the manager's module tick task every {@link #getTickInterval()} runs, unless the module is {@link #isIdle() idle}.
+     */
     protected void update() {
         
     }
     
+    /**
+     * Modules for which this returns false are idle until woken up by {@link #wakeUp()}, and return to idle after each update,
+     * such that modules that only have work after an event don't cost anything per tick.
+     * The default implementation returns true.
+     *
+     * @return true if {@link #update()} should be called every {@link #getTickInterval()} runs
+     */
+    protected boolean needsTick() {
+        return true;
+    }
+    
     public String getName() {
         return name;
     }
@@ -55,28 +135,230 @@ public class Module<Manager extends ModuleManager> extends Logging.SubLogging {
         return enabled;
     }
     
+    /**
+     * The names of the modules that must be loaded and enabled before this module.
+     * This is respected by {@link ModuleManager#registerModules(Collection)}.
+     *
+     * @return the names of the modules this module depends on
+     */
+    public Collection<String> getDependencies() {
+        return Collections.emptyList();
+    }
+    
+    /**
+     * @return the time in nanoseconds spent in {@link #load()}
+     */
+    public long getLoadTime() {
+        return loadTime;
+    }
+    
+    /**
+     * @return the time in nanoseconds spent in {@link #enable()} when the module was last enabled
+     */
+    public long getEnableTime() {
+        return enableTime;
+    }
+    
+    /**
+     * @return the amount of module tick task runs between two calls to {@link #update()}
+     */
+    public int getTickInterval() {
+        return tickInterval;
+    }
+    
+    protected void setTickInterval(int tickInterval) {
+        if (tickInterval < 1) {
+            throw new IllegalArgumentException("tickInterval must be positive");
+        }
+        this.tickInterval = tickInterval;
+        ticksUntilUpdate = Math.min(ticksUntilUpdate, tickInterval - 1);
+    }
+    
+    /**
+     * @return the time in nanoseconds that {@link #update()} should take at most, or 0 if there is no budget
+     */
+    public long getTickBudget() {
+        return tickBudget;
+    }
+    
+    /**
+     * Set the time budget of {@link #update()}.
+     * Long running updates should check {@link #isTickBudgetExhausted()} and continue in the next update when it returns true.
+     * Updates that take longer than the budget are counted by {@link #getBudgetOverruns()}.
+     *
+     * @param tickBudgetNanos the budget in nanoseconds, or 0 for no budget
+     */
+    protected void setTickBudget(long tickBudgetNanos) {
+        this.tickBudget = Math.max(0, tickBudgetNanos);
+    }
+    
+    /**
+     * @return true if {@link #update()} is running and has used up its time budget
+     */
+    protected boolean isTickBudgetExhausted() {
+        return tickBudget > 0 && System.nanoTime() - tickDeadline >= 0;
+    }
+    
+    public boolean isIdle() {
+        return idle;
+    }
+    
+    /**
+     * Stop or resume calling {@link #update()}.
+     *
+     * @param idle true if the module has nothing to do until {@link #wakeUp()} is called
+     */
+    protected void setIdle(boolean idle) {
+        this.idle = idle;
+    }
+    
+    /**
+     * Make sure {@link #update()} is called on the next due run of the module tick task.
+     * This method may be called from any thread.
+     */
+    public void wakeUp() {
+        idle = false;
+    }
+    
+    public long getTickCount() {
+        return tickCount;
+    }
+    
+    /**
+     * @return the time in nanoseconds spent in {@link #update()} in total
+     */
+    public long getTotalTickTime() {
+        return totalTickTime;
+    }
+    
+    public long getLastTickTime() {
+        return lastTickTime;
+    }
+    
+    public long getMaxTickTime() {
+        return maxTickTime;
+    }
+    
+    /**
+     * @return the amount of updates that took longer than the {@link #getTickBudget() tick budget}
+     */
+    public long getBudgetOverruns() {
+        return budgetOverruns;
+    }
+    
+    /**
+     * Counts down the tick interval.
+     *
+     * @return true if {@link #update()} is due
+     */
+    boolean isTickDue() {
+        if (idle || !enabled) {
+            return false;
+        }
+        if (ticksUntilUpdate > 0) {
+            ticksUntilUpdate--;
+            return false;
+        }
+        ticksUntilUpdate = tickInterval - 1;
+        return true;
+    }
+    
+    void runUpdate() {
+        if (!needsTick()) {
+            idle = true;
+        }
+        
+        long start = System.nanoTime();
+        tickDeadline = start + tickBudget;
+        try {
+            update();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            tickCount++;
+            totalTickTime += elapsed;
+            lastTickTime = elapsed;
+            if (elapsed > maxTickTime) {
+                maxTickTime = elapsed;
+            }
+            if (tickBudget > 0 && elapsed > tickBudget) {
+                budgetOverruns++;
+                debug(String.format("update took %.2f ms, which exceeds its budget of %.2f ms", elapsed / 1e6, tickBudget / 1e6));
+            }
+        }
+    }
+    
+    /**
+     * @return the stubs of this module if it was registered lazily, or null
+     */
+    public LazyActivation getLazyActivation() {
+        return lazyActivation;
+    }
+    
+    void setLazyActivation(LazyActivation lazyActivation) {
+        this.lazyActivation = lazyActivation;
+    }
+    
+    boolean isLoaded() {
+        return loaded;
+    }
+    
+    /**
+     * @return false if {@link #load()} threw an exception, in which case the module must not be enabled
+     */
+    boolean runLoad() {
+        if (loaded) {
+            return true;
+        }
+        
+        long start = System.nanoTime();
+        try {
+            load();
+        } catch (Exception ex) {
+            ExceptionHandler.log(this::error, "loading", ex);
+            return false;
+        } finally {
+            loadTime = System.nanoTime() - start;
+        }
+        loaded = true;
+        return true;
+    }
+    
+    void runUnload() {
+        if (!loaded) {
+            return;
+        }
+        loaded = false;
+        
+        try {
+            unload();
+        } catch (Exception ex) {
+            ExceptionHandler.log(this::error, "unloading", ex);
+        }
+    }
+    
     void setEnabled(boolean enabled) {
         if (this.enabled == enabled) {
             return;
         }
         
         if (enabled) {
-            config = null;
-            this.enabled = true;
-            
-            if (!enabledBefore) {
-                enabledBefore = true;
-                try {
-                    load();
-                } catch (Exception ex) {
-                    ExceptionHandler.log(this::error, "loading", ex);
-                }
+            if (enabledBefore) {
+                config = null;
             }
+            if (!runLoad()) {
+                throw new IllegalStateException("Module " + name + " failed to load");
+            }
+            this.enabled = true;
+            enabledBefore = true;
+            idle = !needsTick();
             
+            long start = System.nanoTime();
             try {
                 enable();
-                info("enabled successfully");
+                enableTime = System.nanoTime() - start;
+                info(String.format("enabled successfully (load: %.1f ms, enable: %.1f ms)", loadTime / 1e6, enableTime / 1e6));
             } catch (Exception ex) {
+                enableTime = System.nanoTime() - start;
                 ExceptionHandler.log(this::error, "enabling", ex);
             }
             
@@ -85,11 +367,16 @@ public class Module<Manager extends ModuleManager> extends Logging.SubLogging {
             }
             
         } else {
+            // background work runs before the module is disabled, and work submitted by disable() runs before it returns,
+            // both within the one timeout
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(EXECUTOR_SHUTDOWN_TIMEOUT);
+            drainExecutor(deadline);
             try {
                 disable();
             } catch (Exception ex) {
                 ExceptionHandler.log(this::error, "disabling", ex);
             }
+            drainExecutor(deadline);
             
             this.enabled = false;
             
@@ -103,8 +390,121 @@ public class Module<Manager extends ModuleManager> extends Logging.SubLogging {
         return manager;
     }
     
+    /**
+     * @return the registrator of this module. Modules that were loaded from a module jar have their own registrator.
+     */
     public Registrator getRegistrator() {
-        return manager.getRegistrator();
+        return registrator != null ? registrator : manager.getRegistrator();
+    }
+    
+    /**
+     * @return the task scheduler of this module. Modules that were loaded from a module jar have their own scheduler,
+     * which cancels their tasks when they are unloaded.
+     */
+    public TaskScheduler getTaskScheduler() {
+        return taskScheduler != null ? taskScheduler : manager.getTaskScheduler();
+    }
+    
+    /**
+     * The executor for background work of this module, which is created when first requested.
+     * Tasks submitted to it run one at a time in submission order, on a pool that is shared with other modules.
+     *
+     * @return the executor of this module
+     * @see ActorExecutor
+     */
+    public ActorExecutor getExecutor() {
+        ActorExecutor result = executor;
+        if (result == null) {
+            synchronized (this) {
+                result = executor;
+                if (result == null) {
+                    executor = result = new ActorExecutor(name, t -> ExceptionHandler.log(this::error, "running a background task", t));
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Shut down the executor and wait for its queued tasks until the deadline, after which a new executor is created when requested
+     *
+     * @param deadline the {@link System#nanoTime()} at which to stop waiting
+     */
+    private void drainExecutor(long deadline) {
+        ActorExecutor executor;
+        synchronized (this) {
+            executor = this.executor;
+            this.executor = null;
+        }
+        if (executor == null) {
+            return;
+        }
+        
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                error("Timed out after " + EXECUTOR_SHUTDOWN_TIMEOUT + " ms whilst waiting for " + executor.getQueueDepth() + " background tasks");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            error("Interrupted whilst waiting for background tasks");
+        }
+    }
+    
+    /**
+     * Set the executor of a command that is declared in the plugin's plugin.yml.
+     * The executor is removed when the module is torn down, after its jar was unloaded.
+     *
+     * @param name     the name of the command
+     * @param executor the executor
+     */
+    protected void setCommandExecutor(String name, CommandExecutor executor) {
+        PluginCommand command = manager.getServer().getPluginCommand(name);
+        if (command == null) {
+            throw new IllegalArgumentException("Command " + name + " is not declared");
+        }
+        command.setExecutor(executor);
+        if (executor instanceof TabCompleter) {
+            command.setTabCompleter((TabCompleter) executor);
+        }
+        if (!commands.contains(command)) {
+            commands.add(command);
+        }
+    }
+    
+    /**
+     * Give this module its own registrator and scheduler, so that everything it registers can be torn down
+     */
+    void isolate() {
+        registrator = new Registrator(manager.getPlugin());
+        taskScheduler = new TrackingTaskScheduler(manager.getTaskScheduler());
+    }
+    
+    /**
+     * Unregister the listeners, tasks and commands of this module.
+     * The module can be {@link #isolate() isolated} and registered again afterwards.
+     */
+    void tearDown() {
+        if (lazyActivation != null) {
+            lazyActivation.unregister();
+        }
+        if (registrator != null) {
+            // the registrator listens for the plugin being disabled, which would keep this module's class loader alive
+            registrator.dispose();
+            registrator = null;
+        }
+        if (taskScheduler != null) {
+            taskScheduler.cancelAll();
+        }
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        for (PluginCommand command : commands) {
+            command.setExecutor(null);
+            command.setTabCompleter(null);
+        }
+        commands.clear();
     }
     
     private void checkUsesConfig() {
@@ -131,7 +531,7 @@ public class Module<Manager extends ModuleManager> extends Logging.SubLogging {
     
     private File getConfigFile() {
         checkUsesConfig();
-        return new File(getDataFolder(), "config.yml");
+        return new File(getDataFolder(), CONFIG_FILENAME);
     }
     
     private InputStream getDefaultConfigFile() {
@@ -154,6 +554,7 @@ public class Module<Manager extends ModuleManager> extends Logging.SubLogging {
                         out.write(buffer, 0, len);
                     }
                     debug("Wrote default config");
+                    rememberWrittenConfig();
                 } else {
                     warn("Default config does not exist");
                 }
@@ -168,6 +569,10 @@ public class Module<Manager extends ModuleManager> extends Logging.SubLogging {
             config = new YamlConfiguration();
         }
         
+        applyDefaults(config);
+    }
+    
+    private void applyDefaults(FileConfiguration config) {
         try (InputStream stream = getDefaultConfigFile()) {
             if (stream != null) {
                 Configuration defaults = loadYaml(stream, "default config");
@@ -177,9 +582,66 @@ public class Module<Manager extends ModuleManager> extends Logging.SubLogging {
         } catch (IOException ex) {
             ExceptionHandler.log(this::error, "loading default config", ex);
         }
+    }
+    
+    /**
+     * Whether the config should be reloaded when its file is changed, while the manager is {@link ModuleManager#setWatchingConfigs(boolean) watching configs}.
+     * The default implementation returns true if the module uses a config.
+     *
+     * @return true if the config should be reloaded automatically
+     */
+    protected boolean isHotReloadingConfig() {
+        return usesConfig;
+    }
+    
+    /**
+     * Called on the main thread after the config was reloaded because its file changed.
+     */
+    protected void configReloaded() {
         
     }
     
+    /**
+     * Parses the config file, unless it was last written by this module.
+     * This is called from the config watcher thread.
+     *
+     * @return the parsed config, with defaults applied, or null if the file wasn't changed by someone else
+     * @throws IOException                   if the file could not be read
+     * @throws InvalidConfigurationException if the file is of invalid syntax
+     */
+    YamlConfiguration parseChangedConfig() throws IOException, InvalidConfigurationException {
+        File file = getConfigFile();
+        if (!file.isFile()) {
+            return null;
+        }
+        
+        // compared by contents, because modification times are too coarse on some file systems to tell writes apart
+        byte[] contents = Files.readAllBytes(file.toPath());
+        if (Arrays.equals(digest(contents), configWrittenDigest)) {
+            return null;
+        }
+        
+        YamlConfiguration result = new YamlConfiguration();
+        result.loadFromString(new String(contents, StandardCharsets.UTF_8));
+        applyDefaults(result);
+        return result;
+    }
+    
+    void applyConfig(YamlConfiguration config) {
+        if (!enabled) {
+            this.config = null;
+            return;
+        }
+        
+        this.config = config;
+        debug("Reloaded config");
+        try {
+            configReloaded();
+        } catch (Exception ex) {
+            ExceptionHandler.log(this::error, "reloading config", ex);
+        }
+    }
+    
     private YamlConfiguration loadYaml(InputStream config, String configType) {
         YamlConfiguration result = new YamlConfiguration();
         if (config != null) try {
@@ -211,11 +673,29 @@ public class Module<Manager extends ModuleManager> extends Logging.SubLogging {
         checkUsesConfig();
         try {
             config.save(getConfigFile());
+            rememberWrittenConfig();
         } catch (IOException ex) {
             ExceptionHandler.log(this::error, "saving config", ex);
         }
     }
     
+    private void rememberWrittenConfig() {
+        try {
+            configWrittenDigest = digest(Files.readAllBytes(getConfigFile().toPath()));
+        } catch (IOException ex) {
+            configWrittenDigest = null;
+        }
+    }
+    
+    private static byte[] digest(byte[] contents) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(contents);
+        } catch (NoSuchAlgorithmException ex) {
+            // every java platform supports SHA-1
+            throw new IllegalStateException(ex);
+        }
+    }
+    
     //
     //Abuse hashing to prevent modules with duplicate filenames.
     //
@@ -0,0 +1,466 @@
+package io.dico.dicore.modules;
+
+import io.dico.dicore.serialization.IOCoordinator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps track of the modules of a {@link ModuleManager}, and implements the module lifecycle for its implementations.
+ */
+final class ModuleContainer {
+    private final ModuleManager manager;
+    private final Set<Module> modules = new HashSet<>();
+    private final Map<File, ModuleJar> jars = new HashMap<>();
+    private ConfigWatcher configWatcher;
+    
+    ModuleContainer(ModuleManager manager) {
+        this.manager = manager;
+    }
+    
+    Set<Module> getModules() {
+        return Collections.unmodifiableSet(modules);
+    }
+    
+    void register(String name, Module module) {
+        try {
+            module.setEnabled(true);
+        } catch (Throwable t) {
+            manager.error("Failed to enable module " + name);
+            t.printStackTrace();
+            return;
+        }
+        modules.add(module);
+        if (configWatcher != null) {
+            configWatcher.watch(module);
+        }
+    }
+    
+    /**
+     * Disables the module, unloads it and tears down its registrations
+     */
+    void unregister(Module module) {
+        if (!modules.remove(module)) {
+            return;
+        }
+        
+        if (configWatcher != null) {
+            configWatcher.unwatch(module);
+        }
+        try {
+            module.setEnabled(false);
+        } catch (Throwable t) {
+            manager.error("Failed to disable module " + module.getName());
+            t.printStackTrace();
+        } finally {
+            module.runUnload();
+            module.tearDown();
+        }
+    }
+    
+    Collection<ModuleJar> getModuleJars() {
+        return Collections.unmodifiableCollection(jars.values());
+    }
+    
+    ModuleJar loadJar(File file) throws IOException {
+        File key = file.getCanonicalFile();
+        if (jars.containsKey(key)) {
+            throw new IllegalStateException("Module jar " + file.getName() + " is already loaded");
+        }
+        
+        ModuleJar jar = ModuleJar.open(manager, file);
+        for (Module module : jar.getModules()) {
+            if (modules.contains(module)) {
+                for (Module jarModule : jar.getModules()) {
+                    jarModule.tearDown();
+                }
+                jar.close();
+                throw new IllegalStateException("Module " + module.getName() + " from jar " + file.getName() + " is already registered");
+            }
+        }
+        jars.put(key, jar);
+        registerAll(jar.getModules());
+        return jar;
+    }
+    
+    boolean unloadJar(File file) throws IOException {
+        ModuleJar jar = jars.remove(file.getCanonicalFile());
+        if (jar == null) {
+            return false;
+        }
+        
+        unregisterJarModules(jar);
+        jar.close();
+        manager.info("Unloaded module jar " + file.getName());
+        return true;
+    }
+    
+    /**
+     * Opens and warms up the new version of the jar before the old version is unloaded.
+     * If the new version fails to open, the old version stays loaded.
+     * If a module of the new version fails to enable, the new version is unloaded and the old version is registered again.
+     */
+    ModuleJar reloadJar(File file) throws IOException {
+        File key = file.getCanonicalFile();
+        ModuleJar old = jars.get(key);
+        if (old == null) {
+            return loadJar(file);
+        }
+        
+        long start = System.nanoTime();
+        ModuleJar jar = ModuleJar.open(manager, file);
+        // the old class loader stays open until the new version is registered, for the rollback
+        unregisterJarModules(old);
+        jars.put(key, jar);
+        if (registerAll(jar.getModules())) {
+            old.close();
+            manager.info(String.format("Reloaded module jar %s in %.1f ms", file.getName(), (System.nanoTime() - start) / 1e6));
+            return jar;
+        }
+        
+        manager.error("Failed to enable the new version of module jar " + file.getName() + ", restoring the old version");
+        unregisterJarModules(jar);
+        jar.close();
+        jars.put(key, old);
+        for (Module module : old.getModules()) {
+            module.isolate();
+        }
+        registerAll(old.getModules());
+        return old;
+    }
+    
+    /**
+     * Unregisters the modules of the jar in reverse order, and tears down the modules that weren't registered
+     */
+    private void unregisterJarModules(ModuleJar jar) {
+        List<Module> jarModules = new ArrayList<>(jar.getModules());
+        Collections.reverse(jarModules);
+        for (Module module : jarModules) {
+            if (modules.contains(module)) {
+                unregister(module);
+            } else {
+                module.tearDown();
+            }
+        }
+    }
+    
+    boolean isWatchingConfigs() {
+        return configWatcher != null;
+    }
+    
+    void setWatchingConfigs(boolean watching) {
+        if (watching == (configWatcher != null)) {
+            return;
+        }
+        
+        if (watching) {
+            try {
+                configWatcher = new ConfigWatcher(manager);
+            } catch (IOException ex) {
+                manager.error("Failed to start watching module configs");
+                ex.printStackTrace();
+                return;
+            }
+            for (Module module : modules) {
+                configWatcher.watch(module);
+            }
+            configWatcher.start();
+        } else {
+            configWatcher.close();
+            configWatcher = null;
+        }
+    }
+    
+    void registerLazy(Module module, long idleTimeout) {
+        if (modules.contains(module)) {
+            manager.error("Module " + module.getName() + " is already registered");
+            return;
+        }
+        
+        LazyActivation activation = new LazyActivation(this, module, idleTimeout);
+        try {
+            module.registerStubs(activation);
+            activation.register();
+        } catch (Throwable t) {
+            activation.unregister();
+            manager.error("Failed to register stubs of module " + module.getName());
+            t.printStackTrace();
+            return;
+        }
+        module.setLazyActivation(activation);
+        modules.add(module);
+        if (configWatcher != null) {
+            configWatcher.watch(module);
+        }
+    }
+    
+    void activate(Module module) {
+        long start = System.nanoTime();
+        try {
+            module.setEnabled(true);
+        } catch (Throwable t) {
+            manager.error("Failed to activate module " + module.getName());
+            t.printStackTrace();
+            return;
+        }
+        manager.debug(String.format("Activated module %s in %.1f ms", module.getName(), (System.nanoTime() - start) / 1e6));
+    }
+    
+    void deactivate(Module module) {
+        try {
+            module.setEnabled(false);
+        } finally {
+            module.runUnload();
+        }
+        manager.debug("Deactivated idle module " + module.getName());
+    }
+    
+    /**
+     * Registers the modules in the order of their dependencies.
+     * The {@link Module#load()} phases run in parallel on a worker pool, as soon as the dependencies of a module have been loaded.
+     * The {@link Module#enable()} phases run on the calling thread, in dependency order.
+     *
+     * @return true if all modules were registered
+     */
+    boolean registerAll(Collection<? extends Module> toRegister) {
+        long start = System.nanoTime();
+        List<Module> order = sortByDependencies(toRegister);
+        if (order.isEmpty()) {
+            return toRegister.isEmpty();
+        }
+        
+        int threads = Math.max(1, Math.min(order.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, newThreadFactory(manager.getName() + "-module-loader-"));
+        Set<String> failed = new HashSet<>();
+        try {
+            Map<String, CompletableFuture<Boolean>> loads = new HashMap<>();
+            for (Module module : order) {
+                CompletableFuture<Boolean>[] dependencies = dependencyLoads(module, loads);
+                // a module isn't loaded if one of its dependencies failed to load
+                loads.put(module.getName(), CompletableFuture.allOf(dependencies)
+                        .thenApplyAsync(ignored -> allLoaded(dependencies) && module.runLoad(), executor));
+            }
+            
+            for (Module module : order) {
+                String missing = firstMatch(module.getDependencies(), failed);
+                if (missing != null) {
+                    manager.error("Not enabling module " + module.getName() + " because its dependency " + missing + " failed to enable");
+                    failed.add(module.getName());
+                    // prevents the load if it hasn't started yet, otherwise the module is unloaded below
+                    loads.get(module.getName()).cancel(false);
+                    continue;
+                }
+                
+                boolean loaded;
+                try {
+                    loaded = loads.get(module.getName()).join();
+                } catch (CompletionException ex) {
+                    ex.getCause().printStackTrace();
+                    loaded = false;
+                }
+                if (!loaded) {
+                    manager.error("Not enabling module " + module.getName() + " because it failed to load");
+                    failed.add(module.getName());
+                    continue;
+                }
+                register(module.getName(), module);
+                if (!modules.contains(module)) {
+                    failed.add(module.getName());
+                }
+            }
+        } finally {
+            executor.shutdown();
+            awaitLoads(executor);
+        }
+        
+        // release the config and data of modules that were loaded but not registered
+        for (Module module : order) {
+            if (!modules.contains(module)) {
+                module.runUnload();
+            }
+        }
+        
+        manager.info(String.format("Registered %d modules in %.1f ms", order.size() - failed.size(), (System.nanoTime() - start) / 1e6));
+        // modules with missing dependencies aren't in the order
+        return failed.isEmpty() && order.size() == toRegister.size();
+    }
+    
+    /**
+     * Waits for loads that are still running, such that no module is loaded concurrently with the calling thread after registerAll returns
+     */
+    private void awaitLoads(ExecutorService executor) {
+        try {
+            while (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                manager.warn("Waiting for modules to finish loading");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            manager.error("Interrupted whilst waiting for modules to finish loading");
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static CompletableFuture<Boolean>[] dependencyLoads(Module module, Map<String, CompletableFuture<Boolean>> loads) {
+        List<CompletableFuture<Boolean>> result = new ArrayList<>();
+        for (Object dependency : module.getDependencies()) {
+            CompletableFuture<Boolean> load = loads.get(dependency);
+            if (load != null) {
+                result.add(load);
+            }
+        }
+        return result.toArray(new CompletableFuture[result.size()]);
+    }
+    
+    /**
+     * @param loads the loads, which must be complete
+     * @return true if all loads completed normally and succeeded
+     */
+    private static boolean allLoaded(CompletableFuture<Boolean>[] loads) {
+        for (CompletableFuture<Boolean> load : loads) {
+            if (load.isCompletedExceptionally() || !load.join()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static String firstMatch(Collection<?> names, Set<String> set) {
+        for (Object name : names) {
+            if (set.contains(name)) {
+                return (String) name;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Kahn's algorithm. Modules with missing or circular dependencies are reported and left out.
+     */
+    private List<Module> sortByDependencies(Collection<? extends Module> toRegister) {
+        Map<String, Module> byName = new LinkedHashMap<>();
+        for (Module module : toRegister) {
+            if (module != null) {
+                byName.put(module.getName(), module);
+            }
+        }
+        
+        Set<String> available = new HashSet<>();
+        for (Module module : modules) {
+            available.add(module.getName());
+        }
+        
+        Map<String, List<Module>> dependents = new HashMap<>();
+        Map<Module, Integer> pending = new HashMap<>();
+        Deque<Module> ready = new ArrayDeque<>();
+        Set<String> unavailable = new HashSet<>();
+        
+        for (Module module : byName.values()) {
+            int count = 0;
+            for (Object dependency : module.getDependencies()) {
+                if (byName.containsKey(dependency)) {
+                    dependents.computeIfAbsent((String) dependency, k -> new ArrayList<>()).add(module);
+                    count++;
+                } else if (!available.contains(dependency)) {
+                    manager.error("Module " + module.getName() + " depends on module " + dependency + ", which is not registered");
+                    unavailable.add(module.getName());
+                }
+            }
+            pending.put(module, count);
+            if (count == 0) {
+                ready.add(module);
+            }
+        }
+        
+        List<Module> result = new ArrayList<>(byName.size());
+        while (!ready.isEmpty()) {
+            Module module = ready.poll();
+            pending.remove(module);
+            for (Module dependent : dependents.getOrDefault(module.getName(), Collections.emptyList())) {
+                if (unavailable.contains(module.getName())) {
+                    unavailable.add(dependent.getName());
+                }
+                if (pending.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+            if (unavailable.contains(module.getName())) {
+                manager.error("Not registering module " + module.getName() + " because of missing dependencies");
+            } else {
+                result.add(module);
+            }
+        }
+        
+        if (!pending.isEmpty()) {
+            StringJoiner names = new StringJoiner(", ");
+            for (Module module : pending.keySet()) {
+                names.add(module.getName());
+            }
+            manager.error("Not registering modules with circular dependencies: " + names);
+        }
+        
+        return result;
+    }
+    
+    private static ThreadFactory newThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    /**
+     * Updates the modules that are due, skipping idle modules.
+     */
+    void tick() {
+        for (Module module : modules) {
+            if (module.isTickDue()) {
+                try {
+                    module.runUpdate();
+                } catch (Throwable t) {
+                    manager.error("Error occurred whilst ticking module " + module.getName());
+                    t.printStackTrace();
+                }
+            }
+        }
+    }
+    
+    void disableAll() {
+        setWatchingConfigs(false);
+        for (Module module : modules) {
+            LazyActivation activation = module.getLazyActivation();
+            if (activation != null) {
+                activation.unregister();
+            }
+            if (module.isEnabled()) {
+                module.setEnabled(false);
+            }
+        }
+        for (ModuleJar jar : jars.values()) {
+            for (Module module : jar.getModules()) {
+                modules.remove(module);
+                module.tearDown();
+            }
+            jar.close();
+        }
+        jars.clear();
+        
+        try {
+            if (!IOCoordinator.flushShared(10, TimeUnit.SECONDS)) {
+                manager.error("Timed out whilst waiting for pending saves");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+}
@@ -0,0 +1,170 @@
+package io.dico.dicore.modules;
+
+import io.dico.dicore.Registrator;
+
+import java.io.*;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * A jar containing modules, loaded in its own class loader so that it can be unloaded and reloaded at runtime.
+ * <p>
+ * The module classes are listed in the jar's {@code META-INF/services/io.dico.dicore.modules.Module} file, one per line,
+ * and are instantiated using {@link Modules#newInstanceOf(Class, ModuleManager)}.
+ * The class loader's parent is the class loader of the manager's plugin.
+ * <p>
+ * The jar is copied before it is opened, so that the original file can be replaced while the modules are loaded.
+ */
+public final class ModuleJar {
+    static final String SERVICE_FILE = "META-INF/services/" + Module.class.getName();
+    private final File file;
+    private final File copy;
+    private final URLClassLoader classLoader;
+    private final List<Module> modules;
+    
+    private ModuleJar(File file, File copy, URLClassLoader classLoader, List<Module> modules) {
+        this.file = file;
+        this.copy = copy;
+        this.classLoader = classLoader;
+        this.modules = modules;
+    }
+    
+    public File getFile() {
+        return file;
+    }
+    
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+    
+    public List<Module> getModules() {
+        return Collections.unmodifiableList(modules);
+    }
+    
+    /**
+     * Open the jar and instantiate its modules, without registering them.
+     * All classes in the jar are loaded, and {@link Module#warmUp()} is called on each module.
+     *
+     * @param manager the manager
+     * @param file    the jar file
+     * @return the jar
+     * @throws IOException if the jar can't be read, or a module can't be instantiated
+     */
+    static ModuleJar open(ModuleManager manager, File file) throws IOException {
+        File copy = File.createTempFile(file.getName().replace(".jar", "") + "-", ".jar");
+        try {
+            Files.copy(file.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            delete(copy);
+            throw ex;
+        }
+        
+        URLClassLoader classLoader = new URLClassLoader(new URL[]{copy.toURI().toURL()}, manager.getPlugin().getClass().getClassLoader());
+        List<Module> modules = new ArrayList<>();
+        try {
+            for (String className : readModuleClassNames(classLoader, file)) {
+                Class<? extends Module> moduleClass = Class.forName(className, true, classLoader).asSubclass(Module.class);
+                Module module = Modules.newInstanceOf(moduleClass, manager);
+                if (module == null) {
+                    throw new IOException("Failed to instantiate module " + className);
+                }
+                module.isolate();
+                modules.add(module);
+            }
+            
+            preloadClasses(classLoader, copy);
+            for (Module module : modules) {
+                module.warmUp();
+            }
+            return new ModuleJar(file, copy, classLoader, modules);
+        } catch (IOException | RuntimeException | LinkageError | ClassNotFoundException ex) {
+            for (Module module : modules) {
+                module.tearDown();
+            }
+            closeQuietly(classLoader);
+            Registrator.evictEventClasses(classLoader);
+            delete(copy);
+            throw ex instanceof IOException ? (IOException) ex : new IOException("Failed to open module jar " + file.getName(), ex);
+        }
+    }
+    
+    private static List<String> readModuleClassNames(URLClassLoader classLoader, File file) throws IOException {
+        URL serviceFile = classLoader.findResource(SERVICE_FILE);
+        if (serviceFile == null) {
+            throw new IOException("Module jar " + file.getName() + " does not contain " + SERVICE_FILE);
+        }
+        
+        List<String> result = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(serviceFile.openStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comment = line.indexOf('#');
+                if (comment != -1) {
+                    line = line.substring(0, comment);
+                }
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    result.add(line);
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Load all classes in the jar up front, so that class loading doesn't happen on the first use after the swap.
+     * Classes that fail to load, for instance because they refer to optional dependencies, are skipped.
+     */
+    private static void preloadClasses(ClassLoader classLoader, File jar) throws IOException {
+        try (JarFile jarFile = new JarFile(jar)) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (name.endsWith(".class") && !name.endsWith("module-info.class")) {
+                    String className = name.substring(0, name.length() - ".class".length()).replace('/', '.');
+                    try {
+                        Class.forName(className, false, classLoader);
+                    } catch (ClassNotFoundException | LinkageError ignored) {
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Close the class loader and delete the copy of the jar. The modules must have been unregistered.
+     */
+    void close() {
+        closeQuietly(classLoader);
+        Registrator.evictEventClasses(classLoader);
+        delete(copy);
+    }
+    
+    /**
+     * Delete the copy of a jar, or have it deleted when the JVM exits if it can't be deleted now.
+     * The copy isn't marked for deletion on open, as every mark is kept until the JVM exits.
+     */
+    private static void delete(File copy) {
+        if (!copy.delete() && copy.exists()) {
+            copy.deleteOnExit();
+        }
+    }
+    
+    private static void closeQuietly(URLClassLoader classLoader) {
+        try {
+            classLoader.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+    
+}
@@ -4,11 +4,15 @@ import io.dico.dicore.Formatting;
 import io.dico.dicore.Logging;
 import io.dico.dicore.Registrator;
 import io.dico.dicore.TickTask;
+import io.dico.dicore.task.scheduler.TaskScheduler;
 import org.bukkit.Server;
 import org.bukkit.command.CommandSender;
 import org.bukkit.plugin.Plugin;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Set;
 
 public interface ModuleManager extends Logging {
@@ -40,10 +44,82 @@ public interface ModuleManager extends Logging {
     
     void registerModule(String name, Module module);
     
+    /**
+     * Register the modules in the order of their {@link Module#getDependencies() dependencies}.
+     * Their {@link Module#load()} phases run in parallel on worker threads, after the dependencies of each module have been loaded.
+     * Their {@link Module#enable()} phases run on the calling thread.
+     *
+     * @param modules the modules
+     */
+    void registerModules(Collection<? extends Module> modules);
+    
+    default void registerModules(Module... modules) {
+        registerModules(Arrays.asList(modules));
+    }
+    
+    /**
+     * Register the module without loading or enabling it.
+     * The module is activated by the stubs it declares in {@link Module#registerStubs(LazyActivation)}.
+     *
+     * @param module      the module
+     * @param idleTimeout the time in milliseconds after which the module is deactivated if it isn't used, or 0 to keep it active
+     * @see LazyActivation
+     */
+    void registerLazyModule(Module module, long idleTimeout);
+    
+    default void registerLazyModule(Module module) {
+        registerLazyModule(module, 0);
+    }
+    
+    /**
+     * Load the modules in the jar in their own class loader, and register them.
+     *
+     * @param jar the jar file
+     * @return the loaded jar
+     * @throws IOException           if the jar can't be opened, or its modules can't be instantiated
+     * @throws IllegalStateException if the jar is already loaded, or one of its modules is already registered
+     * @see ModuleJar
+     */
+    ModuleJar loadModuleJar(File jar) throws IOException;
+    
+    /**
+     * Disable and unload the modules in the jar, tear down their listeners, tasks and commands, and close its class loader.
+     *
+     * @param jar the jar file
+     * @return true if the jar was loaded
+     * @throws IOException if the path of the jar can't be resolved
+     */
+    boolean unloadModuleJar(File jar) throws IOException;
+    
+    /**
+     * Load the current version of the jar and warm it up, then unload the old version and register the new modules.
+     * If the new version can't be loaded, the old version stays active.
+     *
+     * @param jar the jar file
+     * @return the loaded jar
+     * @throws IOException if the new version of the jar can't be opened, or its modules can't be instantiated
+     */
+    ModuleJar reloadModuleJar(File jar) throws IOException;
+    
+    Collection<ModuleJar> getModuleJars();
+    
+    boolean isWatchingConfigs();
+    
+    /**
+     * Start or stop watching the data folders of the modules for changes to their config file.
+     * Changed configs are parsed on a background thread and applied to the module on the next tick,
+     * after which {@link Module#configReloaded()} is called.
+     *
+     * @param watching true to start watching
+     */
+    void setWatchingConfigs(boolean watching);
+    
     TickTask getTickTask();
     
     TickTask getModuleTickTask();
     
+    TaskScheduler getTaskScheduler();
+    
     String getMessagePrefix();
     
     void setMessagePrefix(String prefix);
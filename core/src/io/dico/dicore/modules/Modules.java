@@ -4,6 +4,7 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.TypeAdapter;
 import io.dico.dicore.Logging;
 import io.dico.dicore.exceptions.ExceptionHandler;
+import io.dico.dicore.serialization.BinaryFileAdapter;
 import io.dico.dicore.serialization.FileAdapter;
 import io.dico.dicore.serialization.GsonFileAdapter;
 import io.dico.dicore.serialization.JsonFileAdapter;
@@ -77,6 +78,11 @@ public class Modules {
         return JsonFileAdapter.create(supplier, onError, onError);
     }
     
+    public static <T extends JsonLoadable> FileAdapter<T> newBinaryFileAdapter(Logging logging, String usage, Supplier<T> supplier) {
+        Consumer<Exception> onError = ex -> ExceptionHandler.log(logging::error, "loading or saving " + usage, ex);
+        return BinaryFileAdapter.create(supplier, onError, onError);
+    }
+    
     public static <T> FileAdapter<T> newGsonFileAdapter(Logging logging, Type typeOfT, String usage, TypeAdapter<? super T> typeAdapter) {
         Consumer<Exception> onError = ex -> ExceptionHandler.log(logging::error, "loading or saving " + usage, ex);
         return GsonFileAdapter.create(typeOfT, new GsonBuilder().setPrettyPrinting().registerTypeAdapter(typeOfT, typeAdapter).create(), onError, onError);
@@ -0,0 +1,34 @@
+package io.dico.dicore.modules;
+
+import io.dico.dicore.serialization.FileAdapter;
+import io.dico.dicore.serialization.Partitioned;
+import io.dico.dicore.serialization.PartitionedFileAdapter;
+
+import java.util.function.Consumer;
+
+/**
+ * A persistent module whose data is saved per part, such that a save only rewrites the parts that changed.
+ * Parts are marked dirty by calling {@link io.dico.dicore.serialization.SubSaveable#scheduleSave()} on them.
+ *
+ * @see PartitionedFileAdapter
+ */
+public abstract class PartitionedPersistentModule<Manager extends ModuleManager, Data extends Partitioned<?>> extends PersistentModuleBase<Manager, Data> {
+    
+    protected PartitionedPersistentModule(String name, Manager manager, boolean usesConfig, boolean debugging) {
+        super(name, manager, usesConfig, debugging);
+    }
+    
+    @Override
+    FileAdapter<Data> newAdapter(Consumer<Throwable> onErrorLoad, Consumer<Throwable> onErrorSave) {
+        return PartitionedFileAdapter.create(this::generateDefaultData, onErrorLoad, onErrorSave);
+    }
+    
+    /**
+     * Partitioned data is always saved on the main thread, because a save reads and clears the dirty flags of the parts.
+     */
+    @Override
+    protected final Data snapshotData(Data data) {
+        return null;
+    }
+    
+}
@@ -2,15 +2,18 @@ package io.dico.dicore.modules;
 
 import io.dico.dicore.serialization.FileAdapter;
 import io.dico.dicore.serialization.Saveable;
+import io.dico.dicore.serialization.SnapshotSaver;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 abstract class PersistentModuleBase<Manager extends ModuleManager, Data> extends Module<Manager> implements Saveable {
     private final FileAdapter<Data> fileAdapter;
     private final String file;
+    private SnapshotSaver<Data> snapshotSaver;
     private Data data;
     private boolean saveScheduled = false;
     
@@ -53,12 +56,32 @@ abstract class PersistentModuleBase<Manager extends ModuleManager, Data> extends
         return false;
     }
     
+    /**
+     * Save the data on the next run of the module tick task.
+     * This wakes the module if it is idle.
+     */
     public final void scheduleSave() {
         saveScheduled = true;
+        wakeUp();
+    }
+    
+    FileAdapter<Data> getFileAdapter() {
+        return fileAdapter;
+    }
+    
+    String getFile() {
+        return file;
+    }
+    
+    /**
+     * @return the data read from storage, or null if it should be generated
+     */
+    Data readData() {
+        return fileAdapter.load(file);
     }
     
     protected void loadData() {
-        Data result = fileAdapter.load(file);
+        Data result = readData();
         if (result == null) {
             if (data == null) {
                 data = generateDefaultData();
@@ -71,9 +94,60 @@ abstract class PersistentModuleBase<Manager extends ModuleManager, Data> extends
         dataLoaded();
     }
     
+    /**
+     * Capture a snapshot of the data that can be serialized on another thread.
+     * The snapshot must not be modified after it is returned, such as a copy or an immutable view of the data.
+     * Data that is kept in the persistent collections of {@link io.dico.dicore.collection} can return itself, or hold them by reference.
+     * <p>
+     * If a snapshot is returned, {@link #saveData()} only calls this method on the main thread,
+     * and the snapshot is written by a background thread.
+     * The default implementation returns null, which means that the data is serialized on the main thread.
+     *
+     * @param data the current data
+     * @return the snapshot, or null if the data should be saved synchronously
+     */
+    protected Data snapshotData(Data data) {
+        return null;
+    }
+    
+    /**
+     * @return the time in milliseconds to wait for pending background saves when the module is disabled
+     */
+    protected long getFinalSaveTimeout() {
+        return 10000;
+    }
+    
     protected void saveData() {
         if (data != null) {
-            fileAdapter.save(data, file);
+            Data snapshot = snapshotData(data);
+            if (snapshot == null) {
+                fileAdapter.save(data, file);
+            } else {
+                getSnapshotSaver().submit(snapshot);
+            }
+        }
+    }
+    
+    private SnapshotSaver<Data> getSnapshotSaver() {
+        if (snapshotSaver == null) {
+            snapshotSaver = new SnapshotSaver<>(fileAdapter, file);
+        }
+        return snapshotSaver;
+    }
+    
+    private void awaitSnapshotSaver() {
+        if (snapshotSaver == null) {
+            return;
+        }
+        
+        long timeout = getFinalSaveTimeout();
+        try {
+            if (!snapshotSaver.await(timeout, TimeUnit.MILLISECONDS)) {
+                error("Timed out after " + timeout + " ms whilst saving data for module " + getName());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            error("Interrupted whilst saving data for module " + getName());
         }
     }
     
@@ -85,6 +159,18 @@ abstract class PersistentModuleBase<Manager extends ModuleManager, Data> extends
         }
     }
     
+    /**
+     * Persistent modules are idle until a save is {@link #scheduleSave() scheduled}, which wakes them up.
+     * Subclasses that override {@link #update()} to do work every tick, or {@link #isSaveScheduled()} to
+     * schedule saves without calling {@link #scheduleSave()}, must override this method to return true.
+     *
+     * @return false
+     */
+    @Override
+    protected boolean needsTick() {
+        return false;
+    }
+    
     @Override
     void setEnabled(boolean enabled) {
         if (enabled != isEnabled()) {
@@ -92,6 +178,7 @@ abstract class PersistentModuleBase<Manager extends ModuleManager, Data> extends
             
             if (!enabled) {
                 saveData();
+                awaitSnapshotSaver();
             }
             
         }
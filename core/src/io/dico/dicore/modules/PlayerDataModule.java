@@ -0,0 +1,225 @@
+package io.dico.dicore.modules;
+
+import io.dico.dicore.Registrator;
+import io.dico.dicore.event.ListenerHandle;
+import io.dico.dicore.serialization.JsonLoadable;
+import io.dico.dicore.serialization.RecordStore;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A module that keeps data per player, in a {@link RecordStore} with a file per player, instead of one data object for all players.
+ * <p>
+ * The data of a player is loaded when they log in, on the thread of the {@link AsyncPlayerPreLoginEvent}, and stays in memory
+ * while they are online. After they quit, their data is kept in a cache of {@link #getCacheSize()} records, from which the
+ * least recently used records are evicted. Changes are persisted by calling {@link #markDirty(UUID)}, after which the data
+ * is serialized on the next run of the module tick task and written in the background.
+ */
+public abstract class PlayerDataModule<Manager extends ModuleManager, Data extends JsonLoadable> extends Module<Manager> {
+    private final List<ListenerHandle> listeners = new ArrayList<>();
+    private RecordStore<Data> store;
+    
+    protected PlayerDataModule(String name, Manager manager, boolean usesConfig, boolean debugging) {
+        super(name, manager, usesConfig, debugging);
+    }
+    
+    /**
+     * @param uuid the uuid of the player
+     * @return the data of a player that has no data yet, which is also the object that data is loaded into
+     */
+    protected abstract Data generateDefaultData(UUID uuid);
+    
+    /**
+     * @return the maximum amount of records of offline players to keep in memory
+     */
+    protected int getCacheSize() {
+        return 256;
+    }
+    
+    /**
+     * @return the time in milliseconds to wait for pending writes when the module is disabled
+     */
+    protected long getFinalSaveTimeout() {
+        return 10000;
+    }
+    
+    /**
+     * @return the store of the data, which is created when the module is enabled
+     */
+    protected RecordStore<Data> getStore() {
+        if (store == null) {
+            File directory = new File(getDataFolder(), "players");
+            store = new RecordStore<>(directory, this::generateDefaultData, ex -> {
+                if (ex instanceof FileNotFoundException) {
+                    return;
+                }
+                error("Error occurred whilst loading or saving player data for module " + getName());
+                ex.printStackTrace();
+            }, getCacheSize());
+        }
+        return store;
+    }
+    
+    /**
+     * @param player the player
+     * @return the data of the player, which is loaded on the current thread if it isn't in memory
+     */
+    public Data getData(Player player) {
+        return getData(player.getUniqueId());
+    }
+    
+    /**
+     * Get the data of a player, who doesn't have to be online.
+     * If the data isn't in memory, it is loaded on the current thread. Use {@link #loadDataAsync(UUID)} to avoid that.
+     *
+     * @param uuid the uuid of the player
+     * @return the data of the player
+     */
+    public Data getData(UUID uuid) {
+        return getStore().load(uuid);
+    }
+    
+    /**
+     * @param uuid the uuid of the player
+     * @return the data of the player, or null if it isn't in memory
+     */
+    public Data getDataIfLoaded(UUID uuid) {
+        return getStore().getIfLoaded(uuid);
+    }
+    
+    /**
+     * Load the data of a player on the {@link #getExecutor() executor} of this module.
+     * The future completes on that executor, so the data should be used on the main thread.
+     *
+     * @param uuid the uuid of the player
+     * @return a future of the data
+     */
+    public CompletableFuture<Data> loadDataAsync(UUID uuid) {
+        RecordStore<Data> store = getStore();
+        return CompletableFuture.supplyAsync(() -> store.load(uuid), getExecutor());
+    }
+    
+    /**
+     * Persist the changes of the data of a player.
+     * The data is written on the next run of the module tick task. This wakes the module if it is idle.
+     *
+     * @param uuid the uuid of the player
+     */
+    public void markDirty(UUID uuid) {
+        if (getStore().markDirty(uuid)) {
+            wakeUp();
+        }
+    }
+    
+    public void markDirty(Player player) {
+        markDirty(player.getUniqueId());
+    }
+    
+    @Override
+    protected void update() {
+        super.update();
+        getStore().flush();
+    }
+    
+    /**
+     * The module is idle until a record is {@link #markDirty(UUID) marked dirty}, which wakes it up.
+     * Subclasses that override {@link #update()} to do work every tick must override this method to return true.
+     *
+     * @return false
+     */
+    @Override
+    protected boolean needsTick() {
+        return false;
+    }
+    
+    private void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        getStore().acquire(event.getUniqueId());
+    }
+    
+    private void onPreLoginResult(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            getStore().release(event.getUniqueId());
+        }
+    }
+    
+    private void onLoginResult(PlayerLoginEvent event) {
+        // a player that is disallowed after the pre login, such as by a ban or a full server, never quits
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            getStore().release(event.getPlayer().getUniqueId());
+        }
+    }
+    
+    private void onQuit(PlayerQuitEvent event) {
+        getStore().release(event.getPlayer().getUniqueId());
+    }
+    
+    @Override
+    void setEnabled(boolean enabled) {
+        if (enabled == isEnabled()) {
+            return;
+        }
+        
+        if (enabled) {
+            RecordStore<Data> store = getStore();
+            // players that logged in while the module was disabled
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                store.acquire(player.getUniqueId());
+            }
+            
+            Registrator registrator = getRegistrator();
+            listeners.add(registrator.makeListenerHandle(AsyncPlayerPreLoginEvent.class, EventPriority.LOWEST, this::onPreLogin));
+            listeners.add(registrator.makeListenerHandle(AsyncPlayerPreLoginEvent.class, EventPriority.MONITOR, this::onPreLoginResult));
+            listeners.add(registrator.makeListenerHandle(PlayerLoginEvent.class, EventPriority.MONITOR, this::onLoginResult));
+            listeners.add(registrator.makeListenerHandle(PlayerQuitEvent.class, EventPriority.MONITOR, this::onQuit));
+            for (ListenerHandle listener : listeners) {
+                listener.register();
+            }
+            
+            try {
+                super.setEnabled(true);
+            } catch (RuntimeException ex) {
+                unregisterListeners();
+                closeStore();
+                throw ex;
+            }
+            return;
+        }
+        
+        super.setEnabled(false);
+        unregisterListeners();
+        closeStore();
+    }
+    
+    private void unregisterListeners() {
+        for (ListenerHandle listener : listeners) {
+            listener.unregister();
+        }
+        listeners.clear();
+    }
+    
+    private void closeStore() {
+        long timeout = getFinalSaveTimeout();
+        try {
+            if (!store.close(timeout, TimeUnit.MILLISECONDS)) {
+                error("Timed out after " + timeout + " ms whilst saving player data for module " + getName());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            error("Interrupted whilst saving player data for module " + getName());
+        }
+        store = null;
+    }
+    
+}
@@ -4,14 +4,14 @@ import io.dico.dicore.Formatting;
 import io.dico.dicore.Logging;
 import io.dico.dicore.Registrator;
 import io.dico.dicore.TickTask;
-import org.bukkit.Bukkit;
+import io.dico.dicore.task.scheduler.TaskScheduler;
 import org.bukkit.Server;
 import org.bukkit.event.Listener;
 import org.bukkit.plugin.Plugin;
 
 import java.io.File;
-import java.util.Collections;
-import java.util.HashSet;
+import java.io.IOException;
+import java.util.Collection;
 import java.util.Objects;
 import java.util.Set;
 
@@ -19,9 +19,10 @@ public class PluginModuleAddon extends Logging.RootLogging implements ModuleMana
     private final Plugin plugin;
     private final String name;
     private final Registrator registrator;
-    private final Set<Module> modules = new HashSet<>();
+    private final ModuleContainer modules = new ModuleContainer(this);
     private TickTask tickTask;
     private TickTask moduleTickTask;
+    private TaskScheduler taskScheduler;
     private String messagePrefix;
     private boolean enabled;
     
@@ -35,7 +36,7 @@ public class PluginModuleAddon extends Logging.RootLogging implements ModuleMana
     
     @Override
     public Set<Module> getModules() {
-        return Collections.unmodifiableSet(modules);
+        return modules.getModules();
     }
     
     @Override
@@ -56,23 +57,53 @@ public class PluginModuleAddon extends Logging.RootLogging implements ModuleMana
     
     @Override
     public void registerModule(String name, Module module) {
-        try {
-            module.setEnabled(true);
-            if (module instanceof Listener) {
-                Bukkit.getPluginManager().registerEvents((Listener) module, plugin);
-            }
-        } catch (Throwable t) {
-            error("Failed to enable module " + name);
-            t.printStackTrace();
-            return;
-        }
-        modules.add(module);
+        modules.register(name, module);
+    }
+    
+    @Override
+    public void registerModules(Collection<? extends Module> modules) {
+        this.modules.registerAll(modules);
+    }
+    
+    @Override
+    public void registerLazyModule(Module module, long idleTimeout) {
+        modules.registerLazy(module, idleTimeout);
+    }
+    
+    @Override
+    public ModuleJar loadModuleJar(File jar) throws IOException {
+        return modules.loadJar(jar);
+    }
+    
+    @Override
+    public boolean unloadModuleJar(File jar) throws IOException {
+        return modules.unloadJar(jar);
+    }
+    
+    @Override
+    public ModuleJar reloadModuleJar(File jar) throws IOException {
+        return modules.reloadJar(jar);
+    }
+    
+    @Override
+    public Collection<ModuleJar> getModuleJars() {
+        return modules.getModuleJars();
+    }
+    
+    @Override
+    public boolean isWatchingConfigs() {
+        return modules.isWatchingConfigs();
+    }
+    
+    @Override
+    public void setWatchingConfigs(boolean watching) {
+        modules.setWatchingConfigs(watching);
     }
     
     @Override
     public TickTask getTickTask() {
         if (tickTask == null) {
-            tickTask = new TickTask(plugin) {
+            tickTask = new TickTask(getTaskScheduler()) {
                 @Override
                 protected void tick() {
                     PluginModuleAddon.this.tick();
@@ -85,7 +116,7 @@ public class PluginModuleAddon extends Logging.RootLogging implements ModuleMana
     @Override
     public TickTask getModuleTickTask() {
         if (moduleTickTask == null) {
-            moduleTickTask = new TickTask(plugin) {
+            moduleTickTask = new TickTask(getTaskScheduler()) {
                 @Override
                 protected void tick() {
                     PluginModuleAddon.this.tickModules();
@@ -95,6 +126,14 @@ public class PluginModuleAddon extends Logging.RootLogging implements ModuleMana
         return moduleTickTask;
     }
     
+    @Override
+    public TaskScheduler getTaskScheduler() {
+        if (taskScheduler == null) {
+            taskScheduler = (plugin instanceof DicoPlugin) ? ((DicoPlugin) plugin).getTaskScheduler() : TaskScheduler.of(plugin);
+        }
+        return taskScheduler;
+    }
+    
     protected boolean preEnable() {
         return true;
     }
@@ -112,16 +151,7 @@ public class PluginModuleAddon extends Logging.RootLogging implements ModuleMana
     }
     
     protected void tickModules() {
-        for (Module module : modules) {
-            if (module.isEnabled()) {
-                try {
-                    module.update();
-                } catch (Throwable t) {
-                    error("Error occurred whilst ticking module " + module.getName());
-                    t.printStackTrace();
-                }
-            }
-        }
+        modules.tick();
     }
     
     @Override
@@ -142,11 +172,7 @@ public class PluginModuleAddon extends Logging.RootLogging implements ModuleMana
     public void setEnabled(boolean enabled) {
         if (this.enabled) {
             if (!enabled) {
-                for (Module module : modules) {
-                    if (module.isEnabled()) {
-                        module.setEnabled(false);
-                    }
-                }
+                modules.disableAll();
                 disable();
                 this.enabled = false;
             }
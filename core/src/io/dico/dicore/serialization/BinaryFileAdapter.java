@@ -0,0 +1,107 @@
+package io.dico.dicore.serialization;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Saves {@link JsonLoadable} objects in the binary format of {@link BinaryJsonWriter}, which is smaller and faster to parse than JSON text.
+ * <p>
+ * Files start with a magic number. Files without it are read as JSON text, so that data saved by a {@link JsonFileAdapter}
+ * is converted to the binary format by the next save.
+ */
+public abstract class BinaryFileAdapter<T extends JsonLoadable> extends FileAdapter<T> {
+
+    @Override
+    public void saveUnsafe(T object, String path) throws Exception {
+        writeFile(path, out -> {
+            out.write(BinaryJson.MAGIC);
+            BinaryJsonWriter writer = new BinaryJsonWriter(out);
+            object.writeTo(writer);
+            writer.flush();
+        });
+    }
+
+    @Override
+    public T loadUnsafe(String path) throws Exception {
+        // the whole file is parsed from memory, so it is read at once into an array of its size
+        byte[] data = Files.readAllBytes(fileAt(path, false).toPath());
+        Compression compression = Compression.detect(data.length > 0 ? data[0] & 0xFF : -1, data.length > 1 ? data[1] & 0xFF : -1);
+        if (compression != Compression.NONE) {
+            try (InputStream in = compression.unwrap(new ByteArrayInputStream(data))) {
+                data = readFully(in, uncompressedSizeHint(compression, data));
+            }
+        }
+
+        T object = fallback();
+        if (BinaryJson.hasMagic(data, data.length)) {
+            int offset = BinaryJson.MAGIC.length;
+            object.loadFrom(new BinaryJsonReader(data, offset, data.length - offset));
+        } else {
+            object.loadFrom(new JsonReader(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8)));
+        }
+        return object;
+    }
+
+    private static int uncompressedSizeHint(Compression compression, byte[] data) {
+        if (compression == Compression.GZIP && data.length >= 18) {
+            // the trailer of a gzip file ends with the uncompressed size modulo 2^32, in little endian order
+            int end = data.length;
+            long size = (data[end - 4] & 0xFFL) | (data[end - 3] & 0xFFL) << 8 | (data[end - 2] & 0xFFL) << 16 | (data[end - 1] & 0xFFL) << 24;
+            if (size > 0 && size < Integer.MAX_VALUE - 8) {
+                return (int) size;
+            }
+        }
+        return data.length < (Integer.MAX_VALUE - 8) / 4 ? Math.max(data.length * 4, 256) : Integer.MAX_VALUE - 8;
+    }
+
+    private static byte[] readFully(InputStream in, int sizeHint) throws IOException {
+        byte[] result = new byte[sizeHint];
+        int size = 0;
+        int read;
+        while ((read = in.read(result, size, result.length - size)) != -1) {
+            size += read;
+            if (size == result.length) {
+                int next = in.read();
+                if (next == -1) {
+                    break;
+                }
+                result = Arrays.copyOf(result, (int) Math.min(result.length * 2L, Integer.MAX_VALUE - 8));
+                result[size++] = (byte) next;
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    public static <T extends JsonLoadable> BinaryFileAdapter<T> create(Supplier<T> constructor, Consumer<? super Exception> onError) {
+        return create(constructor, onError, onError);
+    }
+
+    public static <T extends JsonLoadable> BinaryFileAdapter<T> create(Supplier<T> constructor, Consumer<? super Exception> onLoad, Consumer<? super Exception> onSave) {
+        return new BinaryFileAdapter<T>() {
+            @Override
+            protected void onErrorLoad(Exception ex) {
+                onLoad.accept(ex);
+            }
+
+            @Override
+            protected void onErrorSave(Exception ex) {
+                onSave.accept(ex);
+            }
+
+            @Override
+            protected T fallback() {
+                return constructor.get();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,74 @@
+package io.dico.dicore.serialization;
+
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Constants of the binary format of {@link BinaryJsonWriter} and {@link BinaryJsonReader}.
+ * <p>
+ * A document starts with its name table: a varint count followed by that many strings. The root value follows it.
+ * A value is a tag byte followed by its payload. Integers are zigzag encoded varints, doubles are 8 bytes big endian,
+ * and strings are a varint byte length followed by UTF-8. Arrays and objects are prefixed with the varint byte length of their contents,
+ * so that they can be skipped without reading them. Each name in an object is a varint index into the name table,
+ * such that each distinct name is stored once per document.
+ */
+final class BinaryJson {
+    static final byte[] MAGIC = {'D', 'B', 'J', 1};
+    static final int TAG_NULL = 0;
+    static final int TAG_FALSE = 1;
+    static final int TAG_TRUE = 2;
+    static final int TAG_LONG = 3;
+    static final int TAG_DOUBLE = 4;
+    static final int TAG_STRING = 5;
+    /**
+     * A number that is neither a long nor a double, such as a BigDecimal, encoded as a string
+     */
+    static final int TAG_NUMBER = 6;
+    static final int TAG_ARRAY = 7;
+    static final int TAG_OBJECT = 8;
+
+    /**
+     * The writer and reader passed to the superclass constructors. The binary classes override every method that uses them.
+     */
+    static final Writer UNSUPPORTED_WRITER = new Writer() {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            throw new UnsupportedOperationException("Not supported by the binary format");
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    static final Reader UNSUPPORTED_READER = new Reader() {
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            throw new UnsupportedOperationException("Not supported by the binary format");
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private BinaryJson() {
+    }
+
+    static boolean hasMagic(byte[] data, int length) {
+        if (length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,394 @@
+package io.dico.dicore.serialization;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static io.dico.dicore.serialization.BinaryJson.*;
+
+/**
+ * A {@link JsonReader} that reads the compact binary format described by {@link BinaryJson}, such that
+ * {@link JsonLoadable} implementations can read either format unchanged.
+ * <p>
+ * Like {@link JsonReader}, numbers and strings are converted into each other as requested.
+ * {@link #skipValue()} skips containers using their length, without reading their contents.
+ * <p>
+ * Gson's map type adapters rely on the internals of {@link JsonReader} to read object names as values, and don't work with this reader.
+ */
+public class BinaryJsonReader extends JsonReader {
+    private final byte[] data;
+    private final int limit;
+    private String[] names;
+    private int pos;
+    // the end offset of each open container, and whether it is an object that expects a name next
+    private int[] containerEnds = new int[16];
+    private boolean[] containerIsObject = new boolean[16];
+    private boolean[] expectName = new boolean[16];
+    private int depth;
+    private boolean complete;
+
+    public BinaryJsonReader(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    /**
+     * @param data   the buffer
+     * @param offset the offset of the document in the buffer
+     * @param length the length of the document
+     */
+    public BinaryJsonReader(byte[] data, int offset, int length) {
+        super(UNSUPPORTED_READER);
+        this.data = data;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    @Override
+    public JsonToken peek() throws IOException {
+        if (depth == 0) {
+            if (complete) {
+                return JsonToken.END_DOCUMENT;
+            }
+            if (names == null) {
+                readNames();
+            }
+        } else {
+            int top = depth - 1;
+            if (pos >= containerEnds[top]) {
+                return containerIsObject[top] ? JsonToken.END_OBJECT : JsonToken.END_ARRAY;
+            }
+            if (expectName[top]) {
+                return JsonToken.NAME;
+            }
+        }
+
+        switch (peekTag()) {
+            case TAG_NULL:
+                return JsonToken.NULL;
+            case TAG_FALSE:
+            case TAG_TRUE:
+                return JsonToken.BOOLEAN;
+            case TAG_LONG:
+            case TAG_DOUBLE:
+            case TAG_NUMBER:
+                return JsonToken.NUMBER;
+            case TAG_STRING:
+                return JsonToken.STRING;
+            case TAG_ARRAY:
+                return JsonToken.BEGIN_ARRAY;
+            case TAG_OBJECT:
+                return JsonToken.BEGIN_OBJECT;
+            default:
+                throw syntaxError("Unknown tag " + peekTag());
+        }
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        JsonToken token = peek();
+        return token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY && token != JsonToken.END_DOCUMENT;
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        open(JsonToken.BEGIN_ARRAY, false);
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        close(JsonToken.END_ARRAY);
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        open(JsonToken.BEGIN_OBJECT, true);
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        close(JsonToken.END_OBJECT);
+    }
+
+    private void open(JsonToken expected, boolean isObject) throws IOException {
+        expect(expected);
+        pos++;
+        int length = (int) readVarint();
+        if (depth == containerEnds.length) {
+            containerEnds = Arrays.copyOf(containerEnds, depth * 2);
+            containerIsObject = Arrays.copyOf(containerIsObject, depth * 2);
+            expectName = Arrays.copyOf(expectName, depth * 2);
+        }
+        int end = pos + length;
+        if (length < 0 || end > (depth == 0 ? limit : containerEnds[depth - 1])) {
+            throw syntaxError("Container length out of bounds");
+        }
+        containerEnds[depth] = end;
+        containerIsObject[depth] = isObject;
+        expectName[depth] = isObject;
+        depth++;
+    }
+
+    private void close(JsonToken expected) throws IOException {
+        expect(expected);
+        depth--;
+        afterValue();
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        expect(JsonToken.NAME);
+        long index = readVarint();
+        if (index >= names.length) {
+            throw syntaxError("Unknown name " + index);
+        }
+        expectName[depth - 1] = false;
+        return names[(int) index];
+    }
+
+    private void readNames() throws IOException {
+        long count = readVarint();
+        if (count > limit - pos) {
+            throw syntaxError("Name count out of bounds");
+        }
+        String[] result = new String[(int) count];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = readString();
+        }
+        names = result;
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        JsonToken token = peek();
+        if (token != JsonToken.STRING && token != JsonToken.NUMBER) {
+            throw unexpected(JsonToken.STRING, token);
+        }
+        String result;
+        switch (data[pos++]) {
+            case TAG_LONG:
+                result = Long.toString(readLong());
+                break;
+            case TAG_DOUBLE:
+                result = Double.toString(readDouble());
+                break;
+            default:
+                result = readString();
+                break;
+        }
+        afterValue();
+        return result;
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException {
+        expect(JsonToken.BOOLEAN);
+        boolean result = data[pos++] == TAG_TRUE;
+        afterValue();
+        return result;
+    }
+
+    @Override
+    public void nextNull() throws IOException {
+        expect(JsonToken.NULL);
+        pos++;
+        afterValue();
+    }
+
+    @Override
+    public double nextDouble() throws IOException {
+        int start = pos;
+        double result = readNumber();
+        if (!isLenient() && (Double.isNaN(result) || Double.isInfinite(result))) {
+            pos = start;
+            throw new MalformedJsonException("JSON forbids NaN and infinities: " + result + " at " + this);
+        }
+        afterValue();
+        return result;
+    }
+
+    @Override
+    public long nextLong() throws IOException {
+        long result = readIntegral();
+        afterValue();
+        return result;
+    }
+
+    @Override
+    public int nextInt() throws IOException {
+        int start = pos;
+        long value = readIntegral();
+        int result = (int) value;
+        if (result != value) {
+            pos = start;
+            throw new NumberFormatException("Expected an int but was " + value + " at " + this);
+        }
+        afterValue();
+        return result;
+    }
+
+    /**
+     * Read an integral number or a string containing one as a long, without completing the value
+     */
+    private long readIntegral() throws IOException {
+        if (peek() == JsonToken.NUMBER && data[pos] == TAG_LONG) {
+            pos++;
+            return readLong();
+        }
+        int start = pos;
+        double value = readNumber();
+        long result = (long) value;
+        if (result != value) {
+            pos = start;
+            throw new NumberFormatException("Expected a long but was " + value + " at " + this);
+        }
+        return result;
+    }
+
+    /**
+     * Read a number or a string containing a number as a double, without completing the value
+     */
+    private double readNumber() throws IOException {
+        JsonToken token = peek();
+        if (token != JsonToken.STRING && token != JsonToken.NUMBER) {
+            throw unexpected(JsonToken.NUMBER, token);
+        }
+        int start = pos;
+        switch (data[pos++]) {
+            case TAG_LONG:
+                return readLong();
+            case TAG_DOUBLE:
+                return readDouble();
+            default:
+                try {
+                    return Double.parseDouble(readString());
+                } catch (NumberFormatException ex) {
+                    pos = start;
+                    throw new NumberFormatException("Expected a number but was " + token + " at " + this);
+                }
+        }
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+        JsonToken token = peek();
+        switch (token) {
+            case NAME:
+                nextName();
+                return;
+            case END_ARRAY:
+            case END_OBJECT:
+            case END_DOCUMENT:
+                throw new IllegalStateException("Expected a value but was " + token + " at " + this);
+            default:
+                break;
+        }
+
+        switch (data[pos++]) {
+            case TAG_LONG:
+                readVarint();
+                break;
+            case TAG_DOUBLE:
+                pos += 8;
+                break;
+            case TAG_STRING:
+            case TAG_NUMBER:
+            case TAG_ARRAY:
+            case TAG_OBJECT:
+                int length = (int) readVarint();
+                pos += length;
+                break;
+            default:
+                break;
+        }
+        afterValue();
+    }
+
+    @Override
+    public void close() {
+        depth = 0;
+        complete = true;
+        pos = limit;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " at offset " + pos;
+    }
+
+    private void afterValue() {
+        if (depth == 0) {
+            complete = true;
+        } else if (containerIsObject[depth - 1]) {
+            expectName[depth - 1] = true;
+        }
+    }
+
+    private void expect(JsonToken expected) throws IOException {
+        JsonToken token = peek();
+        if (token != expected) {
+            throw unexpected(expected, token);
+        }
+    }
+
+    private IllegalStateException unexpected(JsonToken expected, JsonToken actual) {
+        return new IllegalStateException("Expected " + expected + " but was " + actual + " at " + this);
+    }
+
+    private MalformedJsonException syntaxError(String message) {
+        return new MalformedJsonException(message + " at " + this);
+    }
+
+    private int peekTag() throws IOException {
+        if (pos >= limit) {
+            throw new EOFException("End of input at " + this);
+        }
+        return data[pos];
+    }
+
+    private long readVarint() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos >= limit) {
+                throw new EOFException("End of input at " + this);
+            }
+            byte b = data[pos++];
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw syntaxError("Malformed varint");
+    }
+
+    private long readLong() throws IOException {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private double readDouble() throws IOException {
+        if (pos + 8 > limit) {
+            throw new EOFException("End of input at " + this);
+        }
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | (data[pos++] & 0xFF);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    private String readString() throws IOException {
+        int length = (int) readVarint();
+        if (length < 0 || pos + length > limit) {
+            throw syntaxError("String length out of bounds");
+        }
+        String result = new String(data, pos, length, StandardCharsets.UTF_8);
+        pos += length;
+        return result;
+    }
+
+}
@@ -0,0 +1,332 @@
+package io.dico.dicore.serialization;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.dico.dicore.serialization.BinaryJson.*;
+
+/**
+ * A {@link JsonWriter} that writes the compact binary format described by {@link BinaryJson}, such that
+ * {@link JsonLoadable} implementations can write either format unchanged.
+ * <p>
+ * A document is assembled in memory, because containers are prefixed with their length and the name table precedes the values,
+ * and is written to the stream when its root value is complete. The lengths of containers are kept apart from the body,
+ * and inserted when it is written, such that the contents of a container are never moved when the size of its length is known.
+ * Indentation and html safety don't apply to the binary format and are ignored.
+ */
+public class BinaryJsonWriter extends JsonWriter {
+    private final OutputStream out;
+    private final Map<String, Integer> names = new HashMap<>();
+    private byte[] buffer = new byte[256];
+    private int size;
+    // of each open container: its index in lengthOffsets, whether it is an object, and the size of the lengths nested in it
+    private int[] openContainers = new int[16];
+    private boolean[] containerIsObject = new boolean[16];
+    private int[] nestedLengthSizes = new int[16];
+    private int depth;
+    // of each container in document order: the offset in the body at which its length is inserted, and the length
+    private int[] lengthOffsets = new int[16];
+    private int[] lengths = new int[16];
+    private int containerCount;
+    private String deferredName;
+    private boolean complete;
+
+    public BinaryJsonWriter(OutputStream out) {
+        super(UNSUPPORTED_WRITER);
+        this.out = out;
+    }
+
+    @Override
+    public BinaryJsonWriter beginArray() throws IOException {
+        return open(TAG_ARRAY, false);
+    }
+
+    @Override
+    public BinaryJsonWriter endArray() throws IOException {
+        return close(false);
+    }
+
+    @Override
+    public BinaryJsonWriter beginObject() throws IOException {
+        return open(TAG_OBJECT, true);
+    }
+
+    @Override
+    public BinaryJsonWriter endObject() throws IOException {
+        return close(true);
+    }
+
+    private BinaryJsonWriter open(int tag, boolean isObject) throws IOException {
+        beforeValue();
+        writeByte(tag);
+        if (depth == openContainers.length) {
+            openContainers = Arrays.copyOf(openContainers, depth * 2);
+            containerIsObject = Arrays.copyOf(containerIsObject, depth * 2);
+            nestedLengthSizes = Arrays.copyOf(nestedLengthSizes, depth * 2);
+        }
+        if (containerCount == lengthOffsets.length) {
+            lengthOffsets = Arrays.copyOf(lengthOffsets, containerCount * 2);
+            lengths = Arrays.copyOf(lengths, containerCount * 2);
+        }
+        openContainers[depth] = containerCount;
+        containerIsObject[depth] = isObject;
+        nestedLengthSizes[depth] = 0;
+        depth++;
+        lengthOffsets[containerCount++] = size;
+        return this;
+    }
+
+    private BinaryJsonWriter close(boolean isObject) throws IOException {
+        if (depth == 0 || containerIsObject[depth - 1] != isObject) {
+            throw new IllegalStateException("Nesting problem.");
+        }
+        if (deferredName != null) {
+            throw new IllegalStateException("Dangling name: " + deferredName);
+        }
+
+        depth--;
+        int container = openContainers[depth];
+        int length = size - lengthOffsets[container] + nestedLengthSizes[depth];
+        lengths[container] = length;
+        if (depth > 0) {
+            nestedLengthSizes[depth - 1] += nestedLengthSizes[depth] + varintSize(length);
+        }
+
+        afterValue();
+        return this;
+    }
+
+    @Override
+    public BinaryJsonWriter name(String name) throws IOException {
+        if (name == null) {
+            throw new NullPointerException("name == null");
+        }
+        if (deferredName != null || depth == 0 || !containerIsObject[depth - 1]) {
+            throw new IllegalStateException();
+        }
+        deferredName = name;
+        return this;
+    }
+
+    private void writeDeferredName() {
+        if (deferredName != null) {
+            Integer index = names.get(deferredName);
+            if (index == null) {
+                index = names.size();
+                names.put(deferredName, index);
+            }
+            writeVarint(index);
+            deferredName = null;
+        }
+    }
+
+    @Override
+    public BinaryJsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeByte(TAG_STRING);
+        writeString(value);
+        afterValue();
+        return this;
+    }
+
+    @Override
+    public BinaryJsonWriter nullValue() throws IOException {
+        if (deferredName != null && !getSerializeNulls()) {
+            // like JsonWriter, skip the name and the value
+            deferredName = null;
+            return this;
+        }
+        beforeValue();
+        writeByte(TAG_NULL);
+        afterValue();
+        return this;
+    }
+
+    @Override
+    public BinaryJsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        writeByte(value ? TAG_TRUE : TAG_FALSE);
+        afterValue();
+        return this;
+    }
+
+    public BinaryJsonWriter value(Boolean value) throws IOException {
+        return value == null ? nullValue() : value(value.booleanValue());
+    }
+
+    @Override
+    public BinaryJsonWriter value(double value) throws IOException {
+        if (!isLenient() && (Double.isNaN(value) || Double.isInfinite(value))) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+        beforeValue();
+        writeByte(TAG_DOUBLE);
+        long bits = Double.doubleToRawLongBits(value);
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[size++] = (byte) (bits >>> shift);
+        }
+        afterValue();
+        return this;
+    }
+
+    public BinaryJsonWriter value(float value) throws IOException {
+        return value((double) value);
+    }
+
+    @Override
+    public BinaryJsonWriter value(long value) throws IOException {
+        beforeValue();
+        writeByte(TAG_LONG);
+        writeVarint((value << 1) ^ (value >> 63));
+        afterValue();
+        return this;
+    }
+
+    @Override
+    public BinaryJsonWriter value(Number value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+                || value instanceof AtomicInteger || value instanceof AtomicLong) {
+            return value(value.longValue());
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return value(value.doubleValue());
+        }
+        if (value instanceof BigInteger && ((BigInteger) value).bitLength() < 64) {
+            return value(value.longValue());
+        }
+
+        String string = value.toString();
+        if (!isLenient() && (string.equals("-Infinity") || string.equals("Infinity") || string.equals("NaN"))) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+        beforeValue();
+        writeByte(TAG_NUMBER);
+        writeString(string);
+        afterValue();
+        return this;
+    }
+
+    /**
+     * Raw JSON can't be embedded in the binary format
+     *
+     * @throws UnsupportedOperationException always
+     */
+    public BinaryJsonWriter jsonValue(String value) {
+        throw new UnsupportedOperationException("Raw JSON values are not supported by the binary format");
+    }
+
+    private void beforeValue() {
+        if (complete) {
+            throw new IllegalStateException("The document is already complete");
+        }
+        if (depth > 0 && containerIsObject[depth - 1]) {
+            if (deferredName == null) {
+                throw new IllegalStateException("Expected a name");
+            }
+            writeDeferredName();
+        }
+    }
+
+    private void afterValue() throws IOException {
+        if (depth == 0) {
+            complete = true;
+            writeDocument();
+        }
+    }
+
+    private void writeDocument() throws IOException {
+        byte[] body = buffer;
+        int bodySize = size;
+        buffer = new byte[256];
+        size = 0;
+
+        String[] table = new String[names.size()];
+        for (Map.Entry<String, Integer> entry : names.entrySet()) {
+            table[entry.getValue()] = entry.getKey();
+        }
+        writeVarint(table.length);
+        for (String name : table) {
+            writeString(name);
+        }
+
+        out.write(buffer, 0, size);
+
+        int offset = 0;
+        for (int i = 0; i < containerCount; i++) {
+            out.write(body, offset, lengthOffsets[i] - offset);
+            offset = lengthOffsets[i];
+            size = 0;
+            writeVarint(lengths[i]);
+            out.write(buffer, 0, size);
+        }
+        out.write(body, offset, bodySize - offset);
+        size = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+        if (!complete) {
+            throw new IOException("Incomplete document");
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+
+    private void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) value;
+    }
+
+    private void writeVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    private void writeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private static int varintSize(long value) {
+        int result = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            result++;
+        }
+        return result;
+    }
+
+}
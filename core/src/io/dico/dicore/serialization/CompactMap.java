@@ -0,0 +1,141 @@
+package io.dico.dicore.serialization;
+
+import java.util.*;
+
+/**
+ * An insertion ordered map backed by parallel arrays, which is smaller and faster than a hash map for a few entries.
+ * Lookups are linear, so it should only be used for small maps.
+ */
+final class CompactMap extends AbstractMap<String, Object> {
+    private String[] keys;
+    private Object[] values;
+    private int size;
+
+    CompactMap(int capacity) {
+        keys = new String[Math.max(capacity, 1)];
+        values = new Object[keys.length];
+    }
+
+    private int indexOf(Object key) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) != -1;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int index = indexOf(key);
+        return index == -1 ? null : values[index];
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        Objects.requireNonNull(key, "key");
+        int index = indexOf(key);
+        if (index != -1) {
+            Object result = values[index];
+            values[index] = value;
+            return result;
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int index = indexOf(key);
+        if (index == -1) {
+            return null;
+        }
+        Object result = values[index];
+        removeAt(index);
+        return result;
+    }
+
+    private void removeAt(int index) {
+        int moved = size - index - 1;
+        System.arraycopy(keys, index + 1, keys, index, moved);
+        System.arraycopy(values, index + 1, values, index, moved);
+        size--;
+        keys[size] = null;
+        values[size] = null;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<Entry<String, Object>>() {
+                    private int next;
+                    private int last = -1;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < size;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (next >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        last = next++;
+                        int index = last;
+                        return new SimpleEntry<String, Object>(keys[index], values[index]) {
+                            @Override
+                            public Object setValue(Object value) {
+                                super.setValue(value);
+                                Object result = values[index];
+                                values[index] = value;
+                                return result;
+                            }
+                        };
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last == -1) {
+                            throw new IllegalStateException();
+                        }
+                        removeAt(last);
+                        next = last;
+                        last = -1;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+}
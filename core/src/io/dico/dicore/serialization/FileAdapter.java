@@ -1,10 +1,33 @@
 package io.dico.dicore.serialization;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
+/**
+ * Loads and saves objects from and to files.
+ * <p>
+ * Files are written to a temporary file next to the target, which replaces the target once it is complete,
+ * such that a crash during a save never leaves a truncated file behind. Writes go through a large buffer,
+ * are encoded in UTF-8 and are optionally {@link #compression(Compression) compressed} and {@link #sync(boolean) synced} to disk.
+ * When loading, the compression of the file is detected from its first bytes.
+ * Files larger than the {@link #mapThreshold(long) map threshold} are read through memory mapped windows.
+ */
 public abstract class FileAdapter<T> {
-    
+    static final int BUFFER_SIZE = 1 << 16;
+    private Compression compression = Compression.NONE;
+    private boolean sync;
+    private long mapThreshold = 1 << 20;
+
     public static File fileAt(String path, boolean createIfAbsent) throws IOException {
         File file = new File(path);
         if (createIfAbsent && !file.exists()) {
@@ -15,15 +38,55 @@ public abstract class FileAdapter<T> {
         }
         return file;
     }
-    
+
+    public FileAdapter<T> compression(Compression compression) {
+        this.compression = Objects.requireNonNull(compression);
+        return this;
+    }
+
+    public Compression compression() {
+        return compression;
+    }
+
+    /**
+     * @param sync true if saves should be forced to the storage device before they replace the target file.
+     *             This makes saves durable against power loss, at the cost of latency.
+     * @return this
+     */
+    public FileAdapter<T> sync(boolean sync) {
+        this.sync = sync;
+        return this;
+    }
+
+    public boolean sync() {
+        return sync;
+    }
+
+    /**
+     * @param mapThreshold the size in bytes from which files are loaded through memory mapped windows instead of a stream,
+     *                     or {@link Long#MAX_VALUE} to never map files. Mapping is never used on Windows.
+     * @return this
+     */
+    public FileAdapter<T> mapThreshold(long mapThreshold) {
+        if (mapThreshold < 0) {
+            throw new IllegalArgumentException("mapThreshold must not be negative");
+        }
+        this.mapThreshold = mapThreshold;
+        return this;
+    }
+
+    public long mapThreshold() {
+        return mapThreshold;
+    }
+
     protected abstract void onErrorLoad(Exception ex);
-    
+
     protected abstract void onErrorSave(Exception ex);
-    
+
     protected abstract T fallback();
-    
+
     public abstract void saveUnsafe(T object, String path) throws Exception;
-    
+
     public void save(T object, String path) {
         try {
             saveUnsafe(object, path);
@@ -31,9 +94,21 @@ public abstract class FileAdapter<T> {
             onErrorSave(ex);
         }
     }
-    
+
+    /**
+     * Save the object on the writer threads of the {@link IOCoordinator#shared() shared I/O coordinator}.
+     * The object must not be modified until the returned future completes.
+     *
+     * @param object the object
+     * @param path   the path
+     * @return a future that completes when the object, or an object saved after it at the same path, has been written
+     */
+    public CompletableFuture<Void> saveAsync(T object, String path) {
+        return IOCoordinator.shared().submit(path, this, object);
+    }
+
     public abstract T loadUnsafe(String path) throws Exception;
-    
+
     public T load(String path) {
         try {
             return loadUnsafe(path);
@@ -42,5 +117,225 @@ public abstract class FileAdapter<T> {
             return fallback();
         }
     }
-    
+
+    /**
+     * Write the file at the path with UTF-8 text
+     *
+     * @param path   the path
+     * @param action the action that writes the contents
+     * @throws Exception if an error occurs. The file at the path is unchanged in that case.
+     */
+    protected void writeText(String path, WriteAction<Writer> action) throws Exception {
+        writeFile(path, out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            action.write(writer);
+            writer.flush();
+        });
+    }
+
+    /**
+     * Write the file at the path.
+     * The contents are written to a temporary file, which atomically replaces the file at the path when it is complete.
+     *
+     * @param path   the path
+     * @param action the action that writes the contents. The stream must not be closed by the action.
+     * @throws Exception if an error occurs. The file at the path is unchanged in that case.
+     */
+    protected void writeFile(String path, WriteAction<OutputStream> action) throws Exception {
+        File target = new File(path).getAbsoluteFile();
+        File parent = target.getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Failed to create directory " + parent);
+        }
+
+        File temp = createTempFile(parent, target.getName());
+        boolean complete = false;
+        try {
+            try (FileOutputStream fileOut = new FileOutputStream(temp)) {
+                // closing the stream ends the deflater of a compressed stream, but leaves fileOut open for the sync
+                try (OutputStream out = compression.wrap(new BufferedOutputStream(new UnclosableOutputStream(fileOut), BUFFER_SIZE))) {
+                    action.write(out);
+                }
+                if (sync) {
+                    fileOut.getFD().sync();
+                }
+            }
+
+            try {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            complete = true;
+        } finally {
+            if (!complete) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Create a temporary file with a unique name next to the target, such that concurrent writes of the same target
+     * don't write to the same temporary file. Unlike {@link Files#createTempFile}, the file gets the default
+     * permissions of new files, which the target gets when the temporary file replaces it.
+     */
+    private static File createTempFile(File parent, String name) throws IOException {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            File result = new File(parent, "." + name + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            if (result.createNewFile()) {
+                return result;
+            }
+        }
+        throw new IOException("Failed to create a temporary file for " + new File(parent, name));
+    }
+
+    /**
+     * Open the file at the path for reading UTF-8 text, decompressing it if necessary
+     *
+     * @param path the path
+     * @return the reader
+     * @throws IOException if an error occurs
+     */
+    protected Reader openReader(String path) throws IOException {
+        MappedFile mapped = openMapped(path);
+        if (mapped != null) {
+            try {
+                Compression compression = mapped.detectCompression();
+                if (compression == Compression.NONE) {
+                    // decodes straight from the mapping into the buffer of the caller
+                    return mapped.openReader();
+                }
+                return new InputStreamReader(compression.unwrap(mapped.openInput()), StandardCharsets.UTF_8);
+            } catch (IOException ex) {
+                mapped.close();
+                throw ex;
+            }
+        }
+        return new InputStreamReader(openInput(path), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Open the file at the path for reading, decompressing it if necessary
+     *
+     * @param path the path
+     * @return the buffered input stream
+     * @throws FileNotFoundException if the file doesn't exist
+     * @throws IOException           if an error occurs
+     */
+    protected InputStream openInput(String path) throws IOException {
+        MappedFile mapped = openMapped(path);
+        if (mapped != null) {
+            try {
+                return mapped.detectCompression().unwrap(mapped.openInput());
+            } catch (IOException ex) {
+                mapped.close();
+                throw ex;
+            }
+        }
+
+        InputStream in = new BufferedInputStream(new FileInputStream(fileAt(path, false)), BUFFER_SIZE);
+        try {
+            return Compression.detect(in).unwrap(in);
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    private MappedFile openMapped(String path) throws IOException {
+        if (!MappedFile.SUPPORTED) {
+            return null;
+        }
+        File file = fileAt(path, false);
+        return file.length() >= mapThreshold && file.isFile() ? new MappedFile(file) : null;
+    }
+
+    /**
+     * Flushes instead of closing the stream it wraps
+     */
+    private static final class UnclosableOutputStream extends FilterOutputStream {
+
+        UnclosableOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+
+    public interface WriteAction<T> {
+        void write(T out) throws Exception;
+    }
+
+    public enum Compression {
+        NONE,
+        GZIP,
+        /**
+         * Deflate with a zlib header, as written by {@link DeflaterOutputStream}
+         */
+        DEFLATE;
+
+        OutputStream wrap(OutputStream out) throws IOException {
+            switch (this) {
+                case GZIP:
+                    return new GZIPOutputStream(out, 8192);
+                case DEFLATE:
+                    return new DeflaterOutputStream(out);
+                default:
+                    return out;
+            }
+        }
+
+        InputStream unwrap(InputStream in) throws IOException {
+            switch (this) {
+                case GZIP:
+                    return new BufferedInputStream(new GZIPInputStream(in, 8192), BUFFER_SIZE);
+                case DEFLATE:
+                    return new BufferedInputStream(new InflaterInputStream(in), BUFFER_SIZE);
+                default:
+                    return in;
+            }
+        }
+
+        /**
+         * Detect the compression from the first two bytes of the stream
+         *
+         * @param in the stream, which must support {@link InputStream#mark(int)}
+         * @return the compression
+         * @throws IOException if an error occurs
+         */
+        static Compression detect(InputStream in) throws IOException {
+            in.mark(2);
+            int b0 = in.read();
+            int b1 = in.read();
+            in.reset();
+            return detect(b0, b1);
+        }
+
+        /**
+         * Detect the compression from the first two bytes of a file
+         *
+         * @param b0 the first byte, or -1 if the file is empty
+         * @param b1 the second byte, or -1 if the file is shorter
+         * @return the compression
+         */
+        static Compression detect(int b0, int b1) {
+            if (b0 == 0x1F && b1 == 0x8B) {
+                return GZIP;
+            }
+            // zlib header with a 32K window, which is what Deflater writes. 'x' never starts a json document.
+            if (b0 == 0x78 && b1 != -1 && ((b0 << 8) | b1) % 31 == 0) {
+                return DEFLATE;
+            }
+            return NONE;
+        }
+    }
+
 }
@@ -2,8 +2,7 @@ package io.dico.dicore.serialization;
 
 import com.google.gson.Gson;
 
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.Reader;
 import java.lang.reflect.Type;
 import java.util.Objects;
 import java.util.function.Consumer;
@@ -24,15 +23,13 @@ public abstract class GsonFileAdapter<T> extends FileAdapter<T> {
 
     @Override
     public void saveUnsafe(T object, String path) throws Exception {
-        try (FileWriter fileWriter = new FileWriter(fileAt(path, true))) {
-            gson.toJson(object, fileWriter);
-        }
+        writeText(path, writer -> gson.toJson(object, writer));
     }
 
     @Override
     public T loadUnsafe(String path) throws Exception {
-        try (FileReader fileReader = new FileReader(fileAt(path, false))) {
-            return gson.fromJson(fileReader, typeOfT);
+        try (Reader reader = openReader(path)) {
+            return gson.fromJson(reader, typeOfT);
         }
     }
 
@@ -0,0 +1,415 @@
+package io.dico.dicore.serialization;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Performs file saves on a few dedicated threads, instead of on the threads that request them.
+ * <p>
+ * Save requests are keyed by path. Only the latest payload is kept for a path that has a save pending,
+ * so a path that is saved more often than the disk keeps up with is written once per write slot, with the newest data.
+ * Saves of the same path never run concurrently, and are written in request order.
+ * <p>
+ * The amount of paths with a pending payload is bounded. When the bound is reached, {@link #submit(String, FileAdapter, Object)}
+ * blocks until a payload is taken by a writer thread, and {@link #trySubmit(String, FileAdapter, Object)} returns null.
+ * <p>
+ * The state of a path is dropped once it has no pending or in-flight save. Statistics are kept in aggregate,
+ * and per path for the {@link #STATS_CAPACITY} most recently saved paths.
+ */
+public final class IOCoordinator {
+    static final int STATS_CAPACITY = 256;
+    private static IOCoordinator shared;
+    private final Map<String, PathState> states = new HashMap<>();
+    private final Map<String, StatsCounter> recentStats = new LinkedHashMap<String, StatsCounter>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, StatsCounter> eldest) {
+            return size() > STATS_CAPACITY;
+        }
+    };
+    private final StatsCounter totalStats = new StatsCounter();
+    private final BlockingQueue<PathState> ready = new LinkedBlockingQueue<>();
+    private final Semaphore pendingPermits;
+    private final List<Thread> threads = new ArrayList<>();
+    private boolean shutdown;
+
+    /**
+     * @param name       the name prefix of the writer threads
+     * @param threads    the amount of writer threads
+     * @param maxPending the maximum amount of paths with a pending payload
+     */
+    public IOCoordinator(String name, int threads, int maxPending) {
+        if (threads < 1 || maxPending < 1) {
+            throw new IllegalArgumentException("threads and maxPending must be positive");
+        }
+        this.pendingPermits = new Semaphore(maxPending);
+        AtomicInteger counter = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(this::runWriter, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.start();
+            this.threads.add(thread);
+        }
+    }
+
+    /**
+     * @return the coordinator that is shared by default, which has 2 writer threads and allows 1024 pending paths
+     */
+    public static synchronized IOCoordinator shared() {
+        if (shared == null) {
+            shared = new IOCoordinator("dicore-io", 2, 1024);
+        }
+        return shared;
+    }
+
+    /**
+     * Wait for the pending saves of the shared coordinator, if it was created
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if all saves completed, false if the timeout elapsed first
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public static boolean flushShared(long timeout, TimeUnit unit) throws InterruptedException {
+        IOCoordinator coordinator;
+        synchronized (IOCoordinator.class) {
+            coordinator = shared;
+        }
+        return coordinator == null || coordinator.flush(timeout, unit);
+    }
+
+    /**
+     * Save the payload at the path, replacing the payload of a pending save of the path if there is one.
+     * Blocks if the maximum amount of pending paths is reached.
+     *
+     * @param path    the path
+     * @param adapter the adapter that writes the payload
+     * @param payload the payload, which must not be modified afterwards
+     * @return a future that completes when the payload, or a payload submitted after it for the same path, has been written
+     * @throws RejectedExecutionException if this coordinator is shut down, or the current thread was interrupted while waiting
+     */
+    public <T> CompletableFuture<Void> submit(String path, FileAdapter<T> adapter, T payload) {
+        CompletableFuture<Void> result = trySubmit(path, adapter, payload);
+        if (result != null) {
+            return result;
+        }
+
+        try {
+            pendingPermits.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted whilst waiting to save " + path, ex);
+        }
+        return submit(path, adapter, payload, true);
+    }
+
+    /**
+     * Like {@link #submit(String, FileAdapter, Object)}, but doesn't block
+     *
+     * @return the future, or null if the maximum amount of pending paths is reached
+     */
+    public <T> CompletableFuture<Void> trySubmit(String path, FileAdapter<T> adapter, T payload) {
+        return submit(path, adapter, payload, false);
+    }
+
+    private synchronized <T> CompletableFuture<Void> submit(String path, FileAdapter<T> adapter, T payload, boolean hasPermit) {
+        Objects.requireNonNull(adapter, "adapter");
+        Objects.requireNonNull(payload, "payload");
+        if (shutdown) {
+            if (hasPermit) {
+                pendingPermits.release();
+            }
+            throw new RejectedExecutionException("IOCoordinator is shut down");
+        }
+
+        PathState state = states.computeIfAbsent(path, PathState::new);
+        if (state.pending != null) {
+            if (hasPermit) {
+                pendingPermits.release();
+            }
+            state.pending = new Request(adapter, payload, state.pending.submitTime);
+            statsOf(path).coalesced++;
+            totalStats.coalesced++;
+            return state.pendingFuture;
+        }
+
+        if (!hasPermit && !pendingPermits.tryAcquire()) {
+            if (!state.writing) {
+                states.remove(path);
+            }
+            return null;
+        }
+        state.pending = new Request(adapter, payload, System.nanoTime());
+        state.pendingFuture = new CompletableFuture<>();
+        if (!state.writing) {
+            ready.add(state);
+        }
+        return state.pendingFuture;
+    }
+
+    /**
+     * Wait for all saves that were requested before this call
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if the saves completed, false if the timeout elapsed first
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        synchronized (this) {
+            for (PathState state : states.values()) {
+                if (state.pendingFuture != null) {
+                    futures.add(state.pendingFuture);
+                }
+                if (state.writingFuture != null) {
+                    futures.add(state.writingFuture);
+                }
+            }
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).get(timeout, unit);
+        } catch (TimeoutException ex) {
+            return false;
+        } catch (ExecutionException ignored) {
+            // failures are reported by the adapters
+        }
+        return true;
+    }
+
+    /**
+     * Reject new saves, wait for the pending saves and stop the writer threads
+     *
+     * @param timeout the maximum time to wait for pending saves
+     * @param unit    the unit of the timeout
+     * @return true if all pending saves completed
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        synchronized (this) {
+            shutdown = true;
+        }
+        boolean result = flush(timeout, unit);
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        return result;
+    }
+
+    public synchronized boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * @return the amount of paths with a pending payload
+     */
+    public synchronized int getPendingCount() {
+        int result = 0;
+        for (PathState state : states.values()) {
+            if (state.pending != null) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param path the path
+     * @return the statistics of the path, or null if it wasn't saved recently through this coordinator
+     */
+    public synchronized PathStats getStats(String path) {
+        StatsCounter counter = recentStats.get(path);
+        return counter == null ? null : counter.stats();
+    }
+
+    /**
+     * @return the statistics of the {@link #STATS_CAPACITY} most recently saved paths
+     */
+    public synchronized Map<String, PathStats> getStats() {
+        Map<String, PathStats> result = new HashMap<>();
+        for (Map.Entry<String, StatsCounter> entry : recentStats.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().stats());
+        }
+        return result;
+    }
+
+    /**
+     * @return the statistics of all saves through this coordinator
+     */
+    public synchronized PathStats getTotalStats() {
+        return totalStats.stats();
+    }
+
+    /**
+     * @return the amount of paths that have a pending or in-flight save
+     */
+    synchronized int getTrackedPathCount() {
+        return states.size();
+    }
+
+    private StatsCounter statsOf(String path) {
+        StatsCounter result = recentStats.get(path);
+        if (result == null) {
+            result = new StatsCounter();
+            recentStats.put(path, result);
+        }
+        return result;
+    }
+
+    private void runWriter() {
+        try {
+            while (true) {
+                write(ready.take());
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void write(PathState state) {
+        Request request;
+        CompletableFuture<Void> future;
+        synchronized (this) {
+            request = state.pending;
+            future = state.pendingFuture;
+            state.pending = null;
+            state.pendingFuture = null;
+            state.writing = true;
+            state.writingFuture = future;
+        }
+        pendingPermits.release();
+
+        Throwable failure = null;
+        try {
+            ((FileAdapter<Object>) request.adapter).saveUnsafe(request.payload, state.path);
+        } catch (Exception ex) {
+            failure = ex;
+            request.adapter.onErrorSave(ex);
+        } catch (Throwable t) {
+            failure = t;
+            t.printStackTrace();
+        }
+
+        long latency = System.nanoTime() - request.submitTime;
+        synchronized (this) {
+            state.writing = false;
+            state.writingFuture = null;
+            statsOf(state.path).record(latency, failure != null);
+            totalStats.record(latency, failure != null);
+            if (state.pending != null) {
+                ready.add(state);
+            } else {
+                states.remove(state.path);
+            }
+        }
+
+        if (failure == null) {
+            future.complete(null);
+        } else {
+            future.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * Statistics of the saves of a path. Latencies are measured from the first request of a payload until it was written.
+     */
+    public static final class PathStats {
+        private final long writes;
+        private final long coalesced;
+        private final long failures;
+        private final long lastLatency;
+        private final long maxLatency;
+        private final long totalLatency;
+
+        PathStats(long writes, long coalesced, long failures, long lastLatency, long maxLatency, long totalLatency) {
+            this.writes = writes;
+            this.coalesced = coalesced;
+            this.failures = failures;
+            this.lastLatency = lastLatency;
+            this.maxLatency = maxLatency;
+            this.totalLatency = totalLatency;
+        }
+
+        public long getWrites() {
+            return writes;
+        }
+
+        /**
+         * @return the amount of payloads that were replaced by a newer payload before they were written
+         */
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getLastLatency() {
+            return lastLatency;
+        }
+
+        public long getMaxLatency() {
+            return maxLatency;
+        }
+
+        public long getAverageLatency() {
+            return writes == 0 ? 0 : totalLatency / writes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("PathStats{writes=%d, coalesced=%d, failures=%d, last=%.2fms, avg=%.2fms, max=%.2fms}",
+                    writes, coalesced, failures, lastLatency / 1e6, getAverageLatency() / 1e6, maxLatency / 1e6);
+        }
+    }
+
+    private static final class Request {
+        final FileAdapter<?> adapter;
+        final Object payload;
+        final long submitTime;
+
+        Request(FileAdapter<?> adapter, Object payload, long submitTime) {
+            this.adapter = adapter;
+            this.payload = payload;
+            this.submitTime = submitTime;
+        }
+    }
+
+    private static final class PathState {
+        final String path;
+        Request pending;
+        CompletableFuture<Void> pendingFuture;
+        CompletableFuture<Void> writingFuture;
+        boolean writing;
+
+        PathState(String path) {
+            this.path = path;
+        }
+    }
+
+    private static final class StatsCounter {
+        long writes;
+        long coalesced;
+        long failures;
+        long lastLatency;
+        long maxLatency;
+        long totalLatency;
+
+        void record(long latency, boolean failed) {
+            writes++;
+            if (failed) {
+                failures++;
+            }
+            lastLatency = latency;
+            totalLatency += latency;
+            maxLatency = Math.max(maxLatency, latency);
+        }
+
+        PathStats stats() {
+            return new PathStats(writes, coalesced, failures, lastLatency, maxLatency, totalLatency);
+        }
+    }
+
+}
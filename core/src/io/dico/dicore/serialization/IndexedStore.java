@@ -0,0 +1,481 @@
+package io.dico.dicore.serialization;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A collection of values by their primary key, with secondary indexes that find values by other properties without scanning.
+ * <p>
+ * Indexes are declared with a function that extracts the index key of a value, and are updated by {@link #put(Object)} and
+ * {@link #remove(Object)}. Values that are changed in place must be {@link #reindex(Object) reindexed}.
+ * Values for which the function returns null aren't in the index. The index keys of a value are remembered when it is indexed,
+ * so that it is removed from the right places after it was changed.
+ * <p>
+ * The store is a {@link JsonLoadable}, which writes its values as an array with a {@link TypeAdapter}, such that it can be
+ * the data of a persistent module. When it is loaded, the values are read first and the indexes are built afterwards in bulk.
+ * Values without a primary key are skipped, and of values with the same primary key the last one is kept. Both are reported
+ * to the error handler of the store.
+ * <p>
+ * Like the data of modules, a store must only be used by one thread at a time.
+ *
+ * @param <K> the type of the primary keys
+ * @param <V> the type of the values
+ */
+public class IndexedStore<K, V> implements JsonLoadable {
+    private final Function<? super V, ? extends K> keyFunction;
+    private final TypeAdapter<V> adapter;
+    private final Consumer<? super Exception> onError;
+    private final Map<K, Record<V>> records = new LinkedHashMap<>();
+    private final List<Index<?>> indexes = new ArrayList<>();
+    private Collection<V> values;
+
+    /**
+     * Create a store that prints the errors of loading to the standard error stream
+     *
+     * @param keyFunction the function that returns the primary key of a value
+     * @param adapter     the adapter that reads and writes values
+     */
+    public IndexedStore(Function<? super V, ? extends K> keyFunction, TypeAdapter<V> adapter) {
+        this(keyFunction, adapter, Throwable::printStackTrace);
+    }
+
+    /**
+     * @param keyFunction the function that returns the primary key of a value
+     * @param adapter     the adapter that reads and writes values
+     * @param onError     the handler of values that are skipped or replaced when the store is loaded
+     */
+    public IndexedStore(Function<? super V, ? extends K> keyFunction, TypeAdapter<V> adapter, Consumer<? super Exception> onError) {
+        this.keyFunction = Objects.requireNonNull(keyFunction, "keyFunction");
+        this.adapter = Objects.requireNonNull(adapter, "adapter");
+        this.onError = Objects.requireNonNull(onError, "onError");
+    }
+
+    /**
+     * Declare an index that finds values by an exact key
+     *
+     * @param extractor the function that returns the index key of a value, or null if it shouldn't be indexed
+     * @return the index
+     */
+    public <I> Index<I> addIndex(Function<? super V, ? extends I> extractor) {
+        return addIndex(new Index<I>(indexes.size(), extractor, new HashMap<>()));
+    }
+
+    /**
+     * Declare an index that finds values by a key and ranges of keys, in the natural ordering of the keys
+     *
+     * @param extractor the function that returns the index key of a value, or null if it shouldn't be indexed
+     * @return the index
+     */
+    public <I extends Comparable<? super I>> SortedIndex<I> addSortedIndex(Function<? super V, ? extends I> extractor) {
+        return addSortedIndex(extractor, null);
+    }
+
+    /**
+     * Declare an index that finds values by a key and ranges of keys
+     *
+     * @param extractor  the function that returns the index key of a value, or null if it shouldn't be indexed
+     * @param comparator the comparator of the index keys, or null for their natural ordering
+     * @return the index
+     */
+    public <I> SortedIndex<I> addSortedIndex(Function<? super V, ? extends I> extractor, Comparator<? super I> comparator) {
+        return addIndex(new SortedIndex<I>(indexes.size(), extractor, new TreeMap<>(comparator)));
+    }
+
+    private <T extends Index<?>> T addIndex(T index) {
+        indexes.add(index);
+        for (Record<V> record : records.values()) {
+            record.indexKeys = Arrays.copyOf(record.indexKeys, indexes.size());
+        }
+        index.build();
+        return index;
+    }
+
+    public int size() {
+        return records.size();
+    }
+
+    public boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    public boolean containsKey(Object key) {
+        return records.containsKey(key);
+    }
+
+    /**
+     * @param key the primary key
+     * @return the value with the key, or null
+     */
+    public V get(Object key) {
+        Record<V> record = records.get(key);
+        return record == null ? null : record.value;
+    }
+
+    /**
+     * @return an unmodifiable view of the primary keys
+     */
+    public Set<K> keys() {
+        return Collections.unmodifiableSet(records.keySet());
+    }
+
+    /**
+     * @return an unmodifiable view of the values, in the order they were first put
+     */
+    public Collection<V> values() {
+        Collection<V> result = values;
+        if (result == null) {
+            values = result = new AbstractCollection<V>() {
+                @Override
+                public Iterator<V> iterator() {
+                    Iterator<Record<V>> iterator = records.values().iterator();
+                    return new Iterator<V>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public V next() {
+                            return iterator.next().value;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return records.size();
+                }
+            };
+        }
+        return result;
+    }
+
+    /**
+     * Add the value, replacing the value with the same primary key
+     *
+     * @param value the value
+     * @return the value that was replaced, or null
+     */
+    public V put(V value) {
+        K key = Objects.requireNonNull(keyFunction.apply(value), "primary key");
+        Record<V> record = records.get(key);
+        V result = null;
+        if (record == null) {
+            record = new Record<>(value, indexes.size());
+            records.put(key, record);
+        } else {
+            result = record.value;
+            unindex(key, record);
+            record.value = value;
+        }
+        index(key, record);
+        return result;
+    }
+
+    /**
+     * @param key the primary key
+     * @return the value that was removed, or null
+     */
+    public V remove(Object key) {
+        Record<V> record = records.remove(key);
+        if (record == null) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        K k = (K) key;
+        unindex(k, record);
+        return record.value;
+    }
+
+    /**
+     * Update the indexes of the value with the primary key, after it was changed in place
+     *
+     * @param key the primary key
+     * @return false if there is no value with the key
+     */
+    public boolean reindex(Object key) {
+        Record<V> record = records.get(key);
+        if (record == null) {
+            return false;
+        }
+        @SuppressWarnings("unchecked")
+        K k = (K) key;
+        unindex(k, record);
+        index(k, record);
+        return true;
+    }
+
+    public void clear() {
+        records.clear();
+        for (Index<?> index : indexes) {
+            index.buckets.clear();
+        }
+    }
+
+    private void index(K key, Record<V> record) {
+        for (Index<?> index : indexes) {
+            index.add(key, record);
+        }
+    }
+
+    private void unindex(K key, Record<V> record) {
+        for (Index<?> index : indexes) {
+            index.remove(key, record);
+        }
+    }
+
+    @Override
+    public void writeTo(JsonWriter writer) throws IOException {
+        writer.beginArray();
+        for (Record<V> record : records.values()) {
+            adapter.write(writer, record.value);
+        }
+        writer.endArray();
+    }
+
+    @Override
+    public void loadFrom(JsonReader reader) throws IOException {
+        clear();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            String path = reader.getPath();
+            V value = adapter.read(reader);
+            K key = keyFunction.apply(value);
+            if (key == null) {
+                onError.accept(new IOException("Skipped the value at " + path + ", because it has no primary key"));
+            } else if (records.put(key, new Record<>(value, indexes.size())) != null) {
+                onError.accept(new IOException("The value at " + path + " replaced an earlier value with the primary key " + key));
+            }
+        }
+        reader.endArray();
+
+        for (Index<?> index : indexes) {
+            index.build();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object join(Object bucket, Object key) {
+        if (bucket instanceof Bucket) {
+            ((Bucket<Object>) bucket).add(key);
+            return bucket;
+        }
+        return new Bucket<>(bucket, key);
+    }
+
+    private static final class Record<V> {
+        V value;
+        // the keys of the value in each index, at the time it was indexed
+        Object[] indexKeys;
+
+        Record(V value, int indexCount) {
+            this.value = value;
+            this.indexKeys = new Object[indexCount];
+        }
+    }
+
+    /**
+     * The primary keys with an index key, which are a single key or a set of keys
+     */
+    private static final class Bucket<K> extends LinkedHashSet<K> {
+
+        Bucket(K a, K b) {
+            super(4);
+            add(a);
+            add(b);
+        }
+    }
+
+    /**
+     * An index that finds values by an exact key
+     *
+     * @param <I> the type of the index keys
+     */
+    public class Index<I> {
+        private final int id;
+        private final Function<? super V, ? extends I> extractor;
+        final Map<I, Object> buckets;
+
+        Index(int id, Function<? super V, ? extends I> extractor, Map<I, Object> buckets) {
+            this.id = id;
+            this.extractor = Objects.requireNonNull(extractor, "extractor");
+            this.buckets = buckets;
+        }
+
+        /**
+         * @param indexKey the index key
+         * @return the values with the index key, in the order they were indexed
+         */
+        public List<V> get(Object indexKey) {
+            return resolve(buckets.get(indexKey), new ArrayList<>());
+        }
+
+        /**
+         * @param indexKey the index key
+         * @return the value that was indexed first with the index key, or null. This is the value for indexes with unique keys.
+         */
+        @SuppressWarnings("unchecked")
+        public V getFirst(Object indexKey) {
+            Object bucket = buckets.get(indexKey);
+            if (bucket == null) {
+                return null;
+            }
+            K key = bucket instanceof Bucket ? ((Bucket<K>) bucket).iterator().next() : (K) bucket;
+            return IndexedStore.this.get(key);
+        }
+
+        /**
+         * @param indexKey the index key
+         * @return the amount of values with the index key
+         */
+        public int count(Object indexKey) {
+            Object bucket = buckets.get(indexKey);
+            return bucket == null ? 0 : bucket instanceof Bucket ? ((Bucket<?>) bucket).size() : 1;
+        }
+
+        public boolean contains(Object indexKey) {
+            return buckets.containsKey(indexKey);
+        }
+
+        /**
+         * @return an unmodifiable view of the index keys that have values
+         */
+        public Set<I> keys() {
+            return Collections.unmodifiableSet(buckets.keySet());
+        }
+
+        @SuppressWarnings("unchecked")
+        List<V> resolve(Object bucket, List<V> result) {
+            if (bucket instanceof Bucket) {
+                for (K key : (Bucket<K>) bucket) {
+                    result.add(IndexedStore.this.get(key));
+                }
+            } else if (bucket != null) {
+                result.add(IndexedStore.this.get(bucket));
+            }
+            return result;
+        }
+
+        void add(K key, Record<V> record) {
+            I indexKey = extractor.apply(record.value);
+            record.indexKeys[id] = indexKey;
+            if (indexKey != null) {
+                buckets.merge(indexKey, key, IndexedStore::join);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void remove(K key, Record<V> record) {
+            I indexKey = (I) record.indexKeys[id];
+            record.indexKeys[id] = null;
+            if (indexKey == null) {
+                return;
+            }
+
+            Object bucket = buckets.get(indexKey);
+            if (bucket instanceof Bucket) {
+                Bucket<K> set = (Bucket<K>) bucket;
+                set.remove(key);
+                if (set.size() == 1) {
+                    buckets.put(indexKey, set.iterator().next());
+                }
+            } else if (Objects.equals(bucket, key)) {
+                buckets.remove(indexKey);
+            }
+        }
+
+        /**
+         * Index all values. The buckets are grouped in a hash map first, such that sorted indexes insert each index key once.
+         */
+        void build() {
+            Map<I, Object> grouped = buckets instanceof HashMap ? buckets : new HashMap<>();
+            buckets.clear();
+            for (Map.Entry<K, Record<V>> entry : records.entrySet()) {
+                Record<V> record = entry.getValue();
+                I indexKey = extractor.apply(record.value);
+                record.indexKeys[id] = indexKey;
+                if (indexKey != null) {
+                    grouped.merge(indexKey, entry.getKey(), IndexedStore::join);
+                }
+            }
+            if (grouped != buckets) {
+                buckets.putAll(grouped);
+            }
+        }
+    }
+
+    /**
+     * An index that finds values by a key and by ranges of keys
+     *
+     * @param <I> the type of the index keys
+     */
+    public class SortedIndex<I> extends Index<I> {
+
+        SortedIndex(int id, Function<? super V, ? extends I> extractor, TreeMap<I, Object> buckets) {
+            super(id, extractor, buckets);
+        }
+
+        private NavigableMap<I, Object> sorted() {
+            return (NavigableMap<I, Object>) buckets;
+        }
+
+        /**
+         * @return the least index key, or null if the index is empty
+         */
+        public I firstKey() {
+            return sorted().isEmpty() ? null : sorted().firstKey();
+        }
+
+        /**
+         * @return the greatest index key, or null if the index is empty
+         */
+        public I lastKey() {
+            return sorted().isEmpty() ? null : sorted().lastKey();
+        }
+
+        /**
+         * @param fromKey the least index key, inclusive
+         * @param toKey   the greatest index key, exclusive
+         * @return the values with index keys in the range, in the order of their index keys
+         */
+        public List<V> range(I fromKey, I toKey) {
+            return collect(sorted().subMap(fromKey, true, toKey, false));
+        }
+
+        /**
+         * @param fromKey the least index key, inclusive
+         * @return the values with index keys from the index key, in the order of their index keys
+         */
+        public List<V> from(I fromKey) {
+            return collect(sorted().tailMap(fromKey, true));
+        }
+
+        /**
+         * @param toKey the greatest index key, exclusive
+         * @return the values with index keys below the index key, in the order of their index keys
+         */
+        public List<V> below(I toKey) {
+            return collect(sorted().headMap(toKey, false));
+        }
+
+        private List<V> collect(Map<I, Object> buckets) {
+            List<V> result = new ArrayList<>();
+            for (Object bucket : buckets.values()) {
+                resolve(bucket, result);
+            }
+            return result;
+        }
+    }
+
+}
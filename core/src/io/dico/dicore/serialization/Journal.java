@@ -0,0 +1,433 @@
+package io.dico.dicore.serialization;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import io.dico.dicore.task.ActorExecutor;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Persists data as a snapshot and a journal of the changes made after it, so that the cost of persisting a change
+ * depends on the size of the change rather than the size of the data.
+ * <p>
+ * Changes are {@link #append(FileAdapter.WriteAction) appended} as records, one JSON object or array per line.
+ * Records are serialized on the calling thread and written on a background thread. All records that arrive while a write is
+ * in progress are written together by the next write, so that a burst of changes costs a single write, and a single sync
+ * if the adapter {@link FileAdapter#sync() syncs}.
+ * <p>
+ * {@link #compact(Object)} folds the journal into a new snapshot. Journals and snapshots are numbered by generation:
+ * a compaction starts a new journal, and the snapshot that it writes contains all records of the older journals,
+ * which are deleted once the snapshot is written. {@link #load(Supplier)} reads the newest snapshot and replays the journals
+ * that are not older than it. A record that was torn by a crash is skipped.
+ * <p>
+ * Given the path {@code data.json}, the files are named {@code data.<generation>.json} and {@code data.<generation>.journal}.
+ * If no snapshot with a generation exists, the file at the path itself is loaded as the snapshot, and it is deleted by the first compaction.
+ */
+public final class Journal<T> {
+    private static final String SNAPSHOT_EXTENSION = ".json";
+    private static final String JOURNAL_EXTENSION = ".journal";
+    private final FileAdapter<T> adapter;
+    private final File directory;
+    private final String baseName;
+    private final Replayer<T> replayer;
+    private final Consumer<? super Exception> onError;
+    private final ActorExecutor actor;
+    private final Object lock = new Object();
+    private List<Record> pending = new ArrayList<>();
+    private boolean commitScheduled;
+    private boolean closed;
+    private long generation = -1;
+    private long recordCount;
+    private long journalSize;
+    private CompletableFuture<Void> compaction = CompletableFuture.completedFuture(null);
+    private volatile long commitCount;
+    // confined to the actor
+    private FileOutputStream file;
+    private OutputStream out;
+    private long outGeneration = -1;
+
+    /**
+     * @param adapter  the adapter of the snapshots
+     * @param path     the path of the data, from which the names of the snapshots and journals are derived
+     * @param replayer the function that applies records to the data when it is loaded
+     * @param onError  the handler of errors that occur whilst reading or writing the journal
+     */
+    public Journal(FileAdapter<T> adapter, String path, Replayer<T> replayer, Consumer<? super Exception> onError) {
+        this.adapter = Objects.requireNonNull(adapter, "adapter");
+        this.replayer = Objects.requireNonNull(replayer, "replayer");
+        this.onError = Objects.requireNonNull(onError, "onError");
+        File target = new File(path).getAbsoluteFile();
+        String name = target.getName();
+        int extension = name.lastIndexOf('.');
+        this.directory = target.getParentFile();
+        this.baseName = extension > 0 ? name.substring(0, extension) : name;
+        this.actor = new ActorExecutor("journal-" + baseName, t -> onError.accept(t instanceof Exception ? (Exception) t : new RuntimeException(t)));
+    }
+
+    /**
+     * Load the newest snapshot and replay the journals. Records appended after this call go to a new journal.
+     *
+     * @param defaultData the supplier of the data if there is no snapshot
+     * @return the data
+     * @throws IllegalStateException if this journal was already loaded
+     */
+    public T load(Supplier<T> defaultData) {
+        TreeSet<Long> snapshots = new TreeSet<>();
+        TreeSet<Long> journals = new TreeSet<>();
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                long snapshotGeneration = parseGeneration(name, SNAPSHOT_EXTENSION);
+                if (snapshotGeneration != -1) {
+                    snapshots.add(snapshotGeneration);
+                }
+                long journalGeneration = parseGeneration(name, JOURNAL_EXTENSION);
+                if (journalGeneration != -1) {
+                    journals.add(journalGeneration);
+                }
+            }
+        }
+
+        long snapshotGeneration = snapshots.isEmpty() ? 0 : snapshots.last();
+        T data = adapter.load(snapshots.isEmpty() ? legacySnapshotFile().getPath() : snapshotFile(snapshotGeneration).getPath());
+        if (data == null) {
+            data = defaultData.get();
+        }
+
+        long replayedRecords = 0;
+        long replayedSize = 0;
+        for (long journalGeneration : journals.tailSet(snapshotGeneration)) {
+            File journal = journalFile(journalGeneration);
+            replayedRecords += replay(data, journal);
+            replayedSize += journal.length();
+        }
+
+        synchronized (lock) {
+            if (generation != -1) {
+                throw new IllegalStateException("Journal is already loaded");
+            }
+            long lastGeneration = Math.max(snapshotGeneration, journals.isEmpty() ? 0 : journals.last());
+            generation = lastGeneration + 1;
+            recordCount = replayedRecords;
+            journalSize = replayedSize;
+        }
+        return data;
+    }
+
+    private long replay(T data, File journal) {
+        long count = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), StandardCharsets.UTF_8), FileAdapter.BUFFER_SIZE)) {
+            String line = reader.readLine();
+            while (line != null) {
+                String next = reader.readLine();
+                if (!line.isEmpty()) {
+                    try {
+                        replayer.replay(data, new JsonReader(new StringReader(line)));
+                        count++;
+                    } catch (IOException | RuntimeException ex) {
+                        // a record that was torn by a crash is at the end of its journal
+                        if (next != null) {
+                            onError.accept(new IOException("Failed to replay record of journal " + journal.getName(), ex));
+                        }
+                    }
+                }
+                line = next;
+            }
+        } catch (IOException ex) {
+            onError.accept(ex);
+        }
+        return count;
+    }
+
+    /**
+     * Append a record to the journal
+     *
+     * @param record the action that writes the record, which must be a JSON object or array
+     * @return a future that completes when the record is written
+     * @throws IllegalStateException if this journal isn't loaded, or is closed
+     */
+    public CompletableFuture<Void> append(FileAdapter.WriteAction<JsonWriter> record) {
+        StringWriter buffer = new StringWriter();
+        try {
+            JsonWriter writer = new JsonWriter(buffer);
+            record.write(writer);
+            writer.flush();
+        } catch (Exception ex) {
+            onError.accept(ex);
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            result.completeExceptionally(ex);
+            return result;
+        }
+        buffer.write('\n');
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+
+        synchronized (lock) {
+            checkOpen();
+            Record result = new Record(bytes, generation);
+            pending.add(result);
+            recordCount++;
+            journalSize += bytes.length;
+            if (!commitScheduled) {
+                commitScheduled = true;
+                actor.execute(this::commit);
+            }
+            return result.future;
+        }
+    }
+
+    private void commit() {
+        List<Record> batch;
+        synchronized (lock) {
+            batch = pending;
+            pending = new ArrayList<>();
+            commitScheduled = false;
+        }
+
+        int committed = 0;
+        try {
+            while (committed < batch.size()) {
+                long batchGeneration = batch.get(committed).generation;
+                openJournal(batchGeneration);
+                int end = committed;
+                while (end < batch.size() && batch.get(end).generation == batchGeneration) {
+                    out.write(batch.get(end).bytes);
+                    end++;
+                }
+                out.flush();
+                if (adapter.sync()) {
+                    file.getFD().sync();
+                }
+                for (; committed < end; committed++) {
+                    batch.get(committed).future.complete(null);
+                }
+            }
+            commitCount++;
+        } catch (IOException ex) {
+            closeJournal();
+            onError.accept(ex);
+            for (; committed < batch.size(); committed++) {
+                batch.get(committed).future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    private void openJournal(long journalGeneration) throws IOException {
+        if (outGeneration != journalGeneration) {
+            closeJournal();
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Failed to create directory " + directory);
+            }
+            file = new FileOutputStream(journalFile(journalGeneration), true);
+            out = new BufferedOutputStream(file, FileAdapter.BUFFER_SIZE);
+            outGeneration = journalGeneration;
+        }
+    }
+
+    private void closeJournal() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ex) {
+                onError.accept(ex);
+            }
+            file = null;
+            out = null;
+            outGeneration = -1;
+        }
+    }
+
+    /**
+     * Fold the journal into a snapshot, which is written by the {@link IOCoordinator#shared() shared I/O coordinator}.
+     * The snapshot must contain the changes of all records appended before this call, and must not be modified afterwards.
+     *
+     * @param snapshot the snapshot
+     * @return a future that completes when the snapshot is written and the older files are deleted
+     */
+    public CompletableFuture<Void> compact(T snapshot) {
+        long snapshotGeneration = startGeneration();
+        CompletableFuture<Void> result = IOCoordinator.shared().submit(snapshotFile(snapshotGeneration).getPath(), adapter, snapshot)
+                .thenCompose(ignored -> actor.submit(() -> deleteBefore(snapshotGeneration)));
+        synchronized (lock) {
+            compaction = result;
+        }
+        return result;
+    }
+
+    /**
+     * Like {@link #compact(Object)}, but writes the snapshot on the calling thread
+     *
+     * @param data the data
+     * @throws Exception if the snapshot can't be written. The journal remains valid in that case.
+     */
+    public void compactNow(T data) throws Exception {
+        long snapshotGeneration = startGeneration();
+        adapter.saveUnsafe(data, snapshotFile(snapshotGeneration).getPath());
+        actor.execute(() -> deleteBefore(snapshotGeneration));
+    }
+
+    private long startGeneration() {
+        synchronized (lock) {
+            checkOpen();
+            recordCount = 0;
+            journalSize = 0;
+            return ++generation;
+        }
+    }
+
+    private Void deleteBefore(long snapshotGeneration) {
+        if (outGeneration != -1 && outGeneration < snapshotGeneration) {
+            closeJournal();
+        }
+
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                long fileGeneration = Math.max(parseGeneration(name, SNAPSHOT_EXTENSION), parseGeneration(name, JOURNAL_EXTENSION));
+                if (fileGeneration != -1 && fileGeneration < snapshotGeneration) {
+                    new File(directory, name).delete();
+                }
+            }
+        }
+        legacySnapshotFile().delete();
+        return null;
+    }
+
+    /**
+     * Wait for pending writes and compactions, and close the journal
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if all pending writes completed, false if the timeout elapsed first
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public boolean close(long timeout, TimeUnit unit) throws InterruptedException {
+        CompletableFuture<Void> lastCompaction;
+        synchronized (lock) {
+            closed = true;
+            lastCompaction = compaction;
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            await(lastCompaction, deadline);
+            await(actor.submit(() -> {
+                closeJournal();
+                return null;
+            }), deadline);
+            return true;
+        } catch (TimeoutException ex) {
+            return false;
+        } finally {
+            actor.shutdown();
+        }
+    }
+
+    private static void await(CompletableFuture<?> future, long deadline) throws InterruptedException, TimeoutException {
+        try {
+            future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException ignored) {
+            // failures are reported to the error handler
+        }
+    }
+
+    private void checkOpen() {
+        if (generation == -1) {
+            throw new IllegalStateException("Journal is not loaded");
+        }
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+    }
+
+    /**
+     * @return the generation of the journal that records are appended to
+     */
+    public long getGeneration() {
+        synchronized (lock) {
+            return generation;
+        }
+    }
+
+    /**
+     * @return the amount of records appended since the last compaction, including the records replayed by {@link #load(Supplier)}
+     */
+    public long getRecordCount() {
+        synchronized (lock) {
+            return recordCount;
+        }
+    }
+
+    /**
+     * @return the size in bytes of the records appended since the last compaction, including the records replayed by {@link #load(Supplier)}
+     */
+    public long getJournalSize() {
+        synchronized (lock) {
+            return journalSize;
+        }
+    }
+
+    /**
+     * @return the amount of writes of the journal, each of which contains one or more records
+     */
+    public long getCommitCount() {
+        return commitCount;
+    }
+
+    public boolean isCompacting() {
+        synchronized (lock) {
+            return !compaction.isDone();
+        }
+    }
+
+    private long parseGeneration(String name, String extension) {
+        if (name.length() > baseName.length() + extension.length() + 1 && name.startsWith(baseName + ".") && name.endsWith(extension)) {
+            try {
+                long result = Long.parseLong(name.substring(baseName.length() + 1, name.length() - extension.length()));
+                if (result >= 0) {
+                    return result;
+                }
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return -1;
+    }
+
+    private File snapshotFile(long generation) {
+        return new File(directory, baseName + "." + generation + SNAPSHOT_EXTENSION);
+    }
+
+    private File journalFile(long generation) {
+        return new File(directory, baseName + "." + generation + JOURNAL_EXTENSION);
+    }
+
+    private File legacySnapshotFile() {
+        return new File(directory, baseName + SNAPSHOT_EXTENSION);
+    }
+
+    /**
+     * Applies a record to the data when it is replayed
+     */
+    public interface Replayer<T> {
+        void replay(T data, JsonReader record) throws IOException;
+    }
+
+    private static final class Record {
+        final byte[] bytes;
+        final long generation;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Record(byte[] bytes, long generation) {
+            this.bytes = bytes;
+            this.generation = generation;
+        }
+    }
+
+}
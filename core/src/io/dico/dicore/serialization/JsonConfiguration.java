@@ -7,6 +7,7 @@ import io.dico.dicore.exceptions.ExceptionHandler;
 import org.bukkit.Bukkit;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.MemorySection;
 import org.bukkit.configuration.file.FileConfiguration;
 
 import java.io.IOException;
@@ -16,8 +17,39 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+/**
+ * A file configuration in json format.
+ * <p>
+ * In lazy mode, the input is decoded onto a {@link JsonTape} in one pass, and only the top level keys are put in the configuration.
+ * Nested sections are read from their part of the tape when they are first accessed, so that no maps or values are created
+ * for the sections that aren't used. Saving writes the sections that weren't accessed straight from the tape.
+ * The tape is shared by all sections, and stays in memory until every section of the configuration is materialized,
+ * so lazy mode saves the time and garbage of building unused sections, but not the memory of the decoded input.
+ * Integral numbers are kept as Integers or Longs in lazy mode, where the eager mode converts all numbers to doubles.
+ * In both modes, keys with a null value are left out.
+ * <p>
+ * Like a {@link MemorySection}, a configuration can be read by multiple threads while it isn't modified.
+ * Sections are materialized under a lock, and are only seen as materialized once their values are complete.
+ */
 public class JsonConfiguration extends FileConfiguration {
+    private final boolean lazy;
+    
+    public JsonConfiguration() {
+        this(false);
+    }
+    
+    /**
+     * @param lazy true if sections should be read when they are first accessed
+     */
+    public JsonConfiguration(boolean lazy) {
+        this.lazy = lazy;
+    }
+    
+    public boolean isLazy() {
+        return lazy;
+    }
     
     private static void read(JsonReader reader, ConfigurationSection into, String key) throws IOException, InvalidConfigurationException {
         switch (reader.peek()) {
@@ -36,6 +68,10 @@ public class JsonConfiguration extends FileConfiguration {
             case BOOLEAN:
                 into.set(key, reader.nextBoolean());
                 break;
+            case NULL:
+                // like setting a key to null, which removes it. The lazy mode skips null values too.
+                reader.nextNull();
+                break;
             default:
                 throw new InvalidConfigurationException();
         }
@@ -111,7 +147,11 @@ public class JsonConfiguration extends FileConfiguration {
             if (token != JsonToken.BEGIN_OBJECT) {
                 throw new InvalidConfigurationException("Json configurations must always start with a key-value mapping");
             }
-            readSection(reader, this);
+            if (lazy) {
+                fill(this, JsonTape.read(reader).root());
+            } else {
+                readSection(reader, this);
+            }
         } catch (InvalidConfigurationException ex) {
             throw ex;
         } catch (Exception ex) {
@@ -124,5 +164,130 @@ public class JsonConfiguration extends FileConfiguration {
         return null;
     }
     
+    @Override
+    protected void mapChildrenKeys(Set<String> output, ConfigurationSection section, boolean deep) {
+        LazySection.materialize(section);
+        super.mapChildrenKeys(output, section, deep);
+    }
+    
+    @Override
+    protected void mapChildrenValues(Map<String, Object> output, ConfigurationSection section, boolean deep) {
+        LazySection.materialize(section);
+        super.mapChildrenValues(output, section, deep);
+    }
+    
+    // LAZY MODE //
+    
+    private static void fill(ConfigurationSection into, JsonValue source) {
+        char separator = into.getRoot().options().pathSeparator();
+        List<String> names = source.names();
+        List<JsonValue> values = source.values();
+        for (int i = 0, n = names.size(); i < n; i++) {
+            String key = names.get(i);
+            JsonValue value = values.get(i);
+            if (value.isObject()) {
+                if (key.indexOf(separator) == -1) {
+                    into.set(key, new LazySection(into, key, value));
+                } else {
+                    // the key is a path, whose sections are created by createSection
+                    fill(into.createSection(key), value);
+                }
+            } else if (!value.isNull()) {
+                into.set(key, value.toObject());
+            }
+        }
+    }
+    
+    /**
+     * A section that puts its values in its map when it is first accessed.
+     * The map is read directly by {@link MemorySection} for child sections, which is why both this class
+     * and {@link JsonConfiguration} materialize the sections passed to {@code mapChildrenKeys} and {@code mapChildrenValues}.
+     */
+    static final class LazySection extends MemorySection {
+        // cleared once the map is filled, which publishes the map to threads that read it without the lock
+        private volatile JsonValue source;
+        // true while the map is filled by the thread that holds the lock, whose calls to set go to the map
+        private boolean filling;
+        
+        LazySection(ConfigurationSection parent, String path, JsonValue source) {
+            super(parent, path);
+            this.source = source;
+        }
+        
+        /**
+         * @return the part of the tape of this section, or null if it was materialized
+         */
+        JsonValue getSource() {
+            return source;
+        }
+        
+        static void materialize(ConfigurationSection section) {
+            if (section instanceof LazySection) {
+                ((LazySection) section).materialize();
+            }
+        }
+        
+        void materialize() {
+            if (source == null) {
+                return;
+            }
+            synchronized (this) {
+                JsonValue source = this.source;
+                if (source == null || filling) {
+                    return;
+                }
+                filling = true;
+                try {
+                    fill(this, source);
+                } finally {
+                    filling = false;
+                }
+                this.source = null;
+            }
+        }
+        
+        @Override
+        public Object get(String path, Object def) {
+            materialize();
+            return super.get(path, def);
+        }
+        
+        @Override
+        public void set(String path, Object value) {
+            materialize();
+            super.set(path, value);
+        }
+        
+        @Override
+        public ConfigurationSection createSection(String path) {
+            materialize();
+            return super.createSection(path);
+        }
+        
+        @Override
+        public Set<String> getKeys(boolean deep) {
+            materialize();
+            return super.getKeys(deep);
+        }
+        
+        @Override
+        public Map<String, Object> getValues(boolean deep) {
+            materialize();
+            return super.getValues(deep);
+        }
+        
+        @Override
+        protected void mapChildrenKeys(Set<String> output, ConfigurationSection section, boolean deep) {
+            materialize(section);
+            super.mapChildrenKeys(output, section, deep);
+        }
+        
+        @Override
+        protected void mapChildrenValues(Map<String, Object> output, ConfigurationSection section, boolean deep) {
+            materialize(section);
+            super.mapChildrenValues(output, section, deep);
+        }
+        
+    }
     
 }
@@ -3,8 +3,6 @@ package io.dico.dicore.serialization;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -25,18 +23,18 @@ public abstract class JsonFileAdapter<T extends JsonLoadable> extends FileAdapte
 
     @Override
     public void saveUnsafe(T object, String path) throws Exception {
-        try (FileWriter fileWriter = new FileWriter(fileAt(path, true));
-             JsonWriter jsonWriter = new JsonWriter(fileWriter)) {
+        writeText(path, writer -> {
+            JsonWriter jsonWriter = new JsonWriter(writer);
             jsonWriter.setIndent(indent);
             object.writeTo(jsonWriter);
-        }
+            jsonWriter.flush();
+        });
     }
 
     @Override
     public T loadUnsafe(String path) throws Exception {
         T object = fallback();
-        try (FileReader fileReader = new FileReader(fileAt(path, false));
-             JsonReader jsonReader = new JsonReader(fileReader)) {
+        try (JsonReader jsonReader = new JsonReader(openReader(path))) {
             object.loadFrom(jsonReader);
         }
         return object;
@@ -0,0 +1,261 @@
+package io.dico.dicore.serialization;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A JSON value decoded into a flat tape of typed tokens, which is navigated through {@link JsonValue} views.
+ * <p>
+ * Decoding creates no objects per node: each token is a kind byte and a primitive payload.
+ * Integral numbers are kept as longs and other numbers as doubles, without boxing. Strings are the only objects,
+ * and object names are deduplicated, such that repeated keys share a single string.
+ * Each container token stores the position of the end of the container, so that lookups skip over the subtrees
+ * they don't need. Maps, lists and lookup indexes are only created for the containers that are accessed.
+ * <p>
+ * A tape is immutable once it is read, apart from its lookup indexes, which are created under a lock.
+ * It can be read by multiple threads.
+ */
+public final class JsonTape {
+    static final byte OBJECT = 1;
+    static final byte ARRAY = 2;
+    static final byte NAME = 3;
+    static final byte STRING = 4;
+    static final byte LONG = 5;
+    static final byte DOUBLE = 6;
+    static final byte TRUE = 7;
+    static final byte FALSE = 8;
+    static final byte NULL = 9;
+    /**
+     * Objects with more fields than this get a hash index on their first lookup, smaller objects are scanned
+     */
+    static final int INDEX_THRESHOLD = 8;
+    private byte[] kinds = new byte[64];
+    // OBJECT and ARRAY: the end position in the low half, and the amount of elements in the high half
+    // NAME and STRING: the index of the string. LONG: the value. DOUBLE: the raw bits.
+    private long[] payloads = new long[64];
+    private String[] strings = new String[16];
+    private int size;
+    private int stringCount;
+    private Map<Integer, Object> indexes;
+
+    private JsonTape() {
+    }
+
+    /**
+     * Read the next value of the reader onto a tape
+     *
+     * @param reader the reader
+     * @return the tape
+     * @throws IOException if an error occurs
+     */
+    public static JsonTape read(JsonReader reader) throws IOException {
+        JsonTape tape = new JsonTape();
+        Map<String, Integer> names = new HashMap<>();
+        int[] starts = new int[16];
+        int[] counts = new int[16];
+        int depth = 0;
+
+        do {
+            JsonToken token = reader.peek();
+            if (depth > 0 && token != JsonToken.NAME && token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY) {
+                counts[depth - 1]++;
+            }
+
+            switch (token) {
+                case BEGIN_OBJECT:
+                case BEGIN_ARRAY:
+                    boolean isObject = token == JsonToken.BEGIN_OBJECT;
+                    if (isObject) {
+                        reader.beginObject();
+                    } else {
+                        reader.beginArray();
+                    }
+                    if (depth == starts.length) {
+                        starts = Arrays.copyOf(starts, depth * 2);
+                        counts = Arrays.copyOf(counts, depth * 2);
+                    }
+                    starts[depth] = tape.add(isObject ? OBJECT : ARRAY, 0);
+                    counts[depth] = 0;
+                    depth++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    if (token == JsonToken.END_OBJECT) {
+                        reader.endObject();
+                    } else {
+                        reader.endArray();
+                    }
+                    depth--;
+                    tape.payloads[starts[depth]] = tape.size | ((long) counts[depth] << 32);
+                    break;
+                case NAME:
+                    String name = reader.nextName();
+                    Integer index = names.get(name);
+                    if (index == null) {
+                        index = tape.addString(name);
+                        names.put(name, index);
+                    }
+                    tape.add(NAME, index);
+                    break;
+                case STRING:
+                    tape.add(STRING, tape.addString(reader.nextString()));
+                    break;
+                case NUMBER:
+                    tape.addNumber(reader.nextString());
+                    break;
+                case BOOLEAN:
+                    tape.add(reader.nextBoolean() ? TRUE : FALSE, 0);
+                    break;
+                case NULL:
+                    reader.nextNull();
+                    tape.add(NULL, 0);
+                    break;
+                default:
+                    throw new EOFException("End of input");
+            }
+        } while (depth > 0);
+
+        return tape;
+    }
+
+    private int add(byte kind, long payload) {
+        if (size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, size * 2);
+            payloads = Arrays.copyOf(payloads, size * 2);
+        }
+        kinds[size] = kind;
+        payloads[size] = payload;
+        return size++;
+    }
+
+    private int addString(String value) {
+        if (stringCount == strings.length) {
+            strings = Arrays.copyOf(strings, stringCount * 2);
+        }
+        strings[stringCount] = value;
+        return stringCount++;
+    }
+
+    private void addNumber(String literal) {
+        boolean integral = true;
+        for (int i = 0; i < literal.length() && integral; i++) {
+            char c = literal.charAt(i);
+            integral = c >= '0' && c <= '9' || c == '-' && i == 0;
+        }
+        if (integral) {
+            try {
+                add(LONG, Long.parseLong(literal));
+                return;
+            } catch (NumberFormatException ignored) {
+                // out of the range of a long
+            }
+        }
+        add(DOUBLE, Double.doubleToRawLongBits(Double.parseDouble(literal)));
+    }
+
+    /**
+     * @return the value that was read
+     */
+    public JsonValue root() {
+        return new JsonValue(this, 0);
+    }
+
+    byte kind(int position) {
+        return kinds[position];
+    }
+
+    long payload(int position) {
+        return payloads[position];
+    }
+
+    String string(int position) {
+        return strings[(int) payloads[position]];
+    }
+
+    int count(int position) {
+        return (int) (payloads[position] >>> 32);
+    }
+
+    /**
+     * @return the position after the value at the position
+     */
+    int next(int position) {
+        byte kind = kinds[position];
+        return kind == OBJECT || kind == ARRAY ? (int) payloads[position] : position + 1;
+    }
+
+    /**
+     * @return the position of the field with the name in the object at the position, or -1
+     */
+    int find(int object, String name) {
+        int count = count(object);
+        if (count > INDEX_THRESHOLD) {
+            Integer result = objectIndex(object).get(name);
+            return result == null ? -1 : result;
+        }
+
+        int result = -1;
+        int end = next(object);
+        for (int position = object + 1; position < end; position = next(position + 1)) {
+            // like a JsonReader read into a map, the last of duplicate names wins
+            if (string(position).equals(name)) {
+                result = position + 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the position of the element at the index in the array at the position, or -1
+     */
+    int element(int array, int index) {
+        if (index < 0 || index >= count(array)) {
+            return -1;
+        }
+        if (index == 0) {
+            return array + 1;
+        }
+        return arrayIndex(array)[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized Map<String, Integer> objectIndex(int object) {
+        if (indexes == null) {
+            indexes = new HashMap<>();
+        }
+        Map<String, Integer> result = (Map<String, Integer>) indexes.get(object);
+        if (result == null) {
+            result = new HashMap<>();
+            int end = next(object);
+            for (int position = object + 1; position < end; position = next(position + 1)) {
+                result.put(string(position), position + 1);
+            }
+            indexes.put(object, result);
+        }
+        return result;
+    }
+
+    private synchronized int[] arrayIndex(int array) {
+        if (indexes == null) {
+            indexes = new HashMap<>();
+        }
+        int[] result = (int[]) indexes.get(array);
+        if (result == null) {
+            result = new int[count(array)];
+            int end = next(array);
+            int i = 0;
+            for (int position = array + 1; position < end; position = next(position)) {
+                result[i++] = position;
+            }
+            indexes.put(array, result);
+        }
+        return result;
+    }
+
+}
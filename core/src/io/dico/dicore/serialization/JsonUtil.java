@@ -67,6 +67,7 @@ public class JsonUtil {
                 writer.endArray();
             }
             
+            writer.endObject();
         }
         
         if (stack.getDurability() != 0) {
@@ -76,68 +77,179 @@ public class JsonUtil {
     }
     
     public static ItemStack readItemStack(JsonReader reader) throws IOException {
-        Object object = read(reader);
-        if (object instanceof Map) {
-            try {
-                Map<String, Object> map = (Map<String, Object>) object;
-                Material type = Material.valueOf((String) map.get("type"));
-                if (type == null) return null;
+        // the whole value is consumed before it is decoded, so that a malformed stack leaves the reader after it
+        return readItemStack(JsonTape.read(reader).root());
+    }
+    
+    public static ItemStack readItemStack(JsonValue object) {
+        if (!object.isObject()) {
+            return null;
+        }
+        
+        try {
+            JsonValue type = object.get("type");
+            if (type == null) {
+                return null;
+            }
+            
+            ItemStack result = new ItemStack(Material.valueOf(type.asString()));
+            result.setAmount(getInt(object, "amount", 1));
+            result.getData().setData((byte) getInt(object, "data", 0));
+            result.setDurability((short) getInt(object, "durability", 0));
+            
+            JsonValue metaObject = object.get("meta");
+            if (metaObject != null && metaObject.isObject()) {
+                ItemMeta meta = StorageForwardingMeta.ensureNotStored(result.getItemMeta());
                 
-                ItemStack result = new ItemStack(type);
+                JsonValue enchantments = metaObject.get("enchantments");
+                if (enchantments != null && enchantments.isObject()) {
+                    List<String> names = enchantments.names();
+                    List<JsonValue> levels = enchantments.values();
+                    for (int i = 0; i < names.size(); i++) {
+                        Enchantment ench = Enchantment.getByName(names.get(i));
+                        if (ench != null) {
+                            meta.addEnchant(ench, levels.get(i).asInt(1), true);
+                        }
+                    }
+                }
                 
-                result.setAmount(((Number) map.getOrDefault("amount", 1)).intValue());
-                result.getData().setData(((Number) map.getOrDefault("data", 0)).byteValue());
-                result.setDurability(((Number) map.getOrDefault("durability", 0)).shortValue());
+                JsonValue lore = metaObject.get("lore");
+                if (lore != null && lore.isArray()) {
+                    meta.setLore(lore.asStringList());
+                }
                 
-                object = map.get("meta");
-                if (object != null && object instanceof Map) {
-                    ItemMeta meta = StorageForwardingMeta.ensureNotStored(result.getItemMeta());
-                    Map<String, Object> metaMap = (Map<String, Object>) object;
-                    
-                    Object objectEnchantments = metaMap.get("enchantments");
-                    if (objectEnchantments != null && objectEnchantments instanceof Map) {
-                        Map<String, Object> enchantments = (Map<String, Object>) objectEnchantments;
-                        for (Map.Entry<String, Object> entry : enchantments.entrySet()) {
-                            Enchantment ench = Enchantment.getByName(entry.getKey());
-                            if (ench != null) {
-                                int level = ((Number) entry.getValue()).intValue();
-                                meta.addEnchant(ench, level, true);
-                            }
+                JsonValue title = metaObject.get("title");
+                if (title != null && title.isString()) {
+                    meta.setDisplayName(title.asString());
+                }
+                
+                JsonValue unbreakable = metaObject.get("unbreakable");
+                if (unbreakable != null && unbreakable.isBoolean()) {
+                    meta.spigot().setUnbreakable(unbreakable.asBoolean());
+                }
+                
+                JsonValue flags = metaObject.get("flags");
+                if (flags != null && flags.isArray()) {
+                    for (String flag : flags.asStringList()) {
+                        try {
+                            meta.addItemFlags(ItemFlag.valueOf(flag));
+                        } catch (IllegalArgumentException ignored) {
                         }
                     }
-                    
-                    object = metaMap.get("lore");
-                    if (object != null && object instanceof Collection) {
-                        List<String> lore = (List<String>) object;
-                        meta.setLore(lore);
-                    }
-                    
-                    object = metaMap.get("title");
-                    if (object != null && object instanceof String) {
-                        meta.setDisplayName((String) object);
-                    }
-                    
-                    object = metaMap.get("unbreakable");
-                    if (object != null && object instanceof Boolean) {
-                        meta.spigot().setUnbreakable((Boolean) object);
-                    }
-                    
-                    object = metaMap.get("flags");
-                    if (object != null && object instanceof Collection) {
-                        Collection<ItemFlag> flags = (Collection<ItemFlag>) object;
-                        meta.addItemFlags(flags.toArray(new ItemFlag[flags.size()]));
-                    }
                 }
                 
-                return result;
-            } catch (Throwable t) {
-                return null;
+                result.setItemMeta(meta);
             }
+            
+            return result;
+        } catch (Throwable t) {
+            return null;
         }
+    }
+    
+    /**
+     * Write the contents of an inventory with a palette of the distinct items in it.
+     * Each distinct item is written once, like by {@link #writeItemStack(JsonWriter, ItemStack)} with an amount of 1,
+     * and the occupied slots are written as a flat array of {@code slot, palette index, amount} triples:
+     * <pre>{"size":36,"palette":[{"type":"DIAMOND_SWORD","meta":{...}},...],"slots":[0,0,1,1,0,1,...]}</pre>
+     *
+     * @param writer   the writer
+     * @param contents the contents, which may contain null and air for empty slots
+     * @throws IOException if an error occurs
+     */
+    public static void writeInventory(JsonWriter writer, ItemStack[] contents) throws IOException {
+        Map<ItemStack, Integer> paletteIndexes = new HashMap<>();
+        List<ItemStack> palette = new ArrayList<>();
+        int[] slots = new int[contents.length * 3];
+        int slotCount = 0;
         
-        return null;
+        for (int slot = 0; slot < contents.length; slot++) {
+            ItemStack stack = contents[slot];
+            if (stack == null || stack.getType() == Material.AIR) {
+                continue;
+            }
+            
+            // the amount is part of the hash code and equality of item stacks
+            ItemStack key = stack;
+            if (stack.getAmount() != 1) {
+                key = stack.clone();
+                key.setAmount(1);
+            }
+            Integer index = paletteIndexes.get(key);
+            if (index == null) {
+                index = palette.size();
+                paletteIndexes.put(key, index);
+                palette.add(key);
+            }
+            
+            slots[slotCount++] = slot;
+            slots[slotCount++] = index;
+            slots[slotCount++] = stack.getAmount();
+        }
+        
+        writer.beginObject();
+        writer.name("size").value(contents.length);
+        writer.name("palette");
+        writer.beginArray();
+        for (ItemStack stack : palette) {
+            writeItemStack(writer, stack);
+        }
+        writer.endArray();
+        writer.name("slots");
+        writer.beginArray();
+        for (int i = 0; i < slotCount; i++) {
+            writer.value(slots[i]);
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+    
+    /**
+     * Read the contents of an inventory written by {@link #writeInventory(JsonWriter, ItemStack[])}.
+     * Each palette entry is decoded once, and the slots that use it receive copies of it.
+     * Slots with items that can't be read are left empty.
+     *
+     * @param reader the reader
+     * @return the contents
+     * @throws IOException if an error occurs
+     */
+    public static ItemStack[] readInventory(JsonReader reader) throws IOException {
+        JsonValue object = JsonTape.read(reader).root();
+        ItemStack[] result = new ItemStack[Math.max(0, getInt(object, "size", 0))];
+        
+        JsonValue paletteArray = object.get("palette");
+        List<JsonValue> paletteValues = paletteArray == null ? Collections.emptyList() : paletteArray.values();
+        ItemStack[] palette = new ItemStack[paletteValues.size()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = readItemStack(paletteValues.get(i));
+        }
+        
+        JsonValue slots = object.get("slots");
+        int slotCount = slots == null ? 0 : slots.size() / 3 * 3;
+        for (int i = 0; i < slotCount; i += 3) {
+            int slot = slots.get(i).asInt(-1);
+            int index = slots.get(i + 1).asInt(-1);
+            if (slot < 0 || slot >= result.length || index < 0 || index >= palette.length || palette[index] == null) {
+                continue;
+            }
+            
+            ItemStack stack = palette[index].clone();
+            stack.setAmount(slots.get(i + 2).asInt(1));
+            result[slot] = stack;
+        }
+        return result;
+    }
+    
+    private static int getInt(JsonValue object, String name, int def) {
+        JsonValue value = object.get(name);
+        return value == null ? def : value.asInt(def);
     }
     
+    /**
+     * @deprecated this builds a tree of hash maps and lists, with every number boxed as a Double.
+     * Use {@link JsonTape#read(JsonReader)}, which keeps numbers unboxed and only builds the parts of the tree that are accessed.
+     */
+    @Deprecated
     public static Object read(JsonReader reader) throws IOException {
         
         switch (reader.peek()) {
@@ -180,6 +292,14 @@ public class JsonUtil {
     }
     
     public static void insert(JsonWriter writer, Object value) throws IOException {
+        if (value instanceof JsonConfiguration.LazySection) {
+            JsonValue source = ((JsonConfiguration.LazySection) value).getSource();
+            if (source != null) {
+                source.writeTo(writer);
+                return;
+            }
+        }
+        
         if (value instanceof ConfigurationSerializable) {
             value = ((ConfigurationSerializable) value).serialize();
         } else if (value instanceof ConfigurationSection) {
@@ -0,0 +1,363 @@
+package io.dico.dicore.serialization;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.*;
+
+import static io.dico.dicore.serialization.JsonTape.*;
+
+/**
+ * A view of a value on a {@link JsonTape}. Views are cheap to create, and navigating them doesn't copy any part of the tape.
+ * <p>
+ * The {@code asX(default)} methods convert between numbers and numeric strings like {@link com.google.gson.stream.JsonReader} does,
+ * and return the default if the value can't be converted. The {@code asX()} methods throw an {@link IllegalStateException} instead.
+ */
+public final class JsonValue {
+    private final JsonTape tape;
+    private final int position;
+
+    JsonValue(JsonTape tape, int position) {
+        this.tape = tape;
+        this.position = position;
+    }
+
+    public boolean isObject() {
+        return tape.kind(position) == OBJECT;
+    }
+
+    public boolean isArray() {
+        return tape.kind(position) == ARRAY;
+    }
+
+    public boolean isString() {
+        return tape.kind(position) == STRING;
+    }
+
+    public boolean isNumber() {
+        byte kind = tape.kind(position);
+        return kind == LONG || kind == DOUBLE;
+    }
+
+    /**
+     * @return true if this value is a number without a fraction or exponent that fits in a long
+     */
+    public boolean isIntegral() {
+        return tape.kind(position) == LONG;
+    }
+
+    public boolean isBoolean() {
+        byte kind = tape.kind(position);
+        return kind == TRUE || kind == FALSE;
+    }
+
+    public boolean isNull() {
+        return tape.kind(position) == NULL;
+    }
+
+    /**
+     * @return the amount of fields of an object or elements of an array, or 0 for other values
+     */
+    public int size() {
+        return isObject() || isArray() ? tape.count(position) : 0;
+    }
+
+    /**
+     * @param name the name
+     * @return the field with the name if this is an object that has it, null otherwise
+     */
+    public JsonValue get(String name) {
+        if (!isObject()) {
+            return null;
+        }
+        int result = tape.find(position, name);
+        return result == -1 ? null : new JsonValue(tape, result);
+    }
+
+    /**
+     * @param index the index
+     * @return the element at the index if this is an array that has it, null otherwise
+     */
+    public JsonValue get(int index) {
+        if (!isArray()) {
+            return null;
+        }
+        int result = tape.element(position, index);
+        return result == -1 ? null : new JsonValue(tape, result);
+    }
+
+    /**
+     * @return the names of the fields of an object in order, or an empty list for other values
+     */
+    public List<String> names() {
+        if (!isObject()) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>(tape.count(position));
+        int end = tape.next(position);
+        for (int field = position + 1; field < end; field = tape.next(field + 1)) {
+            result.add(tape.string(field));
+        }
+        return result;
+    }
+
+    /**
+     * @return the values of the fields of an object or the elements of an array in order, or an empty list for other values
+     */
+    public List<JsonValue> values() {
+        boolean isObject = isObject();
+        if (!isObject && !isArray()) {
+            return Collections.emptyList();
+        }
+        List<JsonValue> result = new ArrayList<>(tape.count(position));
+        int end = tape.next(position);
+        int child = position + 1;
+        while (child < end) {
+            if (isObject) {
+                child++;
+            }
+            result.add(new JsonValue(tape, child));
+            child = tape.next(child);
+        }
+        return result;
+    }
+
+    /**
+     * @return the elements of an array converted to strings, without the elements that can't be converted, or an empty list for other values
+     */
+    public List<String> asStringList() {
+        List<JsonValue> values = isArray() ? values() : Collections.emptyList();
+        List<String> result = new ArrayList<>(values.size());
+        for (JsonValue value : values) {
+            String string = value.asString(null);
+            if (string != null) {
+                result.add(string);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the string, the text of a number or boolean, or the default for other values
+     */
+    public String asString(String def) {
+        switch (tape.kind(position)) {
+            case STRING:
+                return tape.string(position);
+            case LONG:
+                return Long.toString(tape.payload(position));
+            case DOUBLE:
+                return Double.toString(Double.longBitsToDouble(tape.payload(position)));
+            case TRUE:
+                return "true";
+            case FALSE:
+                return "false";
+            default:
+                return def;
+        }
+    }
+
+    public String asString() {
+        String result = asString(null);
+        if (result == null) {
+            throw unexpected("a string");
+        }
+        return result;
+    }
+
+    public long asLong(long def) {
+        switch (tape.kind(position)) {
+            case LONG:
+                return tape.payload(position);
+            case DOUBLE: {
+                double value = Double.longBitsToDouble(tape.payload(position));
+                return (long) value == value ? (long) value : def;
+            }
+            case STRING:
+                try {
+                    return Long.parseLong(tape.string(position));
+                } catch (NumberFormatException ex) {
+                    double value = asDouble(Double.NaN);
+                    return (long) value == value ? (long) value : def;
+                }
+            default:
+                return def;
+        }
+    }
+
+    public long asLong() {
+        long result = asLong(0);
+        // the default is returned for either default only if the value can't be converted
+        if (result == 0 && asLong(1) == 1) {
+            throw unexpected("a long");
+        }
+        return result;
+    }
+
+    public int asInt(int def) {
+        long result = asLong((long) Integer.MIN_VALUE - 1);
+        return (int) result == result ? (int) result : def;
+    }
+
+    public int asInt() {
+        long result = asLong();
+        if ((int) result != result) {
+            throw unexpected("an int");
+        }
+        return (int) result;
+    }
+
+    public double asDouble(double def) {
+        switch (tape.kind(position)) {
+            case LONG:
+                return tape.payload(position);
+            case DOUBLE:
+                return Double.longBitsToDouble(tape.payload(position));
+            case STRING:
+                try {
+                    return Double.parseDouble(tape.string(position));
+                } catch (NumberFormatException ex) {
+                    return def;
+                }
+            default:
+                return def;
+        }
+    }
+
+    public double asDouble() {
+        double result = asDouble(Double.NaN);
+        if (Double.isNaN(result)) {
+            throw unexpected("a double");
+        }
+        return result;
+    }
+
+    public boolean asBoolean(boolean def) {
+        switch (tape.kind(position)) {
+            case TRUE:
+                return true;
+            case FALSE:
+                return false;
+            case STRING:
+                String value = tape.string(position);
+                return value.equalsIgnoreCase("true") || !value.equalsIgnoreCase("false") && def;
+            default:
+                return def;
+        }
+    }
+
+    public boolean asBoolean() {
+        if (!isBoolean()) {
+            throw unexpected("a boolean");
+        }
+        return tape.kind(position) == TRUE;
+    }
+
+    /**
+     * Convert this value to plain java objects. Objects become ordered maps, which are compact for small objects,
+     * arrays become lists, and integral numbers become Integers if they fit, Longs otherwise.
+     *
+     * @return the object
+     */
+    public Object toObject() {
+        switch (tape.kind(position)) {
+            case OBJECT: {
+                int count = tape.count(position);
+                Map<String, Object> result = count <= INDEX_THRESHOLD ? new CompactMap(count) : new LinkedHashMap<>(count * 4 / 3 + 1);
+                int end = tape.next(position);
+                for (int field = position + 1; field < end; field = tape.next(field + 1)) {
+                    result.put(tape.string(field), new JsonValue(tape, field + 1).toObject());
+                }
+                return result;
+            }
+            case ARRAY: {
+                List<Object> result = new ArrayList<>(tape.count(position));
+                for (JsonValue value : values()) {
+                    result.add(value.toObject());
+                }
+                return result;
+            }
+            case STRING:
+                return tape.string(position);
+            case LONG: {
+                long value = tape.payload(position);
+                return (int) value == value ? (Object) (int) value : (Object) value;
+            }
+            case DOUBLE:
+                return Double.longBitsToDouble(tape.payload(position));
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Write this value to the writer
+     *
+     * @param writer the writer
+     * @throws IOException if an error occurs
+     */
+    public void writeTo(JsonWriter writer) throws IOException {
+        switch (tape.kind(position)) {
+            case OBJECT: {
+                writer.beginObject();
+                int end = tape.next(position);
+                for (int field = position + 1; field < end; field = tape.next(field + 1)) {
+                    writer.name(tape.string(field));
+                    new JsonValue(tape, field + 1).writeTo(writer);
+                }
+                writer.endObject();
+                break;
+            }
+            case ARRAY:
+                writer.beginArray();
+                for (JsonValue value : values()) {
+                    value.writeTo(writer);
+                }
+                writer.endArray();
+                break;
+            case STRING:
+                writer.value(tape.string(position));
+                break;
+            case LONG:
+                writer.value(tape.payload(position));
+                break;
+            case DOUBLE:
+                writer.value(Double.longBitsToDouble(tape.payload(position)));
+                break;
+            case TRUE:
+            case FALSE:
+                writer.value(tape.kind(position) == TRUE);
+                break;
+            default:
+                writer.nullValue();
+                break;
+        }
+    }
+
+    private IllegalStateException unexpected(String expected) {
+        return new IllegalStateException("Expected " + expected + " but was " + this);
+    }
+
+    /**
+     * @return this value as JSON text
+     */
+    @Override
+    public String toString() {
+        StringWriter result = new StringWriter();
+        try {
+            JsonWriter writer = new JsonWriter(result);
+            writer.setLenient(true);
+            writeTo(writer);
+            writer.flush();
+        } catch (IOException ex) {
+            throw new AssertionError(ex);
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,197 @@
+package io.dico.dicore.serialization;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file that is read through memory mapped windows, such that its bytes are read directly from the page cache
+ * instead of being copied through stream buffers. The windows are mapped one after another, so that
+ * files of any size can be read while a bounded part of them is mapped.
+ * <p>
+ * A mapped file can't be replaced on Windows until its mapping is garbage collected, which would make saves fail.
+ * Mapping is therefore not {@link #SUPPORTED supported} on Windows.
+ */
+final class MappedFile implements Closeable {
+    static final boolean SUPPORTED = !System.getProperty("os.name", "").startsWith("Windows");
+    static final int WINDOW_SIZE = 1 << 26;
+    private final FileChannel channel;
+    private final int windowSize;
+    private final long size;
+    private long windowStart;
+    private ByteBuffer window;
+
+    MappedFile(File file) throws IOException {
+        this(file, WINDOW_SIZE);
+    }
+
+    MappedFile(File file, int windowSize) throws IOException {
+        this.windowSize = windowSize;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            size = channel.size();
+            map(0);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private void map(long position) throws IOException {
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, size - position));
+    }
+
+    /**
+     * Map the next window, starting at the first byte that wasn't consumed from the current window
+     *
+     * @return false if the current window is the last one
+     * @throws IOException if an error occurs
+     */
+    private boolean next() throws IOException {
+        if (isLastWindow()) {
+            return false;
+        }
+        map(windowStart + window.position());
+        return true;
+    }
+
+    private boolean isLastWindow() {
+        return windowStart + window.limit() >= size;
+    }
+
+    FileAdapter.Compression detectCompression() {
+        int b0 = size > 0 ? window.get(0) & 0xFF : -1;
+        int b1 = size > 1 ? window.get(1) & 0xFF : -1;
+        return FileAdapter.Compression.detect(b0, b1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    /**
+     * @return a stream of the bytes of the file. Closing it closes this file.
+     */
+    InputStream openInput() {
+        return new Input();
+    }
+
+    /**
+     * @return a reader that decodes the file as UTF-8, replacing malformed input. Closing it closes this file.
+     */
+    Reader openReader() {
+        return new Utf8Reader();
+    }
+
+    private final class Input extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            if (!window.hasRemaining() && !next()) {
+                return -1;
+            }
+            return window.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!window.hasRemaining() && !next()) {
+                return -1;
+            }
+            int result = Math.min(len, window.remaining());
+            window.get(b, off, result);
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long result = 0;
+            while (n > 0 && (window.hasRemaining() || next())) {
+                int skipped = (int) Math.min(n, window.remaining());
+                window.position(window.position() + skipped);
+                result += skipped;
+                n -= skipped;
+            }
+            return result;
+        }
+
+        @Override
+        public int available() {
+            return window.remaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            MappedFile.this.close();
+        }
+    }
+
+    private final class Utf8Reader extends Reader {
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        // holds the low surrogate of a pair that didn't fit in the caller's buffer
+        private final CharBuffer spill = CharBuffer.allocate(2);
+        private boolean done;
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (spill.position() > 0) {
+                cbuf[off] = spill.get(1);
+                spill.clear();
+                return 1;
+            }
+            if (done) {
+                return -1;
+            }
+
+            CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+            while (true) {
+                boolean last = isLastWindow();
+                CoderResult result = decoder.decode(window, out, last);
+                if (out.position() > off) {
+                    return out.position() - off;
+                }
+
+                if (result.isOverflow()) {
+                    // a surrogate pair, but only one char fits
+                    decoder.decode(window, spill, last);
+                    cbuf[off] = spill.get(0);
+                    if (spill.position() < 2) {
+                        spill.clear();
+                    }
+                    return 1;
+                }
+
+                if (last) {
+                    decoder.flush(out);
+                    done = true;
+                    return out.position() > off ? out.position() - off : -1;
+                }
+                // the rest of the window is the start of a sequence that continues in the next window
+                next();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            MappedFile.this.close();
+        }
+    }
+
+}
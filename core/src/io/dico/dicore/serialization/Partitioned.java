@@ -0,0 +1,28 @@
+package io.dico.dicore.serialization;
+
+import java.util.Map;
+
+/**
+ * Data that is saved by a {@link PartitionedFileAdapter}, as a small root document and a file per part.
+ * <p>
+ * {@link #writeTo(com.google.gson.stream.JsonWriter)} and {@link #loadFrom(com.google.gson.stream.JsonReader)}
+ * handle the root document, which should not include the parts.
+ *
+ * @param <P> the type of the parts
+ */
+public interface Partitioned<P extends SubSaveable & JsonLoadable> extends JsonLoadable {
+
+    /**
+     * @return the parts, by key. Keys must be stable, because they determine the file that a part is saved to.
+     */
+    Map<String, P> getParts();
+
+    /**
+     * Create an empty part for the key and add it to this data. The part is then loaded from its file.
+     * If its file can't be read, the part is removed from {@link #getParts()} again.
+     *
+     * @param key the key
+     * @return the part
+     */
+    P newPart(String key);
+}
@@ -0,0 +1,247 @@
+package io.dico.dicore.serialization;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Saves {@link Partitioned} data as a manifest and a file per part, rewriting only the parts that are {@link SubSaveable#isDirty() dirty}.
+ * <p>
+ * The manifest is written at the path, and contains the root document and the keys of the parts.
+ * The parts are written to a directory next to it, named after the path without its extension and with {@code .parts} appended.
+ * Parts are written before the manifest, and files of parts that were removed are deleted after it.
+ * Only files of parts that this adapter loaded or wrote are deleted, other files in the directory are left alone.
+ * <p>
+ * A part whose file can't be read is reported to {@link #onErrorLoad(Exception)} and left out of the data,
+ * while the other parts are still loaded. Its file is kept, and its key stays in the manifest,
+ * until the data contains a part with that key again, which then replaces the file.
+ * <p>
+ * The dirty flags are read and cleared by the save, so the data must not be modified concurrently.
+ * Typically it is saved on the main thread, where the cost of a save is proportional to the size of the changed parts.
+ */
+public abstract class PartitionedFileAdapter<T extends Partitioned<?>> extends FileAdapter<T> {
+    private static final String PART_EXTENSION = ".json";
+    private final Map<File, PartFiles> partFiles = new ConcurrentHashMap<>();
+    private volatile int lastWrittenParts;
+
+    /**
+     * @return the amount of part files written by the last save
+     */
+    public int getLastWrittenParts() {
+        return lastWrittenParts;
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void saveUnsafe(T object, String path) throws Exception {
+        // the wildcard of T can't be captured as a type variable with the bounds of P
+        savePartitioned((Partitioned) object, path);
+    }
+
+    private <P extends SubSaveable & JsonLoadable> void savePartitioned(Partitioned<P> object, String path) throws Exception {
+        File directory = getPartDirectory(path);
+        PartFiles previous = partFiles.getOrDefault(directory, PartFiles.EMPTY);
+        Set<String> existingFiles = listPartFiles(directory);
+        Set<String> fileNames = new HashSet<>();
+        List<String> keys = new ArrayList<>();
+        int writtenParts = 0;
+
+        Map<String, P> parts = object.getParts();
+        for (Map.Entry<String, P> entry : parts.entrySet()) {
+            String fileName = getPartFileName(entry.getKey());
+            P part = entry.getValue();
+            keys.add(entry.getKey());
+            fileNames.add(fileName);
+
+            boolean dirty = part.clearDirty();
+            if (dirty || !existingFiles.contains(fileName) || previous.unreadableKeys.contains(entry.getKey())) {
+                try {
+                    writeJson(new File(directory, fileName).getPath(), part);
+                } catch (Exception ex) {
+                    part.markDirty();
+                    throw ex;
+                }
+                writtenParts++;
+            }
+        }
+
+        Set<String> unreadableKeys = new HashSet<>();
+        for (String key : previous.unreadableKeys) {
+            if (!parts.containsKey(key)) {
+                unreadableKeys.add(key);
+                keys.add(key);
+            }
+        }
+
+        writeText(path, writer -> {
+            JsonWriter jsonWriter = new JsonWriter(writer);
+            jsonWriter.beginObject();
+            jsonWriter.name("root");
+            object.writeTo(jsonWriter);
+            jsonWriter.name("parts").beginArray();
+            for (String key : keys) {
+                jsonWriter.value(key);
+            }
+            jsonWriter.endArray();
+            jsonWriter.endObject();
+            jsonWriter.flush();
+        });
+        lastWrittenParts = writtenParts;
+
+        for (String fileName : existingFiles) {
+            if (!fileNames.contains(fileName) && previous.ownedFiles.contains(fileName)) {
+                new File(directory, fileName).delete();
+            }
+        }
+        partFiles.put(directory, new PartFiles(fileNames, unreadableKeys));
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public T loadUnsafe(String path) throws Exception {
+        T object = fallback();
+        List<String> keys = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(openReader(path))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "root":
+                        object.loadFrom(reader);
+                        break;
+                    case "parts":
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            keys.add(reader.nextString());
+                        }
+                        reader.endArray();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        }
+
+        File directory = getPartDirectory(path);
+        Set<String> ownedFiles = new HashSet<>();
+        Set<String> unreadableKeys = new HashSet<>();
+        for (String key : keys) {
+            String fileName = getPartFileName(key);
+            File file = new File(directory, fileName);
+            try {
+                SubSaveable part = loadPart((Partitioned) object, key, file.getPath());
+                part.clearDirty();
+                ownedFiles.add(fileName);
+            } catch (Exception ex) {
+                object.getParts().remove(key);
+                unreadableKeys.add(key);
+                // wrapped, such that a missing part file is reported, unlike a missing manifest
+                onErrorLoad(new IOException("Failed to load part " + key + " from " + file, ex));
+            }
+        }
+        partFiles.put(directory, new PartFiles(ownedFiles, unreadableKeys));
+        return object;
+    }
+
+    private <P extends SubSaveable & JsonLoadable> P loadPart(Partitioned<P> object, String key, String path) throws IOException {
+        P part = object.newPart(key);
+        try (JsonReader reader = new JsonReader(openReader(path))) {
+            part.loadFrom(reader);
+        }
+        return part;
+    }
+
+    private void writeJson(String path, JsonLoadable object) throws Exception {
+        writeText(path, writer -> {
+            JsonWriter jsonWriter = new JsonWriter(writer);
+            object.writeTo(jsonWriter);
+            jsonWriter.flush();
+        });
+    }
+
+    /**
+     * @param path the path of the manifest
+     * @return the directory that contains the part files
+     */
+    public static File getPartDirectory(String path) {
+        File file = new File(path).getAbsoluteFile();
+        String name = file.getName();
+        int extension = name.lastIndexOf('.');
+        if (extension > 0) {
+            name = name.substring(0, extension);
+        }
+        return new File(file.getParentFile(), name + ".parts");
+    }
+
+    static String getPartFileName(String key) {
+        try {
+            // '*' is left as is by URLEncoder, but isn't allowed in file names on every platform, and a leading '.' hides the file
+            String result = URLEncoder.encode(key, "UTF-8").replace("*", "%2A");
+            if (result.startsWith(".")) {
+                result = "%2E" + result.substring(1);
+            }
+            return result + PART_EXTENSION;
+        } catch (UnsupportedEncodingException ex) {
+            throw new InternalError(ex);
+        }
+    }
+
+    private static Set<String> listPartFiles(File directory) {
+        Set<String> result = new HashSet<>();
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.endsWith(PART_EXTENSION)) {
+                    result.add(name);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static final class PartFiles {
+        static final PartFiles EMPTY = new PartFiles(Collections.emptySet(), Collections.emptySet());
+        // the files of parts that were loaded or written, which are deleted when their part is removed
+        final Set<String> ownedFiles;
+        // the keys of parts whose file couldn't be read
+        final Set<String> unreadableKeys;
+
+        PartFiles(Set<String> ownedFiles, Set<String> unreadableKeys) {
+            this.ownedFiles = ownedFiles;
+            this.unreadableKeys = unreadableKeys;
+        }
+    }
+
+    public static <T extends Partitioned<?>> PartitionedFileAdapter<T> create(Supplier<T> constructor, Consumer<? super Exception> onError) {
+        return create(constructor, onError, onError);
+    }
+
+    public static <T extends Partitioned<?>> PartitionedFileAdapter<T> create(Supplier<T> constructor, Consumer<? super Exception> onLoad, Consumer<? super Exception> onSave) {
+        return new PartitionedFileAdapter<T>() {
+            @Override
+            protected void onErrorLoad(Exception ex) {
+                onLoad.accept(ex);
+            }
+
+            @Override
+            protected void onErrorSave(Exception ex) {
+                onSave.accept(ex);
+            }
+
+            @Override
+            protected T fallback() {
+                return constructor.get();
+            }
+        };
+    }
+
+}
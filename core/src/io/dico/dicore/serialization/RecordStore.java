@@ -0,0 +1,380 @@
+package io.dico.dicore.serialization;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Stores a record per UUID, each in its own file, such that only the records that are in use have to be in memory.
+ * Files are sharded into 256 directories by the first two characters of their UUID.
+ * <p>
+ * Records that are {@link #acquire(UUID) acquired} are pinned in memory until they are {@link #release(UUID) released}.
+ * Records that aren't pinned are kept in a cache of bounded size, from which the least recently used records are evicted.
+ * Records that are {@link #markDirty(UUID) dirty} are serialized by {@link #flush()}, and written by the {@link IOCoordinator#shared() shared I/O coordinator}.
+ * A record is only evicted when it isn't dirty and its last write has completed, so that it is never read from an outdated file.
+ * A record whose file exists but can't be read or parsed is reported, and is never written, so that the file is left for inspection.
+ * Its file is read again once the record is evicted.
+ * <p>
+ * Acquiring and loading records reads their files on the calling thread, which should be an asynchronous thread.
+ * Records should only be modified on a single thread, which should also be the thread that calls {@link #flush()}.
+ */
+public class RecordStore<T extends JsonLoadable> {
+    private final File directory;
+    private final Function<UUID, T> constructor;
+    private final Consumer<? super Exception> onError;
+    private final RecordAdapter adapter = new RecordAdapter();
+    private final LinkedHashMap<UUID, Record> records = new LinkedHashMap<>(16, 0.75f, true);
+    private final int maxCached;
+    private int pinnedCount;
+
+    /**
+     * @param directory   the directory of the files
+     * @param constructor the constructor of empty records, which are loaded from their file if it exists
+     * @param onError     the handler of errors while loading and saving records
+     * @param maxCached   the maximum amount of records that aren't pinned to keep in memory
+     */
+    public RecordStore(File directory, Function<UUID, T> constructor, Consumer<? super Exception> onError, int maxCached) {
+        if (maxCached < 0) {
+            throw new IllegalArgumentException("maxCached must not be negative");
+        }
+        this.directory = Objects.requireNonNull(directory, "directory");
+        this.constructor = Objects.requireNonNull(constructor, "constructor");
+        this.onError = Objects.requireNonNull(onError, "onError");
+        this.maxCached = maxCached;
+    }
+
+    /**
+     * @param key the key
+     * @return the file of the record of the key
+     */
+    public File getFile(UUID key) {
+        String name = key.toString();
+        return new File(new File(directory, name.substring(0, 2)), name + ".json");
+    }
+
+    /**
+     * Load the record of the key if it isn't in memory, and pin it until {@link #release(UUID)} is called as many times as this method.
+     *
+     * @param key the key
+     * @return the record
+     */
+    public T acquire(UUID key) {
+        return get(key, true);
+    }
+
+    /**
+     * Unpin the record of the key, after which it can be evicted
+     *
+     * @param key the key
+     */
+    public void release(UUID key) {
+        synchronized (records) {
+            Record record = records.get(key);
+            if (record != null && record.pins > 0) {
+                record.pins--;
+                if (record.pins == 0) {
+                    pinnedCount--;
+                    evict();
+                }
+            }
+        }
+    }
+
+    /**
+     * Load the record of the key if it isn't in memory, without pinning it
+     *
+     * @param key the key
+     * @return the record
+     */
+    public T load(UUID key) {
+        return get(key, false);
+    }
+
+    /**
+     * @param key the key
+     * @return the record of the key, or null if it isn't in memory
+     */
+    public T getIfLoaded(UUID key) {
+        synchronized (records) {
+            Record record = records.get(key);
+            return record == null ? null : record.value;
+        }
+    }
+
+    private T get(UUID key, boolean pin) {
+        synchronized (records) {
+            Record record = records.get(key);
+            if (record != null) {
+                return record.use(pin);
+            }
+        }
+
+        // read outside the lock, such that other records can be used while the file is read
+        Record loaded = read(key);
+
+        synchronized (records) {
+            Record record = records.get(key);
+            if (record == null) {
+                record = loaded;
+                records.put(key, record);
+            }
+            T result = record.use(pin);
+            evict();
+            return result;
+        }
+    }
+
+    private Record read(UUID key) {
+        File file = getFile(key);
+        byte[] data;
+        try {
+            data = adapter.loadUnsafe(file.getPath());
+        } catch (FileNotFoundException ex) {
+            return new Record(constructor.apply(key), false);
+        } catch (Exception ex) {
+            onError.accept(new IOException("Failed to read the record file " + file + ", which won't be overwritten", ex));
+            return new Record(constructor.apply(key), true);
+        }
+
+        T result = constructor.apply(key);
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8))) {
+            result.loadFrom(reader);
+        } catch (IOException | RuntimeException ex) {
+            // Gson reports some malformed documents with unchecked exceptions, such as IllegalStateException
+            onError.accept(new IOException("Failed to parse the record file " + file + ", which won't be overwritten", ex));
+            return new Record(constructor.apply(key), true);
+        }
+        return new Record(result, false);
+    }
+
+    /**
+     * Mark the record of the key as changed, such that it is written by the next {@link #flush()}
+     *
+     * @param key the key
+     * @return false if the record isn't in memory
+     */
+    public boolean markDirty(UUID key) {
+        synchronized (records) {
+            Record record = records.get(key);
+            if (record == null) {
+                return false;
+            }
+            record.dirty = true;
+            return true;
+        }
+    }
+
+    /**
+     * Serialize the dirty records on the current thread, and write them in the background.
+     * A record that fails to serialize is reported, and isn't written until it is marked dirty again.
+     *
+     * @return a future that completes when the records have been written
+     */
+    public CompletableFuture<Void> flush() {
+        List<UUID> keys = new ArrayList<>();
+        List<T> values = new ArrayList<>();
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+
+        synchronized (records) {
+            for (Map.Entry<UUID, Record> entry : records.entrySet()) {
+                Record record = entry.getValue();
+                if (!record.dirty) {
+                    continue;
+                }
+                record.dirty = false;
+                if (record.unreadable) {
+                    onError.accept(new IOException("The changes of record " + entry.getKey() + " aren't saved, because its file couldn't be read"));
+                    continue;
+                }
+
+                // prevents eviction until the payload is submitted and written
+                record.write = new CompletableFuture<>();
+                keys.add(entry.getKey());
+                values.add(record.value);
+                writes.add(record.write);
+            }
+        }
+
+        // serialized outside the lock, such that records can be acquired while the payloads are built
+        for (int i = 0; i < keys.size(); i++) {
+            UUID key = keys.get(i);
+            CompletableFuture<Void> write = writes.get(i);
+
+            byte[] payload;
+            try {
+                payload = serialize(values.get(i));
+            } catch (IOException | RuntimeException ex) {
+                onError.accept(new IOException("Failed to serialize record " + key + ", its changes aren't saved", ex));
+                write.complete(null);
+                continue;
+            }
+
+            try {
+                adapter.saveAsync(payload, getFile(key).getPath()).whenComplete((result, failure) -> {
+                    if (failure != null) {
+                        // the record must be written again before it can be evicted
+                        markDirty(key);
+                    }
+                    write.complete(null);
+                });
+            } catch (RuntimeException ex) {
+                onError.accept(ex);
+                markDirty(key);
+                write.complete(null);
+            }
+        }
+
+        synchronized (records) {
+            evict();
+        }
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[writes.size()]));
+    }
+
+    private static byte[] serialize(JsonLoadable value) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream(256);
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(result, StandardCharsets.UTF_8));
+        value.writeTo(writer);
+        writer.flush();
+        return result.toByteArray();
+    }
+
+    /**
+     * Evict the least recently used records that can be evicted, until the amount of records that aren't pinned is within bounds
+     */
+    private void evict() {
+        int excess = records.size() - pinnedCount - maxCached;
+        Iterator<Record> iterator = records.values().iterator();
+        while (excess > 0 && iterator.hasNext()) {
+            Record record = iterator.next();
+            if (record.pins == 0 && !record.dirty && (record.write == null || record.write.isDone())) {
+                iterator.remove();
+                excess--;
+            }
+        }
+    }
+
+    /**
+     * Write the dirty records and wait for all writes, after which the records are released and removed from memory
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if all writes completed, false if the timeout elapsed first
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public boolean close(long timeout, TimeUnit unit) throws InterruptedException {
+        flush();
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        synchronized (records) {
+            for (Record record : records.values()) {
+                if (record.write != null) {
+                    writes.add(record.write);
+                }
+            }
+        }
+
+        boolean result = true;
+        try {
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[writes.size()])).get(timeout, unit);
+        } catch (TimeoutException ex) {
+            result = false;
+        } catch (ExecutionException ignored) {
+            // failures are reported by the adapter
+        }
+
+        synchronized (records) {
+            records.clear();
+            pinnedCount = 0;
+        }
+        return result;
+    }
+
+    /**
+     * @return the amount of records in memory
+     */
+    public int size() {
+        synchronized (records) {
+            return records.size();
+        }
+    }
+
+    /**
+     * @return the amount of records that are pinned
+     */
+    public int getPinnedCount() {
+        synchronized (records) {
+            return pinnedCount;
+        }
+    }
+
+    private final class Record {
+        final T value;
+        // true if the file exists but couldn't be read, in which case the record is never written
+        final boolean unreadable;
+        int pins;
+        boolean dirty;
+        CompletableFuture<Void> write;
+
+        Record(T value, boolean unreadable) {
+            this.value = value;
+            this.unreadable = unreadable;
+        }
+
+        T use(boolean pin) {
+            if (pin && pins++ == 0) {
+                pinnedCount++;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Writes serialized records, and reads files into memory
+     */
+    private final class RecordAdapter extends FileAdapter<byte[]> {
+
+        @Override
+        protected void onErrorLoad(Exception ex) {
+            if (!(ex instanceof FileNotFoundException)) {
+                onError.accept(ex);
+            }
+        }
+
+        @Override
+        protected void onErrorSave(Exception ex) {
+            onError.accept(ex);
+        }
+
+        @Override
+        protected byte[] fallback() {
+            return null;
+        }
+
+        @Override
+        public void saveUnsafe(byte[] object, String path) throws Exception {
+            writeFile(path, out -> out.write(object));
+        }
+
+        @Override
+        public byte[] loadUnsafe(String path) throws Exception {
+            ByteArrayOutputStream result = new ByteArrayOutputStream(256);
+            try (InputStream in = openInput(path)) {
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    result.write(buffer, 0, read);
+                }
+            }
+            return result.toByteArray();
+        }
+    }
+
+}
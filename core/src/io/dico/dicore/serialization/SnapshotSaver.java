@@ -0,0 +1,89 @@
+package io.dico.dicore.serialization;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Serializes and writes snapshots of an object to a file on a background thread, using an {@link IOCoordinator}.
+ * <p>
+ * The snapshot passed to {@link #submit(Object)} must not be modified afterwards, typically it is a copy
+ * or an immutable view taken on the main thread. If a snapshot is submitted while another one is still waiting
+ * to be written, the older one is dropped, so that overlapping save requests result in a single write of the latest snapshot.
+ * Writes are never run concurrently for the same file.
+ */
+public final class SnapshotSaver<T> {
+    private final FileAdapter<T> adapter;
+    private final String path;
+    private final IOCoordinator coordinator;
+    private CompletableFuture<Void> lastWrite = CompletableFuture.completedFuture(null);
+
+    public SnapshotSaver(FileAdapter<T> adapter, String path) {
+        this(adapter, path, IOCoordinator.shared());
+    }
+
+    /**
+     * @param adapter     the adapter that writes the snapshots
+     * @param path        the path of the file
+     * @param coordinator the coordinator that runs the writes
+     */
+    public SnapshotSaver(FileAdapter<T> adapter, String path, IOCoordinator coordinator) {
+        this.adapter = Objects.requireNonNull(adapter, "adapter");
+        this.path = Objects.requireNonNull(path, "path");
+        this.coordinator = Objects.requireNonNull(coordinator, "coordinator");
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the statistics of the writes of the file, or null if nothing was written yet
+     */
+    public IOCoordinator.PathStats getStats() {
+        return coordinator.getStats(path);
+    }
+
+    /**
+     * Schedule the snapshot to be written
+     *
+     * @param snapshot the snapshot
+     * @return a future that completes once a snapshot at least as recent as this one has been written
+     */
+    public synchronized CompletableFuture<Void> submit(T snapshot) {
+        return lastWrite = coordinator.submit(path, adapter, snapshot);
+    }
+
+    /**
+     * @return true if a snapshot is waiting to be written or being written
+     */
+    public synchronized boolean isBusy() {
+        return !lastWrite.isDone();
+    }
+
+    /**
+     * Wait for the last submitted snapshot to be written
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if all submitted snapshots have been written, false if the timeout elapsed first
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        CompletableFuture<Void> future;
+        synchronized (this) {
+            future = lastWrite;
+        }
+        try {
+            future.get(timeout, unit);
+            return true;
+        } catch (TimeoutException ex) {
+            return false;
+        } catch (ExecutionException ex) {
+            return true;
+        }
+    }
+
+}
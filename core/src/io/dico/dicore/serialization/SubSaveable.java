@@ -1,8 +1,15 @@
 package io.dico.dicore.serialization;
 
+/**
+ * A part of a larger saveable structure. Scheduling a save of a part marks it dirty and schedules a save of the structure.
+ * <p>
+ * Parts can be nested, in which case marking a part dirty also marks its ancestors dirty.
+ * A {@link PartitionedFileAdapter} uses the dirty flags to only rewrite the parts that changed.
+ */
 public class SubSaveable implements Saveable {
 
     private final Saveable superSaveable;
+    private volatile boolean dirty;
 
     public SubSaveable(Saveable superSaveable) {
         this.superSaveable = superSaveable;
@@ -10,6 +17,7 @@ public class SubSaveable implements Saveable {
 
     @Override
     public void scheduleSave() {
+        dirty = true;
         superSaveable.scheduleSave();
     }
 
@@ -17,4 +25,29 @@ public class SubSaveable implements Saveable {
     public boolean isSaveScheduled() {
         return false;
     }
+
+    /**
+     * @return true if this part changed since it was last saved or loaded
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Mark this part dirty, without scheduling a save
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * Clear the dirty flag
+     *
+     * @return true if this part was dirty
+     */
+    public boolean clearDirty() {
+        boolean result = dirty;
+        dirty = false;
+        return result;
+    }
 }
@@ -0,0 +1,239 @@
+package io.dico.dicore.task;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * An executor that runs the tasks submitted to it one at a time, in submission order, on a shared thread pool.
+ * <p>
+ * Tasks are queued in a lock free mailbox. When a task is submitted to an idle actor, the actor schedules itself on the pool,
+ * and the pool thread that picks it up runs the queued tasks until the mailbox is empty, or until it ran {@link #BATCH_SIZE}
+ * tasks, after which the actor reschedules itself to let other actors run. An actor is never scheduled more than once
+ * at the same time, so its tasks never run concurrently and don't need to synchronize with each other,
+ * while different actors run in parallel.
+ * <p>
+ * The queue of the shared pool holds at most one entry per actor, which bounds the work of the pool by the amount of actors.
+ */
+public final class ActorExecutor implements Executor {
+    static final int BATCH_SIZE = 64;
+    private static ExecutorService sharedPool;
+    private final String name;
+    private final Executor pool;
+    private final Consumer<Throwable> errorHandler;
+    private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicLong processedCount = new AtomicLong();
+    private final AtomicLong processingTime = new AtomicLong();
+    private volatile long maxProcessingTime;
+    private volatile boolean shutdown;
+    private final CompletableFuture<Void> terminated = new CompletableFuture<>();
+
+    public ActorExecutor(String name, Consumer<Throwable> errorHandler) {
+        this(name, sharedPool(), errorHandler);
+    }
+
+    /**
+     * @param name         the name of the actor
+     * @param pool         the pool that runs the actor
+     * @param errorHandler the handler of exceptions thrown by tasks
+     */
+    public ActorExecutor(String name, Executor pool, Consumer<Throwable> errorHandler) {
+        this.name = Objects.requireNonNull(name);
+        this.pool = Objects.requireNonNull(pool);
+        this.errorHandler = Objects.requireNonNull(errorHandler);
+    }
+
+    /**
+     * @return the pool that is shared by actors by default, which has one daemon thread per available processor
+     */
+    public static synchronized ExecutorService sharedPool() {
+        if (sharedPool == null) {
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            AtomicInteger counter = new AtomicInteger();
+            sharedPool = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "dicore-actor-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return sharedPool;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Queue the task to run after all tasks submitted before it
+     *
+     * @param task the task
+     * @throws RejectedExecutionException if this actor is shut down
+     */
+    @Override
+    public void execute(Runnable task) {
+        Objects.requireNonNull(task);
+        if (shutdown) {
+            throw new RejectedExecutionException("Actor " + name + " is shut down");
+        }
+        mailbox.add(task);
+        queueDepth.incrementAndGet();
+        trySchedule();
+    }
+
+    /**
+     * @param task the task
+     * @return a future that completes with the result of the task, after it ran on this actor
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                result.complete(task.call());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Reject new tasks. Tasks that are already queued still run, after which this actor is terminated.
+     */
+    public synchronized void shutdown() {
+        if (shutdown) {
+            return;
+        }
+        shutdown = true;
+        enqueueTerminationMarker();
+    }
+
+    private void enqueueTerminationMarker() {
+        mailbox.add(() -> {
+            if (mailbox.isEmpty()) {
+                terminated.complete(null);
+            } else {
+                // a task was submitted concurrently with shutdown, and is queued behind the marker
+                enqueueTerminationMarker();
+            }
+        });
+        queueDepth.incrementAndGet();
+        try {
+            trySchedule();
+        } catch (RejectedExecutionException ex) {
+            // the pool is shut down, so the queued tasks never run
+            terminated.complete(null);
+        }
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * @return true if this actor is shut down and its queued tasks have run
+     */
+    public boolean isTerminated() {
+        return terminated.isDone();
+    }
+
+    /**
+     * Wait for the tasks that were queued before {@link #shutdown()} to run
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if this actor terminated, false if the timeout elapsed first or it isn't shut down
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!shutdown) {
+            return false;
+        }
+        try {
+            terminated.get(timeout, unit);
+            return true;
+        } catch (TimeoutException ex) {
+            return false;
+        } catch (ExecutionException ex) {
+            return true;
+        }
+    }
+
+    /**
+     * @return the amount of tasks that are queued and haven't started yet
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public long getProcessedCount() {
+        return processedCount.get();
+    }
+
+    /**
+     * @return the time in nanoseconds spent running tasks in total
+     */
+    public long getProcessingTime() {
+        return processingTime.get();
+    }
+
+    /**
+     * @return the longest time in nanoseconds that a single task ran
+     */
+    public long getMaxProcessingTime() {
+        return maxProcessingTime;
+    }
+
+    private void trySchedule() {
+        if (!mailbox.isEmpty() && scheduled.compareAndSet(false, true)) {
+            try {
+                pool.execute(this::drain);
+            } catch (RejectedExecutionException ex) {
+                scheduled.set(false);
+                throw ex;
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            Runnable task;
+            for (int i = 0; i < BATCH_SIZE && (task = mailbox.poll()) != null; i++) {
+                queueDepth.decrementAndGet();
+                runTask(task);
+            }
+        } finally {
+            scheduled.set(false);
+            // a task might have been added after the mailbox was last polled, but before the flag was cleared
+            trySchedule();
+        }
+    }
+
+    private void runTask(Runnable task) {
+        long start = System.nanoTime();
+        try {
+            task.run();
+        } catch (Throwable t) {
+            errorHandler.accept(t);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            processedCount.incrementAndGet();
+            processingTime.addAndGet(elapsed);
+            if (elapsed > maxProcessingTime) {
+                // only the thread that currently runs this actor writes this field
+                maxProcessingTime = elapsed;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ActorExecutor{name=" + name + ", queueDepth=" + getQueueDepth() + ", processed=" + getProcessedCount() + "}";
+    }
+
+}
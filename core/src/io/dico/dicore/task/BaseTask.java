@@ -1,17 +1,22 @@
 package io.dico.dicore.task;
 
-import org.bukkit.Bukkit;
+import io.dico.dicore.task.scheduler.ScheduledTask;
+import io.dico.dicore.task.scheduler.TaskScheduler;
 import org.bukkit.plugin.Plugin;
 
 import java.util.NoSuchElementException;
 
 public abstract class BaseTask<T> {
     private boolean running = false;
-    private Integer taskId = null;
+    private ScheduledTask task = null;
     private long workTime = 5L;
     private int workCount;
 
     public void start(Plugin plugin, int delay, int period, long workTime) {
+        start(TaskScheduler.of(plugin), delay, period, workTime);
+    }
+    
+    public void start(TaskScheduler scheduler, int delay, int period, long workTime) {
         doStartChecks();
         this.workTime = workTime;
         workCount = 0;
@@ -25,13 +30,17 @@ public abstract class BaseTask<T> {
             delay = period;
         }
         
-        taskId = plugin.getServer().getScheduler().scheduleSyncRepeatingTask(plugin, this::run, delay, period);
+        task = scheduler.runTaskTimer(this::run, delay, period);
     }
     
     public void startImmediately(Plugin plugin, int period, long workTime) {
         start(plugin, -1, period, workTime);
     }
     
+    public void startImmediately(TaskScheduler scheduler, int period, long workTime) {
+        start(scheduler, -1, period, workTime);
+    }
+    
     protected void doStartChecks() {
         if (isRunning()) {
             throw new IllegalStateException("Can't start when already running");
@@ -59,10 +68,22 @@ public abstract class BaseTask<T> {
                 return;
             }
         } while (System.currentTimeMillis() < stop);
+        workCycleEnded();
+    }
+    
+    void workCycleEnded() {
+    }
+    
+    /**
+     * @param early  true if the source wasn't exhausted
+     * @param failed true if {@link #process(Object)} threw an exception
+     */
+    void finished(boolean early, boolean failed) {
+        onFinish(early);
     }
 
     public int getTaskId() {
-        return running ? taskId : -1;
+        return running && task != null ? task.getTaskId() : -1;
     }
     
     public int getWorkCount() {
@@ -75,13 +96,13 @@ public abstract class BaseTask<T> {
 
     protected abstract T supply() throws NoSuchElementException;
 
-    private void cancelTask(boolean early) {
-        if (taskId != null) {
-            Bukkit.getScheduler().cancelTask(taskId);
+    private void cancelTask(boolean early, boolean failed) {
+        if (task != null) {
+            task.cancel();
         }
         running = false;
-        taskId = null;
-        onFinish(early);
+        task = null;
+        finished(early, failed);
     }
 
     private boolean processNext() {
@@ -89,7 +110,7 @@ public abstract class BaseTask<T> {
         try {
             object = supply();
         } catch (NoSuchElementException e) {
-            cancelTask(false);
+            cancelTask(false, false);
             return false;
         }
 
@@ -99,9 +120,11 @@ public abstract class BaseTask<T> {
             }
         } catch (RuntimeException e) {
             e.printStackTrace();
+            cancelTask(true, true);
+            return false;
         }
 
-        cancelTask(true);
+        cancelTask(true, false);
         return false;
     }
 
@@ -0,0 +1,304 @@
+package io.dico.dicore.task;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import io.dico.dicore.serialization.FileAdapter;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * An {@link IteratorTask} that periodically persists its cursor, so that it can resume where it left off after a restart.
+ * <p>
+ * A checkpoint consists of the {@link #getCheckpointKey(Object) key} of the last processed element, and any state written by {@link #writeState(JsonWriter)}.
+ * The source must supply its elements in ascending order of their keys. When the task is started and a checkpoint exists,
+ * the state is restored by {@link #readState(JsonReader)} and the elements with keys up to the checkpointed key are skipped.
+ * Because the cursor is a key rather than a count, elements that are removed from the source, for instance by {@link #process(Object)},
+ * don't cause unprocessed elements to be skipped.
+ * <p>
+ * Checkpoints are written every {@link #getCheckpointInterval()} work cycles, and can be forced using {@link #saveCheckpoint()},
+ * for instance when the plugin is disabled. They are serialized on the calling thread and written by the
+ * {@link io.dico.dicore.serialization.IOCoordinator#shared() shared I/O coordinator}.
+ * The checkpoint is deleted when the source is exhausted, or when {@link #process(Object)} returns false.
+ * When {@link #process(Object)} throws an exception, the checkpoint is saved instead, such that the task resumes at the element that failed.
+ */
+public abstract class CheckpointedIteratorTask<T> extends IteratorTask<T> {
+    private final String checkpointPath;
+    private final Consumer<? super Exception> onError;
+    private final CheckpointAdapter adapter;
+    private int checkpointInterval = 20;
+    private boolean restored;
+    private String resumeAfter;
+    private String lastKey;
+    // the key of the element supplied before the last one, which was processed once the last one is supplied
+    private String previousKey;
+
+    public CheckpointedIteratorTask(String checkpointPath, Consumer<? super Exception> onError) {
+        this.checkpointPath = Objects.requireNonNull(checkpointPath, "checkpointPath");
+        this.onError = Objects.requireNonNull(onError, "onError");
+        this.adapter = new CheckpointAdapter(onError);
+    }
+
+    public CheckpointedIteratorTask(String checkpointPath, Consumer<? super Exception> onError, Iterable<? extends T> iterable, boolean clone) {
+        this(checkpointPath, onError);
+        refresh(iterable, clone);
+    }
+
+    public CheckpointedIteratorTask(String checkpointPath, Consumer<? super Exception> onError, Iterator<? extends T> iterator) {
+        this(checkpointPath, onError);
+        refresh(iterator);
+    }
+
+    /**
+     * Get the key of an element, which identifies its position in the source.
+     * The source must supply its elements in ascending order of their keys, as compared by {@link #compareCheckpointKeys(String, String)}.
+     *
+     * @param element the element
+     * @return the key
+     */
+    protected abstract String getCheckpointKey(T element);
+
+    /**
+     * Compare two keys returned by {@link #getCheckpointKey(Object)}.
+     * The default implementation compares them lexicographically.
+     *
+     * @param a the first key
+     * @param b the second key
+     * @return a negative number, zero or a positive number if a is less than, equal to or greater than b
+     */
+    protected int compareCheckpointKeys(String a, String b) {
+        return a.compareTo(b);
+    }
+
+    /**
+     * Write the state of the task that should be restored when resuming.
+     * The default implementation writes null.
+     *
+     * @param writer the writer, which expects exactly one value
+     * @throws IOException if an error occurs
+     */
+    protected void writeState(JsonWriter writer) throws IOException {
+        writer.nullValue();
+    }
+
+    /**
+     * Read the state written by {@link #writeState(JsonWriter)}
+     *
+     * @param reader the reader, which is positioned at the value written by {@link #writeState(JsonWriter)}
+     * @throws IOException if an error occurs
+     */
+    protected void readState(JsonReader reader) throws IOException {
+        reader.skipValue();
+    }
+
+    public String getCheckpointPath() {
+        return checkpointPath;
+    }
+
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * @param checkpointInterval the amount of work cycles between checkpoints
+     */
+    public void setCheckpointInterval(int checkpointInterval) {
+        if (checkpointInterval < 1) {
+            throw new IllegalArgumentException("checkpointInterval must be positive");
+        }
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public boolean hasCheckpoint() {
+        return new File(checkpointPath).isFile();
+    }
+
+    /**
+     * Persist the key of the last processed element and the state.
+     * Nothing is written if no element was processed since the task was started.
+     *
+     * @return a future that completes when the checkpoint has been written
+     */
+    public CompletableFuture<Void> saveCheckpoint() {
+        if (lastKey == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        StringWriter text = new StringWriter();
+        try {
+            JsonWriter writer = new JsonWriter(text);
+            writer.beginObject();
+            writer.name("key").value(lastKey);
+            writer.name("state");
+            writeState(writer);
+            writer.endObject();
+            writer.flush();
+        } catch (IOException | RuntimeException ex) {
+            onError.accept(ex);
+            return CompletableFuture.completedFuture(null);
+        }
+        return write(text.toString());
+    }
+
+    /**
+     * Delete the checkpoint, such that the task starts from the beginning next time.
+     * The deletion is ordered after checkpoints that are still being written.
+     *
+     * @return a future that completes when the checkpoint has been deleted
+     */
+    public CompletableFuture<Void> clearCheckpoint() {
+        return write("");
+    }
+
+    private CompletableFuture<Void> write(String text) {
+        try {
+            return adapter.saveAsync(text, checkpointPath);
+        } catch (RejectedExecutionException ex) {
+            // the coordinator is shut down when the server stops
+            adapter.save(text, checkpointPath);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private void restore() {
+        String text = adapter.load(checkpointPath);
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+
+        String key = null;
+        try (JsonReader reader = new JsonReader(new StringReader(text))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "key":
+                        key = reader.nextString();
+                        break;
+                    case "state":
+                        readState(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        } catch (IOException | RuntimeException ex) {
+            onError.accept(ex);
+            return;
+        }
+        resumeAfter = key;
+        lastKey = key;
+        previousKey = key;
+    }
+
+    @Override
+    protected void doStartChecks() {
+        super.doStartChecks();
+        if (!restored) {
+            restored = true;
+            if (hasCheckpoint()) {
+                restore();
+            }
+        }
+    }
+
+    @Override
+    protected T supply() throws NoSuchElementException {
+        T result = super.supply();
+        String key = getCheckpointKey(result);
+        if (resumeAfter != null) {
+            // elements up to the checkpointed key were processed before the restart
+            while (compareCheckpointKeys(key, resumeAfter) <= 0) {
+                result = super.supply();
+                key = getCheckpointKey(result);
+            }
+            resumeAfter = null;
+        }
+        previousKey = lastKey;
+        lastKey = key;
+        return result;
+    }
+
+    @Override
+    void workCycleEnded() {
+        super.workCycleEnded();
+        if (getWorkCount() % checkpointInterval == 0) {
+            saveCheckpoint();
+        }
+    }
+
+    @Override
+    void finished(boolean early, boolean failed) {
+        if (failed) {
+            // the last supplied element wasn't processed, and is processed again when the task resumes
+            lastKey = previousKey;
+            resumeAfter = previousKey;
+            saveCheckpoint();
+        } else {
+            resumeAfter = null;
+            lastKey = null;
+            clearCheckpoint();
+        }
+        previousKey = lastKey;
+        super.finished(early, failed);
+    }
+
+    /**
+     * Writes serialized checkpoints, and deletes the file for an empty checkpoint
+     */
+    private static final class CheckpointAdapter extends FileAdapter<String> {
+        private final Consumer<? super Exception> onError;
+
+        CheckpointAdapter(Consumer<? super Exception> onError) {
+            this.onError = onError;
+        }
+
+        @Override
+        protected void onErrorLoad(Exception ex) {
+            if (!(ex instanceof FileNotFoundException)) {
+                onError.accept(ex);
+            }
+        }
+
+        @Override
+        protected void onErrorSave(Exception ex) {
+            onError.accept(ex);
+        }
+
+        @Override
+        protected String fallback() {
+            return null;
+        }
+
+        @Override
+        public void saveUnsafe(String text, String path) throws Exception {
+            if (text.isEmpty()) {
+                Files.deleteIfExists(Paths.get(path));
+            } else {
+                writeText(path, writer -> writer.write(text));
+            }
+        }
+
+        @Override
+        public String loadUnsafe(String path) throws Exception {
+            StringBuilder result = new StringBuilder();
+            try (Reader reader = openReader(path)) {
+                char[] buffer = new char[4096];
+                int read;
+                while ((read = reader.read(buffer)) != -1) {
+                    result.append(buffer, 0, read);
+                }
+            }
+            return result.toString();
+        }
+    }
+
+}
@@ -1,6 +1,7 @@
 package io.dico.dicore.task;
 
-import java.util.*;
+import java.util.Iterator;
+import java.util.Objects;
 import java.util.function.BiConsumer;
 import java.util.function.BiPredicate;
 import java.util.function.Consumer;
@@ -13,7 +14,6 @@ public abstract class IteratorTask<T> extends BaseTask<T> {
     public IteratorTask() {
     }
 
-    @SuppressWarnings("unchecked")
     public IteratorTask(Iterable<? extends T> iterable, boolean clone) {
         refresh(iterable, clone);
     }
@@ -36,16 +36,7 @@ public abstract class IteratorTask<T> extends BaseTask<T> {
     
     protected final void refresh(Iterable<? extends T> iterable, boolean clone) {
         if (clone) {
-            Collection<T> collection;
-            if (!(iterable instanceof Collection)) {
-                collection = new LinkedList<>();
-                for (T next : iterable) {
-                    collection.add(next);
-                }
-            } else {
-                collection = new ArrayList((Collection) iterable);
-            }
-            iterator = collection.iterator();
+            iterator = SnapshotSource.copyOf(iterable);
         } else {
             iterator = iterable.iterator();
         }
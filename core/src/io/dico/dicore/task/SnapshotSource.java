@@ -0,0 +1,274 @@
+package io.dico.dicore.task;
+
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+/**
+ * Iterators over large or changing data sets, intended as the source of an {@link IteratorTask}.
+ * <p>
+ * Sources made by {@link #copyOf(Iterable)} take one contiguous array copy of the elements.
+ * All other sources don't copy at all: {@link #ofArray(Object[])}, {@link #ofList(List)} and {@link #ofRange(int, int, IntFunction)}
+ * walk an index range, {@link #ofSpliterator(Spliterator)} defers to a (possibly weakly consistent) spliterator,
+ * and {@link #generate(long, LongFunction)} and {@link #generate(Supplier)} compute elements lazily.
+ */
+public abstract class SnapshotSource<T> implements Iterator<T> {
+
+    public static <T> SnapshotSource<T> ofArray(T[] array) {
+        return new ArraySource<>(array, 0, array.length, false);
+    }
+
+    public static <T> SnapshotSource<T> ofArray(T[] array, int from, int to) {
+        if (from < 0 || to > array.length || from > to) {
+            throw new IndexOutOfBoundsException("from: " + from + ", to: " + to + ", length: " + array.length);
+        }
+        return new ArraySource<>(array, from, to, false);
+    }
+
+    /**
+     * Take a snapshot of the elements in a single contiguous array.
+     *
+     * @param iterable the elements
+     * @return the source
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> SnapshotSource<T> copyOf(Iterable<? extends T> iterable) {
+        if (iterable instanceof Collection) {
+            Object[] array = ((Collection<? extends T>) iterable).toArray();
+            return new ArraySource<>((T[]) array, 0, array.length, true);
+        }
+        return copyOf(iterable.iterator());
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> SnapshotSource<T> copyOf(Iterator<? extends T> iterator) {
+        Object[] array = new Object[16];
+        int size = 0;
+        while (iterator.hasNext()) {
+            if (size == array.length) {
+                array = Arrays.copyOf(array, size + (size >> 1));
+            }
+            array[size++] = iterator.next();
+        }
+        return new ArraySource<>((T[]) array, 0, size, true);
+    }
+
+    /**
+     * Walk the list by index without copying it.
+     * Changes to the list are visible to the source. If the list shrinks below the current index, the source ends.
+     * This should only be used with {@link RandomAccess} lists.
+     *
+     * @param list the list
+     * @return the source
+     */
+    public static <T> SnapshotSource<T> ofList(List<? extends T> list) {
+        return new RangeSource<T>(0, Integer.MAX_VALUE, list::get) {
+            @Override
+            int end() {
+                return Math.min(super.end(), list.size());
+            }
+        };
+    }
+
+    /**
+     * @param from   the first index, inclusive
+     * @param to     the last index, exclusive
+     * @param getter the function that supplies the element at an index
+     * @return a source of the elements at the indices in the range
+     */
+    public static <T> SnapshotSource<T> ofRange(int from, int to, IntFunction<? extends T> getter) {
+        if (from < 0 || from > to) {
+            throw new IllegalArgumentException("from: " + from + ", to: " + to);
+        }
+        return new RangeSource<>(from, to, getter);
+    }
+
+    /**
+     * Spliterators of concurrent collections are weakly consistent, and never throw a {@link ConcurrentModificationException}.
+     *
+     * @param spliterator the spliterator
+     * @return a source that advances the spliterator lazily
+     */
+    public static <T> SnapshotSource<T> ofSpliterator(Spliterator<? extends T> spliterator) {
+        return new SpliteratorSource<>(spliterator);
+    }
+
+    /**
+     * @param count     the amount of elements
+     * @param generator the function that computes the element at an index
+     * @return a source of the generated elements
+     */
+    public static <T> SnapshotSource<T> generate(long count, LongFunction<? extends T> generator) {
+        return new GeneratorSource<>(count, generator);
+    }
+
+    /**
+     * @param generator the supplier of the elements, which returns null when there are no more elements
+     * @return a source of the generated elements
+     */
+    public static <T> SnapshotSource<T> generate(Supplier<? extends T> generator) {
+        return new SupplierSource<>(generator);
+    }
+
+    private static final class ArraySource<T> extends SnapshotSource<T> {
+        private final T[] array;
+        // true if the array is a copy made by copyOf, in which case elements can be removed
+        private final boolean owned;
+        private final int to;
+        private int index;
+        // the index of the element returned by next, or -1 if it can't be removed
+        private int last = -1;
+
+        ArraySource(T[] array, int from, int to, boolean owned) {
+            this.array = array;
+            this.owned = owned;
+            this.index = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < to;
+        }
+
+        @Override
+        public T next() {
+            if (index >= to) {
+                throw new NoSuchElementException();
+            }
+            last = index;
+            return array[index++];
+        }
+
+        /**
+         * Removes the element from the snapshot, not from the data it was taken from.
+         * Only sources made by {@link #copyOf(Iterable)} own their array, and support this operation.
+         */
+        @Override
+        public void remove() {
+            if (!owned) {
+                throw new UnsupportedOperationException("remove");
+            }
+            if (last == -1) {
+                throw new IllegalStateException();
+            }
+            array[last] = null;
+            last = -1;
+        }
+    }
+
+    private static class RangeSource<T> extends SnapshotSource<T> {
+        private final int to;
+        private final IntFunction<? extends T> getter;
+        private int index;
+
+        RangeSource(int from, int to, IntFunction<? extends T> getter) {
+            this.index = from;
+            this.to = to;
+            this.getter = getter;
+        }
+
+        int end() {
+            return to;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < end();
+        }
+
+        @Override
+        public T next() {
+            if (index >= end()) {
+                throw new NoSuchElementException();
+            }
+            return getter.apply(index++);
+        }
+    }
+
+    private static final class SpliteratorSource<T> extends SnapshotSource<T> {
+        private final Spliterator<? extends T> spliterator;
+        private boolean hasNext;
+        private T next;
+
+        SpliteratorSource(Spliterator<? extends T> spliterator) {
+            this.spliterator = spliterator;
+        }
+
+        private void accept(T next) {
+            this.next = next;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!hasNext) {
+                hasNext = spliterator.tryAdvance(this::accept);
+            }
+            return hasNext;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T result = next;
+            next = null;
+            hasNext = false;
+            return result;
+        }
+    }
+
+    private static final class GeneratorSource<T> extends SnapshotSource<T> {
+        private final long count;
+        private final LongFunction<? extends T> generator;
+        private long index;
+
+        GeneratorSource(long count, LongFunction<? extends T> generator) {
+            this.count = count;
+            this.generator = generator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < count;
+        }
+
+        @Override
+        public T next() {
+            if (index >= count) {
+                throw new NoSuchElementException();
+            }
+            return generator.apply(index++);
+        }
+    }
+
+    private static final class SupplierSource<T> extends SnapshotSource<T> {
+        private final Supplier<? extends T> generator;
+        private T next;
+
+        SupplierSource(Supplier<? extends T> generator) {
+            this.generator = generator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = generator.get();
+            }
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T result = next;
+            next = null;
+            return result;
+        }
+    }
+
+}
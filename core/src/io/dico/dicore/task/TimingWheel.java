@@ -0,0 +1,283 @@
+package io.dico.dicore.task;
+
+import io.dico.dicore.TickTask;
+import io.dico.dicore.task.scheduler.TaskScheduler;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * A hierarchical hashed timing wheel for large amounts of delayed callbacks, with a resolution of one tick.
+ * <p>
+ * The wheel is driven by a single repeating task ({@link #start()}), or manually using {@link #advance()}.
+ * Scheduling and cancelling a callback are both O(1) operations.
+ * Callbacks with a delay that doesn't fit in the root wheel are kept in coarser wheels and cascaded
+ * into finer ones as their deadline approaches, the same way the classic kernel timer wheels do.
+ * <p>
+ * This class is not thread safe. It should only be accessed from the thread that drives it.
+ */
+public class TimingWheel extends TickTask {
+    private static final int ROOT_BITS = 8;
+    private static final int ROOT_SIZE = 1 << ROOT_BITS;
+    private static final int ROOT_MASK = ROOT_SIZE - 1;
+    private static final int LEVEL_BITS = 6;
+    private static final int LEVEL_SIZE = 1 << LEVEL_BITS;
+    private static final int LEVEL_MASK = LEVEL_SIZE - 1;
+    private static final int LEVELS = 4;
+
+    /**
+     * The largest delay that can be placed without re-cascading from the outermost wheel (about 6.8 years of ticks).
+     * Longer delays are supported, their timers are simply cascaded again until they fit.
+     */
+    public static final long MAX_DIRECT_DELAY = (1L << (ROOT_BITS + LEVELS * LEVEL_BITS)) - 1;
+
+    private final Timer[] root = new Timer[ROOT_SIZE];
+    private final Timer[][] levels = new Timer[LEVELS][LEVEL_SIZE];
+    private long currentTick;
+    private int size;
+
+    /**
+     * Creates a wheel that is not bound to a plugin, and must be driven manually using {@link #advance()}
+     */
+    public TimingWheel() {
+        this((Plugin) null);
+    }
+
+    public TimingWheel(Plugin plugin) {
+        super(plugin);
+        initBuckets();
+    }
+
+    public TimingWheel(TaskScheduler scheduler) {
+        super(scheduler);
+        initBuckets();
+    }
+
+    private void initBuckets() {
+        for (int i = 0; i < ROOT_SIZE; i++) {
+            root[i] = Timer.newSentinel();
+        }
+        for (Timer[] level : levels) {
+            for (int i = 0; i < LEVEL_SIZE; i++) {
+                level[i] = Timer.newSentinel();
+            }
+        }
+    }
+
+    /**
+     * Starts driving this wheel with a repeating task that advances it once every tick
+     */
+    public void start() {
+        start(1, 1);
+    }
+
+    @Override
+    protected void tick() {
+        advance();
+    }
+
+    /**
+     * @return the last tick that was processed by this wheel
+     */
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * @return the number of pending timers
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Schedules the action to run after the given amount of ticks.
+     * Like with the bukkit scheduler, a delay less than 1 is treated as 1.
+     *
+     * @param delay  the delay in ticks
+     * @param action the action to run
+     * @return the handle that can be used to cancel the timer
+     * @throws NullPointerException if action is null
+     */
+    public Timer schedule(long delay, Runnable action) {
+        if (action == null) {
+            throw new NullPointerException("action");
+        }
+
+        Timer timer = new Timer(this, currentTick + Math.max(1L, delay), action);
+        place(timer);
+        size++;
+        return timer;
+    }
+
+    /**
+     * Processes the next tick: cascades timers from coarser wheels if necessary and runs all timers that are due.
+     */
+    public void advance() {
+        long tick = ++currentTick;
+        int index = (int) (tick & ROOT_MASK);
+
+        if (index == 0) {
+            for (int level = 0; level < LEVELS; level++) {
+                int levelIndex = (int) ((tick >>> (ROOT_BITS + level * LEVEL_BITS)) & LEVEL_MASK);
+                cascade(levels[level][levelIndex]);
+                if (levelIndex != 0) {
+                    break;
+                }
+            }
+        }
+
+        Timer head = root[index];
+        Timer timer;
+        while ((timer = head.next) != head) {
+            timer.unlink();
+            size--;
+            Runnable action = timer.expire();
+            try {
+                action.run();
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Cancels all pending timers
+     */
+    public void clear() {
+        clearBuckets(root);
+        for (Timer[] level : levels) {
+            clearBuckets(level);
+        }
+        size = 0;
+    }
+
+    private void clearBuckets(Timer[] buckets) {
+        for (Timer head : buckets) {
+            Timer timer;
+            while ((timer = head.next) != head) {
+                timer.unlink();
+                timer.release(Timer.CANCELLED);
+            }
+        }
+    }
+
+    private void cascade(Timer head) {
+        Timer timer;
+        while ((timer = head.next) != head) {
+            timer.unlink();
+            place(timer);
+        }
+    }
+
+    private void place(Timer timer) {
+        long deadline = timer.deadline;
+        long delta = deadline - currentTick;
+
+        if (delta < ROOT_SIZE) {
+            timer.linkBefore(root[(int) (deadline & ROOT_MASK)]);
+            return;
+        }
+
+        if (delta > MAX_DIRECT_DELAY) {
+            // park the timer in the outermost wheel, it is placed again when that slot is cascaded
+            deadline = currentTick + MAX_DIRECT_DELAY;
+            delta = MAX_DIRECT_DELAY;
+        }
+
+        int level = 0;
+        while (delta >= 1L << (ROOT_BITS + (level + 1) * LEVEL_BITS)) {
+            level++;
+        }
+        int index = (int) ((deadline >>> (ROOT_BITS + level * LEVEL_BITS)) & LEVEL_MASK);
+        timer.linkBefore(levels[level][index]);
+    }
+
+    /**
+     * A timer scheduled on a {@link TimingWheel}.
+     * Once a timer expires or is cancelled, it no longer references its action or the wheel.
+     */
+    public static final class Timer {
+        static final int PENDING = 0;
+        static final int EXPIRED = 1;
+        static final int CANCELLED = 2;
+
+        private TimingWheel wheel;
+        private Runnable action;
+        private final long deadline;
+        private Timer prev, next;
+        private int state;
+
+        Timer(TimingWheel wheel, long deadline, Runnable action) {
+            this.wheel = wheel;
+            this.deadline = deadline;
+            this.action = action;
+        }
+
+        static Timer newSentinel() {
+            Timer result = new Timer(null, -1, null);
+            result.prev = result.next = result;
+            return result;
+        }
+
+        /**
+         * @return the tick at which this timer is due, as per {@link TimingWheel#getCurrentTick()}
+         */
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public boolean isPending() {
+            return state == PENDING;
+        }
+
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        /**
+         * Cancels this timer if it is still pending
+         *
+         * @return true if the timer was pending
+         */
+        public boolean cancel() {
+            if (state != PENDING) {
+                return false;
+            }
+            wheel.size--;
+            unlink();
+            release(CANCELLED);
+            return true;
+        }
+
+        void linkBefore(Timer head) {
+            Timer tail = head.prev;
+            prev = tail;
+            next = head;
+            tail.next = this;
+            head.prev = this;
+        }
+
+        void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = next = null;
+        }
+
+        Runnable expire() {
+            Runnable result = action;
+            release(EXPIRED);
+            return result;
+        }
+
+        void release(int state) {
+            this.state = state;
+            action = null;
+            wheel = null;
+        }
+
+    }
+
+}
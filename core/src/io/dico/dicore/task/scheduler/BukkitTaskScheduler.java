@@ -0,0 +1,147 @@
+package io.dico.dicore.task.scheduler;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * The classic backend of {@link TaskScheduler}, which runs all synchronous tasks on the main thread.
+ */
+public class BukkitTaskScheduler implements TaskScheduler {
+    private final Plugin plugin;
+    
+    public BukkitTaskScheduler(Plugin plugin) {
+        this.plugin = Objects.requireNonNull(plugin);
+    }
+    
+    @Override
+    public Plugin getPlugin() {
+        return plugin;
+    }
+    
+    private BukkitScheduler scheduler() {
+        return plugin.getServer().getScheduler();
+    }
+    
+    @Override
+    public ScheduledTask runTask(Runnable task) {
+        return new Task(task, false).schedule(action -> scheduler().runTask(plugin, action));
+    }
+    
+    @Override
+    public ScheduledTask runTaskLater(Runnable task, long delay) {
+        return new Task(task, false).schedule(action -> scheduler().runTaskLater(plugin, action, delay));
+    }
+    
+    @Override
+    public ScheduledTask runTaskTimer(Runnable task, long delay, long period) {
+        return new Task(task, true).schedule(action -> scheduler().runTaskTimer(plugin, action, delay, period));
+    }
+    
+    @Override
+    public ScheduledTask runTask(Location location, Runnable task) {
+        return runTask(task);
+    }
+    
+    @Override
+    public ScheduledTask runTaskLater(Location location, Runnable task, long delay) {
+        return runTaskLater(task, delay);
+    }
+    
+    @Override
+    public ScheduledTask runTaskTimer(Location location, Runnable task, long delay, long period) {
+        return runTaskTimer(task, delay, period);
+    }
+    
+    @Override
+    public ScheduledTask runTask(Entity entity, Runnable task) {
+        return runTask(task);
+    }
+    
+    @Override
+    public ScheduledTask runTaskLater(Entity entity, Runnable task, long delay) {
+        return runTaskLater(task, delay);
+    }
+    
+    @Override
+    public ScheduledTask runTaskTimer(Entity entity, Runnable task, long delay, long period) {
+        return runTaskTimer(task, delay, period);
+    }
+    
+    @Override
+    public ScheduledTask runTaskAsynchronously(Runnable task) {
+        return new Task(task, false).schedule(action -> scheduler().runTaskAsynchronously(plugin, action));
+    }
+    
+    @Override
+    public boolean isGlobalThread() {
+        return Bukkit.isPrimaryThread();
+    }
+    
+    @Override
+    public boolean isOwnedByCurrentThread(Location location) {
+        return Bukkit.isPrimaryThread();
+    }
+    
+    @Override
+    public boolean isOwnedByCurrentThread(Entity entity) {
+        return Bukkit.isPrimaryThread();
+    }
+    
+    private static final class Task implements ScheduledTask, Runnable {
+        private final Runnable action;
+        private final boolean repeating;
+        private volatile BukkitTask task;
+        private volatile boolean cancelled;
+        private volatile boolean ran;
+        
+        Task(Runnable action, boolean repeating) {
+            this.action = Objects.requireNonNull(action);
+            this.repeating = repeating;
+        }
+        
+        Task schedule(Function<Runnable, BukkitTask> scheduler) {
+            task = scheduler.apply(this);
+            return this;
+        }
+        
+        @Override
+        public void run() {
+            try {
+                action.run();
+            } finally {
+                if (!repeating) {
+                    ran = true;
+                }
+            }
+        }
+        
+        @Override
+        public void cancel() {
+            cancelled = true;
+            task.cancel();
+        }
+        
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+        
+        @Override
+        public boolean isDone() {
+            return cancelled || ran;
+        }
+        
+        @Override
+        public int getTaskId() {
+            return task.getTaskId();
+        }
+    }
+    
+}
@@ -0,0 +1,170 @@
+package io.dico.dicore.task.scheduler;
+
+import io.dico.dicore.task.TimingWheel;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * A stand-in {@link TaskScheduler} that is driven manually, for tests and tools that run without a server.
+ * <p>
+ * All tasks, including asynchronous ones, run on the thread that calls {@link #tick()}.
+ * The thread that created the scheduler is considered the owner of every location and entity.
+ */
+public class LocalTaskScheduler implements TaskScheduler {
+    private final TimingWheel wheel = new TimingWheel();
+    private final Plugin plugin;
+    private final Thread owner;
+    
+    public LocalTaskScheduler() {
+        this(null);
+    }
+    
+    public LocalTaskScheduler(Plugin plugin) {
+        this.plugin = plugin;
+        this.owner = Thread.currentThread();
+    }
+    
+    /**
+     * Run all tasks that are due in the next tick
+     */
+    public void tick() {
+        wheel.advance();
+    }
+    
+    /**
+     * Run the given amount of ticks
+     *
+     * @param ticks the amount of ticks
+     */
+    public void tick(int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            wheel.advance();
+        }
+    }
+    
+    /**
+     * @return the amount of ticks that were run
+     */
+    public long getCurrentTick() {
+        return wheel.getCurrentTick();
+    }
+    
+    /**
+     * @return the amount of pending task executions
+     */
+    public int getPendingCount() {
+        return wheel.size();
+    }
+    
+    @Override
+    public Plugin getPlugin() {
+        return plugin;
+    }
+    
+    @Override
+    public ScheduledTask runTask(Runnable task) {
+        return runTaskLater(task, 0);
+    }
+    
+    @Override
+    public ScheduledTask runTaskLater(Runnable task, long delay) {
+        return new Task(task, delay, -1);
+    }
+    
+    @Override
+    public ScheduledTask runTaskTimer(Runnable task, long delay, long period) {
+        return new Task(task, delay, Math.max(1L, period));
+    }
+    
+    @Override
+    public ScheduledTask runTask(Location location, Runnable task) {
+        return runTask(task);
+    }
+    
+    @Override
+    public ScheduledTask runTaskLater(Location location, Runnable task, long delay) {
+        return runTaskLater(task, delay);
+    }
+    
+    @Override
+    public ScheduledTask runTaskTimer(Location location, Runnable task, long delay, long period) {
+        return runTaskTimer(task, delay, period);
+    }
+    
+    @Override
+    public ScheduledTask runTask(Entity entity, Runnable task) {
+        return runTask(task);
+    }
+    
+    @Override
+    public ScheduledTask runTaskLater(Entity entity, Runnable task, long delay) {
+        return runTaskLater(task, delay);
+    }
+    
+    @Override
+    public ScheduledTask runTaskTimer(Entity entity, Runnable task, long delay, long period) {
+        return runTaskTimer(task, delay, period);
+    }
+    
+    @Override
+    public ScheduledTask runTaskAsynchronously(Runnable task) {
+        return runTask(task);
+    }
+    
+    @Override
+    public boolean isGlobalThread() {
+        return Thread.currentThread() == owner;
+    }
+    
+    @Override
+    public boolean isOwnedByCurrentThread(Location location) {
+        return Thread.currentThread() == owner;
+    }
+    
+    @Override
+    public boolean isOwnedByCurrentThread(Entity entity) {
+        return Thread.currentThread() == owner;
+    }
+    
+    private final class Task implements ScheduledTask, Runnable {
+        private final Runnable action;
+        private final long period;
+        private TimingWheel.Timer timer;
+        private boolean cancelled;
+        private boolean ran;
+        
+        Task(Runnable action, long delay, long period) {
+            this.action = action;
+            this.period = period;
+            this.timer = wheel.schedule(delay, this);
+        }
+        
+        @Override
+        public void run() {
+            if (period > 0) {
+                timer = wheel.schedule(period, this);
+            } else {
+                ran = true;
+            }
+            action.run();
+        }
+        
+        @Override
+        public void cancel() {
+            cancelled = true;
+            timer.cancel();
+        }
+        
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+        
+        @Override
+        public boolean isDone() {
+            return cancelled || ran;
+        }
+    }
+    
+}
@@ -0,0 +1,255 @@
+package io.dico.dicore.task.scheduler;
+
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * The regionized backend of {@link TaskScheduler}, for servers that tick regions in parallel (Folia and its forks).
+ * <p>
+ * Tasks bound to a location or entity are handed to the region or entity scheduler of the server,
+ * and run on the thread of the region that owns them. Other tasks run on the global region thread.
+ * <p>
+ * The regionized scheduler API is not part of the bukkit API this library is compiled against, so it is accessed reflectively.
+ * Use {@link #isSupported()} to check whether the server provides it.
+ */
+public class RegionizedTaskScheduler implements TaskScheduler {
+    private static final Api api = Api.load();
+    private final Plugin plugin;
+    private Object globalScheduler;
+    private Object regionScheduler;
+    private Object asyncScheduler;
+    
+    public RegionizedTaskScheduler(Plugin plugin) {
+        if (api == null) {
+            throw new UnsupportedOperationException("This server does not provide a regionized scheduler");
+        }
+        this.plugin = Objects.requireNonNull(plugin);
+    }
+    
+    /**
+     * @return true if the server provides a regionized scheduler
+     */
+    public static boolean isSupported() {
+        return api != null;
+    }
+    
+    @Override
+    public Plugin getPlugin() {
+        return plugin;
+    }
+    
+    private Server server() {
+        return plugin.getServer();
+    }
+    
+    private Object globalScheduler() {
+        if (globalScheduler == null) {
+            globalScheduler = invoke(api.getGlobalRegionScheduler, server());
+        }
+        return globalScheduler;
+    }
+    
+    private Object regionScheduler() {
+        if (regionScheduler == null) {
+            regionScheduler = invoke(api.getRegionScheduler, server());
+        }
+        return regionScheduler;
+    }
+    
+    private Object asyncScheduler() {
+        if (asyncScheduler == null) {
+            asyncScheduler = invoke(api.getAsyncScheduler, server());
+        }
+        return asyncScheduler;
+    }
+    
+    private static Consumer<Object> consumer(Runnable task) {
+        Objects.requireNonNull(task);
+        return ignored -> task.run();
+    }
+    
+    @Override
+    public ScheduledTask runTask(Runnable task) {
+        return new Task(invoke(api.globalRun, globalScheduler(), plugin, consumer(task)));
+    }
+    
+    @Override
+    public ScheduledTask runTaskLater(Runnable task, long delay) {
+        if (delay < 1) {
+            return runTask(task);
+        }
+        return new Task(invoke(api.globalRunDelayed, globalScheduler(), plugin, consumer(task), delay));
+    }
+    
+    @Override
+    public ScheduledTask runTaskTimer(Runnable task, long delay, long period) {
+        return new Task(invoke(api.globalRunAtFixedRate, globalScheduler(), plugin, consumer(task), Math.max(1L, delay), Math.max(1L, period)));
+    }
+    
+    @Override
+    public ScheduledTask runTask(Location location, Runnable task) {
+        return new Task(invoke(api.regionRun, regionScheduler(), plugin, location, consumer(task)));
+    }
+    
+    @Override
+    public ScheduledTask runTaskLater(Location location, Runnable task, long delay) {
+        if (delay < 1) {
+            return runTask(location, task);
+        }
+        return new Task(invoke(api.regionRunDelayed, regionScheduler(), plugin, location, consumer(task), delay));
+    }
+    
+    @Override
+    public ScheduledTask runTaskTimer(Location location, Runnable task, long delay, long period) {
+        return new Task(invoke(api.regionRunAtFixedRate, regionScheduler(), plugin, location, consumer(task), Math.max(1L, delay), Math.max(1L, period)));
+    }
+    
+    @Override
+    public ScheduledTask runTask(Entity entity, Runnable task) {
+        return new Task(invoke(api.entityRun, invoke(api.getEntityScheduler, entity), plugin, consumer(task), null));
+    }
+    
+    @Override
+    public ScheduledTask runTaskLater(Entity entity, Runnable task, long delay) {
+        if (delay < 1) {
+            return runTask(entity, task);
+        }
+        return new Task(invoke(api.entityRunDelayed, invoke(api.getEntityScheduler, entity), plugin, consumer(task), null, delay));
+    }
+    
+    @Override
+    public ScheduledTask runTaskTimer(Entity entity, Runnable task, long delay, long period) {
+        return new Task(invoke(api.entityRunAtFixedRate, invoke(api.getEntityScheduler, entity), plugin, consumer(task), null, Math.max(1L, delay), Math.max(1L, period)));
+    }
+    
+    @Override
+    public ScheduledTask runTaskAsynchronously(Runnable task) {
+        return new Task(invoke(api.asyncRunNow, asyncScheduler(), plugin, consumer(task)));
+    }
+    
+    @Override
+    public boolean isGlobalThread() {
+        return (Boolean) invoke(api.isGlobalTickThread, server());
+    }
+    
+    @Override
+    public boolean isOwnedByCurrentThread(Location location) {
+        return (Boolean) invoke(api.isOwnedByCurrentRegionLocation, server(), location);
+    }
+    
+    @Override
+    public boolean isOwnedByCurrentThread(Entity entity) {
+        return (Boolean) invoke(api.isOwnedByCurrentRegionEntity, server(), entity);
+    }
+    
+    private static Object invoke(Method method, Object instance, Object... args) {
+        try {
+            return method.invoke(instance, args);
+        } catch (InvocationTargetException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+    
+    private static final class Task implements ScheduledTask {
+        // null if the task was rejected, for instance because the entity was removed
+        private final Object task;
+        
+        Task(Object task) {
+            this.task = task;
+        }
+        
+        @Override
+        public void cancel() {
+            if (task != null) {
+                invoke(api.taskCancel, task);
+            }
+        }
+        
+        @Override
+        public boolean isCancelled() {
+            return task == null || (Boolean) invoke(api.taskIsCancelled, task);
+        }
+        
+        @Override
+        public boolean isDone() {
+            if (task == null) {
+                return true;
+            }
+            // IDLE and RUNNING are the states of a task that will still run
+            String state = ((Enum<?>) invoke(api.taskGetExecutionState, task)).name();
+            return !state.equals("IDLE") && !state.equals("RUNNING");
+        }
+    }
+    
+    private static final class Api {
+        final Method getGlobalRegionScheduler, getRegionScheduler, getAsyncScheduler, getEntityScheduler;
+        final Method globalRun, globalRunDelayed, globalRunAtFixedRate;
+        final Method regionRun, regionRunDelayed, regionRunAtFixedRate;
+        final Method entityRun, entityRunDelayed, entityRunAtFixedRate;
+        final Method asyncRunNow;
+        final Method isGlobalTickThread, isOwnedByCurrentRegionLocation, isOwnedByCurrentRegionEntity;
+        final Method taskCancel, taskIsCancelled, taskGetExecutionState;
+        
+        private Api() throws ReflectiveOperationException {
+            String pkg = "io.papermc.paper.threadedregions.scheduler.";
+            Class<?> global = Class.forName(pkg + "GlobalRegionScheduler");
+            Class<?> region = Class.forName(pkg + "RegionScheduler");
+            Class<?> entity = Class.forName(pkg + "EntityScheduler");
+            Class<?> async = Class.forName(pkg + "AsyncScheduler");
+            Class<?> task = Class.forName(pkg + "ScheduledTask");
+            
+            getGlobalRegionScheduler = Server.class.getMethod("getGlobalRegionScheduler");
+            getRegionScheduler = Server.class.getMethod("getRegionScheduler");
+            getAsyncScheduler = Server.class.getMethod("getAsyncScheduler");
+            getEntityScheduler = Entity.class.getMethod("getScheduler");
+            
+            globalRun = global.getMethod("run", Plugin.class, Consumer.class);
+            globalRunDelayed = global.getMethod("runDelayed", Plugin.class, Consumer.class, long.class);
+            globalRunAtFixedRate = global.getMethod("runAtFixedRate", Plugin.class, Consumer.class, long.class, long.class);
+            
+            regionRun = region.getMethod("run", Plugin.class, Location.class, Consumer.class);
+            regionRunDelayed = region.getMethod("runDelayed", Plugin.class, Location.class, Consumer.class, long.class);
+            regionRunAtFixedRate = region.getMethod("runAtFixedRate", Plugin.class, Location.class, Consumer.class, long.class, long.class);
+            
+            entityRun = entity.getMethod("run", Plugin.class, Consumer.class, Runnable.class);
+            entityRunDelayed = entity.getMethod("runDelayed", Plugin.class, Consumer.class, Runnable.class, long.class);
+            entityRunAtFixedRate = entity.getMethod("runAtFixedRate", Plugin.class, Consumer.class, Runnable.class, long.class, long.class);
+            
+            asyncRunNow = async.getMethod("runNow", Plugin.class, Consumer.class);
+            
+            isGlobalTickThread = Server.class.getMethod("isGlobalTickThread");
+            isOwnedByCurrentRegionLocation = Server.class.getMethod("isOwnedByCurrentRegion", Location.class);
+            isOwnedByCurrentRegionEntity = Server.class.getMethod("isOwnedByCurrentRegion", Entity.class);
+            
+            taskCancel = task.getMethod("cancel");
+            taskIsCancelled = task.getMethod("isCancelled");
+            taskGetExecutionState = task.getMethod("getExecutionState");
+        }
+        
+        static Api load() {
+            try {
+                Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+                return new Api();
+            } catch (ReflectiveOperationException | LinkageError ex) {
+                return null;
+            }
+        }
+    }
+    
+}
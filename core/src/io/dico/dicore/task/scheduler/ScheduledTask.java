@@ -0,0 +1,30 @@
+package io.dico.dicore.task.scheduler;
+
+/**
+ * A task scheduled by a {@link TaskScheduler}
+ */
+public interface ScheduledTask {
+    
+    /**
+     * Cancel this task. Has no effect if it is already cancelled or has completed.
+     */
+    void cancel();
+    
+    /**
+     * @return true if {@link #cancel()} was called
+     */
+    boolean isCancelled();
+    
+    /**
+     * @return true if this task was cancelled, or it runs once and has run
+     */
+    boolean isDone();
+    
+    /**
+     * @return the bukkit task id, or -1 if the backing scheduler doesn't use task ids
+     */
+    default int getTaskId() {
+        return -1;
+    }
+    
+}
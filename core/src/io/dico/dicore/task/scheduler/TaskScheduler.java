@@ -0,0 +1,105 @@
+package io.dico.dicore.task.scheduler;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Schedules tasks on the thread that owns a location or entity.
+ * <p>
+ * On a classic server, every location and entity is owned by the main thread, and {@link BukkitTaskScheduler} is used.
+ * On a regionized server, such as Folia, the world is split into regions that tick in parallel on separate threads.
+ * {@link RegionizedTaskScheduler} then runs each task on the thread of the region that owns its location or entity,
+ * and tasks that aren't bound to a location run on the global region thread.
+ * <p>
+ * Delays and periods are in ticks. Like with the bukkit scheduler, a delay of 0 runs the task on the next tick.
+ */
+public interface TaskScheduler {
+    
+    /**
+     * @param plugin the plugin that owns the tasks
+     * @return a regionized scheduler if the server supports it, otherwise a bukkit scheduler
+     */
+    static TaskScheduler of(Plugin plugin) {
+        return RegionizedTaskScheduler.isSupported() ? new RegionizedTaskScheduler(plugin) : new BukkitTaskScheduler(plugin);
+    }
+    
+    /**
+     * @return the plugin that owns the tasks, or null if this scheduler is not bound to a plugin
+     */
+    Plugin getPlugin();
+    
+    // Global tasks
+    
+    ScheduledTask runTask(Runnable task);
+    
+    ScheduledTask runTaskLater(Runnable task, long delay);
+    
+    ScheduledTask runTaskTimer(Runnable task, long delay, long period);
+    
+    // Tasks on the thread owning a location
+    
+    ScheduledTask runTask(Location location, Runnable task);
+    
+    ScheduledTask runTaskLater(Location location, Runnable task, long delay);
+    
+    ScheduledTask runTaskTimer(Location location, Runnable task, long delay, long period);
+    
+    // Tasks on the thread owning an entity. These stop when the entity is removed.
+    
+    ScheduledTask runTask(Entity entity, Runnable task);
+    
+    ScheduledTask runTaskLater(Entity entity, Runnable task, long delay);
+    
+    ScheduledTask runTaskTimer(Entity entity, Runnable task, long delay, long period);
+    
+    // Asynchronous tasks
+    
+    ScheduledTask runTaskAsynchronously(Runnable task);
+    
+    /**
+     * @return true if the current thread runs global tasks
+     */
+    boolean isGlobalThread();
+    
+    /**
+     * @param location the location
+     * @return true if the current thread owns the location, and may access it directly
+     */
+    boolean isOwnedByCurrentThread(Location location);
+    
+    /**
+     * @param entity the entity
+     * @return true if the current thread owns the entity, and may access it directly
+     */
+    boolean isOwnedByCurrentThread(Entity entity);
+    
+    /**
+     * Run the task now if the current thread owns the location, otherwise schedule it on the owning thread.
+     *
+     * @param location the location
+     * @param task     the task
+     */
+    default void execute(Location location, Runnable task) {
+        if (isOwnedByCurrentThread(location)) {
+            task.run();
+        } else {
+            runTask(location, task);
+        }
+    }
+    
+    /**
+     * Run the task now if the current thread owns the entity, otherwise schedule it on the owning thread.
+     *
+     * @param entity the entity
+     * @param task   the task
+     */
+    default void execute(Entity entity, Runnable task) {
+        if (isOwnedByCurrentThread(entity)) {
+            task.run();
+        } else {
+            runTask(entity, task);
+        }
+    }
+    
+}
@@ -0,0 +1,133 @@
+package io.dico.dicore.task.scheduler;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A scheduler that keeps track of the tasks scheduled through it, such that they can be cancelled together using {@link #cancelAll()}.
+ * This is used to tear down everything that a module scheduled when it is unloaded.
+ */
+public class TrackingTaskScheduler implements TaskScheduler {
+    private final TaskScheduler delegate;
+    private final List<ScheduledTask> tasks = new ArrayList<>();
+    
+    public TrackingTaskScheduler(TaskScheduler delegate) {
+        this.delegate = Objects.requireNonNull(delegate);
+    }
+    
+    public TaskScheduler getDelegate() {
+        return delegate;
+    }
+    
+    /**
+     * Cancel all tasks scheduled through this scheduler
+     */
+    public synchronized void cancelAll() {
+        for (ScheduledTask task : tasks) {
+            task.cancel();
+        }
+        tasks.clear();
+    }
+    
+    /**
+     * @return the amount of tasks that were scheduled through this scheduler and aren't done
+     */
+    public synchronized int getTaskCount() {
+        prune();
+        return tasks.size();
+    }
+    
+    private synchronized ScheduledTask track(ScheduledTask task) {
+        if (tasks.size() >= 16 && Integer.bitCount(tasks.size()) == 1) {
+            prune();
+        }
+        tasks.add(task);
+        return task;
+    }
+    
+    private void prune() {
+        Iterator<ScheduledTask> iterator = tasks.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isDone()) {
+                iterator.remove();
+            }
+        }
+    }
+    
+    @Override
+    public Plugin getPlugin() {
+        return delegate.getPlugin();
+    }
+    
+    @Override
+    public ScheduledTask runTask(Runnable task) {
+        return track(delegate.runTask(task));
+    }
+    
+    @Override
+    public ScheduledTask runTaskLater(Runnable task, long delay) {
+        return track(delegate.runTaskLater(task, delay));
+    }
+    
+    @Override
+    public ScheduledTask runTaskTimer(Runnable task, long delay, long period) {
+        return track(delegate.runTaskTimer(task, delay, period));
+    }
+    
+    @Override
+    public ScheduledTask runTask(Location location, Runnable task) {
+        return track(delegate.runTask(location, task));
+    }
+    
+    @Override
+    public ScheduledTask runTaskLater(Location location, Runnable task, long delay) {
+        return track(delegate.runTaskLater(location, task, delay));
+    }
+    
+    @Override
+    public ScheduledTask runTaskTimer(Location location, Runnable task, long delay, long period) {
+        return track(delegate.runTaskTimer(location, task, delay, period));
+    }
+    
+    @Override
+    public ScheduledTask runTask(Entity entity, Runnable task) {
+        return track(delegate.runTask(entity, task));
+    }
+    
+    @Override
+    public ScheduledTask runTaskLater(Entity entity, Runnable task, long delay) {
+        return track(delegate.runTaskLater(entity, task, delay));
+    }
+    
+    @Override
+    public ScheduledTask runTaskTimer(Entity entity, Runnable task, long delay, long period) {
+        return track(delegate.runTaskTimer(entity, task, delay, period));
+    }
+    
+    @Override
+    public ScheduledTask runTaskAsynchronously(Runnable task) {
+        return track(delegate.runTaskAsynchronously(task));
+    }
+    
+    @Override
+    public boolean isGlobalThread() {
+        return delegate.isGlobalThread();
+    }
+    
+    @Override
+    public boolean isOwnedByCurrentThread(Location location) {
+        return delegate.isOwnedByCurrentThread(location);
+    }
+    
+    @Override
+    public boolean isOwnedByCurrentThread(Entity entity) {
+        return delegate.isOwnedByCurrentThread(entity);
+    }
+    
+}
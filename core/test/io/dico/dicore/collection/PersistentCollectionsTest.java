@@ -0,0 +1,190 @@
+package io.dico.dicore.collection;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class PersistentCollectionsTest {
+
+    // keys with few distinct hash codes, such that collisions are tested
+    private static final class Key implements Comparable<Key> {
+        final int value;
+
+        Key(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key) obj).value == value;
+        }
+
+        @Override
+        public int hashCode() {
+            return value % 1000;
+        }
+
+        @Override
+        public int compareTo(Key o) {
+            return Integer.compare(value, o.value);
+        }
+    }
+
+    @Test
+    public void testPersistentHashMap_matchesHashMap() {
+        Random random = new Random(1);
+        Map<Key, Integer> expected = new HashMap<>();
+        PersistentHashMap<Key, Integer> map = PersistentHashMap.empty();
+
+        for (int i = 0; i < 20000; i++) {
+            Key key = new Key(random.nextInt(5000));
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                expected.put(key, i);
+                map = map.plus(key, i);
+            }
+        }
+
+        Assert.assertEquals(expected, map);
+        Assert.assertEquals(expected.size(), map.size());
+        Assert.assertEquals(expected, new HashMap<>(map));
+    }
+
+    @Test
+    public void testPersistentHashMap_snapshotsAreUnchanged() {
+        PersistentHashMap<Key, Integer> snapshot = PersistentHashMap.empty();
+        for (int i = 0; i < 3000; i++) {
+            snapshot = snapshot.plus(new Key(i), i);
+        }
+        Map<Key, Integer> expected = new HashMap<>(snapshot);
+
+        PersistentHashMap.Transient<Key, Integer> builder = snapshot.asTransient();
+        for (int i = 0; i < 3000; i += 2) {
+            builder.remove(new Key(i));
+            builder.put(new Key(i + 1), -i);
+        }
+        PersistentHashMap<Key, Integer> changed = builder.persistent();
+        snapshot.minus(new Key(1)).plus(new Key(7), 7);
+
+        Assert.assertEquals(expected, snapshot);
+        Assert.assertEquals(1500, changed.size());
+        Assert.assertEquals(Integer.valueOf(-2), changed.get(new Key(3)));
+        Assert.assertFalse(changed.containsKey(new Key(2)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPersistentHashMap_transientIsUnusableAfterPersistent() {
+        PersistentHashMap.Transient<String, String> builder = PersistentHashMap.<String, String>empty().asTransient();
+        builder.persistent();
+        builder.put("a", "b");
+    }
+
+    @Test
+    public void testPersistentVector_matchesArrayList() {
+        Random random = new Random(2);
+        List<Integer> expected = new ArrayList<>();
+        PersistentVector<Integer> vector = PersistentVector.empty();
+        List<PersistentVector<Integer>> snapshots = new ArrayList<>();
+        List<List<Integer>> expectedSnapshots = new ArrayList<>();
+
+        for (int i = 0; i < 50000; i++) {
+            int action = random.nextInt(10);
+            if (action == 0 && !expected.isEmpty()) {
+                expected.remove(expected.size() - 1);
+                vector = vector.pop();
+            } else if (action == 1 && !expected.isEmpty()) {
+                int index = random.nextInt(expected.size());
+                expected.set(index, -i);
+                vector = vector.with(index, -i);
+            } else {
+                expected.add(i);
+                vector = vector.plus(i);
+            }
+            if (i % 5000 == 0) {
+                snapshots.add(vector);
+                expectedSnapshots.add(new ArrayList<>(expected));
+            }
+        }
+
+        Assert.assertEquals(expected, vector);
+        Assert.assertEquals(expectedSnapshots, snapshots);
+    }
+
+    @Test
+    public void testPersistentVector_transient() {
+        PersistentVector<Integer> base = PersistentVector.empty();
+        for (int i = 0; i < 100; i++) {
+            base = base.plus(i);
+        }
+
+        PersistentVector.Transient<Integer> builder = base.asTransient();
+        for (int i = 100; i < 40000; i++) {
+            builder.add(i);
+        }
+        builder.set(5, -5).set(39999, -39999);
+        PersistentVector<Integer> result = builder.persistent();
+
+        Assert.assertEquals(100, base.size());
+        Assert.assertEquals(Integer.valueOf(5), base.get(5));
+        Assert.assertEquals(40000, result.size());
+        Assert.assertEquals(Integer.valueOf(-5), result.get(5));
+        Assert.assertEquals(Integer.valueOf(-39999), result.get(39999));
+        Assert.assertEquals(Integer.valueOf(20000), result.get(20000));
+        Assert.assertEquals(Integer.valueOf(40000), result.plus(40000).get(40000));
+    }
+
+    @Test
+    public void testPersistentSortedMap_matchesTreeMap() {
+        Random random = new Random(3);
+        TreeMap<Key, Integer> expected = new TreeMap<>();
+        PersistentSortedMap<Key, Integer> map = PersistentSortedMap.empty();
+        PersistentSortedMap<Key, Integer> snapshot = null;
+        Map<Key, Integer> expectedSnapshot = null;
+
+        for (int i = 0; i < 20000; i++) {
+            Key key = new Key(random.nextInt(3000));
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                expected.put(key, i);
+                map = map.plus(key, i);
+            }
+            if (i == 10000) {
+                snapshot = map;
+                expectedSnapshot = new TreeMap<>(expected);
+            }
+        }
+
+        Assert.assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(map.entrySet()));
+        Assert.assertEquals(new ArrayList<>(expectedSnapshot.entrySet()), new ArrayList<>(snapshot.entrySet()));
+        Assert.assertEquals(expected.firstKey(), map.firstKey());
+        Assert.assertEquals(expected.lastKey(), map.lastKey());
+        Key probe = new Key(1500);
+        Assert.assertEquals(expected.floorKey(probe), map.floorKey(probe));
+        Assert.assertEquals(expected.ceilingKey(probe), map.ceilingKey(probe));
+    }
+
+    @Test
+    public void testPersistentSortedMap_transient() {
+        PersistentSortedMap<Integer, String> base = PersistentSortedMap.<Integer, String>empty().plus(1, "a").plus(2, "b");
+        PersistentSortedMap.Transient<Integer, String> builder = base.asTransient();
+        for (int i = 1000; i > 0; i--) {
+            builder.put(i, Integer.toString(i));
+        }
+        for (int i = 2; i <= 1000; i += 2) {
+            builder.remove(i);
+        }
+        PersistentSortedMap<Integer, String> result = builder.persistent();
+
+        Assert.assertEquals(2, base.size());
+        Assert.assertEquals("b", base.get(2));
+        Assert.assertEquals(500, result.size());
+        Assert.assertEquals("1", result.get(1));
+        Assert.assertEquals(Integer.valueOf(999), result.lastKey());
+    }
+
+}
@@ -0,0 +1,55 @@
+package io.dico.dicore.modules;
+
+import io.dico.dicore.event.ListenerHandle;
+import io.dico.dicore.task.scheduler.LocalTaskScheduler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DicoPluginTest {
+
+    @Test
+    public void testTaskHandle_registerRestartsTask() {
+        LocalTaskScheduler scheduler = new LocalTaskScheduler();
+        List<Long> ran = new ArrayList<>();
+        ListenerHandle handle = DicoPlugin.makeTaskHandle(scheduler, 3, 5, () -> ran.add(scheduler.getCurrentTick()));
+
+        handle.register();
+        scheduler.tick(4);
+        Assert.assertEquals(1, ran.size());
+        Assert.assertEquals(3L, (long) ran.get(0));
+
+        // the task is cancelled and started again with its initial delay
+        handle.register();
+        scheduler.tick(10);
+        Assert.assertEquals(3, ran.size());
+        Assert.assertEquals(7L, (long) ran.get(1));
+        Assert.assertEquals(12L, (long) ran.get(2));
+        Assert.assertEquals(1, scheduler.getPendingCount());
+
+        handle.unregister();
+        scheduler.tick(10);
+        Assert.assertEquals(3, ran.size());
+        Assert.assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void testTaskHandle_registerFromTaskKeepsTask() {
+        LocalTaskScheduler scheduler = new LocalTaskScheduler();
+        List<Long> ran = new ArrayList<>();
+        ListenerHandle[] handle = new ListenerHandle[1];
+        handle[0] = DicoPlugin.makeTaskHandle(scheduler, 2, 2, () -> {
+            ran.add(scheduler.getCurrentTick());
+            handle[0].register();
+        });
+
+        handle[0].register();
+        scheduler.tick(6);
+        Assert.assertEquals(3, ran.size());
+        Assert.assertEquals(6L, (long) ran.get(2));
+        Assert.assertEquals(1, scheduler.getPendingCount());
+    }
+
+}
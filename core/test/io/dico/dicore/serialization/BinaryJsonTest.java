@@ -0,0 +1,127 @@
+package io.dico.dicore.serialization;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+
+public class BinaryJsonTest {
+
+    private static void writeSample(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("name").value("Dico é中");
+        writer.name("level").value(-42);
+        writer.name("balance").value(1234.5);
+        writer.name("big").value(new BigDecimal("12345678901234567890.5"));
+        writer.name("online").value(true);
+        writer.name("nothing").nullValue();
+        writer.name("homes").beginArray();
+        for (int i = 0; i < 100; i++) {
+            writer.beginObject();
+            writer.name("name").value("home" + i);
+            writer.name("x").value(i * 1000L);
+            writer.name("skipped").beginArray().value(1).value("two").beginObject().endObject().endArray();
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    private static String readSample(JsonReader reader) throws IOException {
+        StringBuilder result = new StringBuilder();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            result.append(name).append('=');
+            switch (name) {
+                case "level":
+                    result.append(reader.nextInt());
+                    break;
+                case "balance":
+                    result.append(reader.nextDouble());
+                    break;
+                case "online":
+                    result.append(reader.nextBoolean());
+                    break;
+                case "nothing":
+                    reader.nextNull();
+                    break;
+                case "homes":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            String homeName = reader.nextName();
+                            if (homeName.equals("skipped")) {
+                                reader.skipValue();
+                            } else {
+                                result.append(homeName).append(':').append(reader.nextString()).append(',');
+                            }
+                        }
+                        reader.endObject();
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    result.append(reader.nextString());
+                    break;
+            }
+            result.append(';');
+        }
+        reader.endObject();
+        Assert.assertEquals(JsonToken.END_DOCUMENT, reader.peek());
+        return result.toString();
+    }
+
+    @Test
+    public void testBinaryJson_readsLikeJson() throws IOException {
+        StringWriter text = new StringWriter();
+        writeSample(new JsonWriter(text));
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        writeSample(new BinaryJsonWriter(binary));
+
+        String expected = readSample(new JsonReader(new StringReader(text.toString())));
+        Assert.assertEquals(expected, readSample(new BinaryJsonReader(binary.toByteArray())));
+        Assert.assertTrue(binary.size() * 3 < text.toString().length() * 2);
+    }
+
+    @Test
+    public void testBinaryJson_longContainers() throws IOException {
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        BinaryJsonWriter writer = new BinaryJsonWriter(binary);
+        writer.beginArray();
+        for (int i = 0; i < 20000; i++) {
+            writer.value(i);
+        }
+        writer.beginArray().endArray();
+        writer.endArray();
+
+        BinaryJsonReader reader = new BinaryJsonReader(binary.toByteArray());
+        reader.beginArray();
+        for (int i = 0; i < 20000; i++) {
+            Assert.assertEquals(i, reader.nextInt());
+        }
+        reader.skipValue();
+        reader.endArray();
+        Assert.assertEquals(JsonToken.END_DOCUMENT, reader.peek());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBinaryJson_typeMismatch() throws IOException {
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        new BinaryJsonWriter(binary).beginArray().value(true).endArray();
+
+        BinaryJsonReader reader = new BinaryJsonReader(binary.toByteArray());
+        reader.beginArray();
+        reader.nextString();
+    }
+
+}
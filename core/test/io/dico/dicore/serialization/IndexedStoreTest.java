@@ -0,0 +1,185 @@
+package io.dico.dicore.serialization;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class IndexedStoreTest {
+
+    private static final class Item {
+        String id;
+        String owner;
+        Integer level;
+
+        Item(String id, String owner, Integer level) {
+            this.id = id;
+            this.owner = owner;
+            this.level = level;
+        }
+    }
+
+    private static IndexedStore<String, Item> newStore(List<Exception> errors) {
+        return new IndexedStore<>(item -> item.id, new Gson().getAdapter(Item.class), errors::add);
+    }
+
+    private static List<String> ids(List<Item> items) {
+        List<String> result = new ArrayList<>();
+        for (Item item : items) {
+            result.add(item.id);
+        }
+        return result;
+    }
+
+    @Test
+    public void testIndex_bucketCollapsesToSingleKey() {
+        IndexedStore<String, Item> store = newStore(new ArrayList<>());
+        IndexedStore<String, Item>.Index<String> owners = store.addIndex(item -> item.owner);
+        store.put(new Item("a", "x", 1));
+        store.put(new Item("b", "x", 2));
+        store.put(new Item("c", "x", 3));
+        store.put(new Item("d", "y", 4));
+        Assert.assertEquals(3, owners.count("x"));
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), ids(owners.get("x")));
+
+        store.remove("b");
+        Assert.assertEquals(Arrays.asList("a", "c"), ids(owners.get("x")));
+        store.remove("a");
+        // a bucket with one key is stored as the key itself
+        Assert.assertEquals("c", owners.buckets.get("x"));
+        Assert.assertEquals(1, owners.count("x"));
+        Assert.assertEquals("c", owners.getFirst("x").id);
+        Assert.assertEquals(Collections.singletonList("c"), ids(owners.get("x")));
+
+        store.remove("c");
+        Assert.assertFalse(owners.contains("x"));
+        Assert.assertEquals(0, owners.count("x"));
+        Assert.assertNull(owners.getFirst("x"));
+        Assert.assertTrue(owners.get("x").isEmpty());
+        Assert.assertEquals(Collections.singleton("y"), owners.keys());
+
+        // removing a key that isn't in the bucket leaves the bucket unchanged
+        Assert.assertNull(store.remove("a"));
+        Assert.assertEquals("d", owners.getFirst("y").id);
+    }
+
+    @Test
+    public void testIndex_reindexAfterChangeInPlace() {
+        IndexedStore<String, Item> store = newStore(new ArrayList<>());
+        IndexedStore<String, Item>.Index<String> owners = store.addIndex(item -> item.owner);
+        IndexedStore<String, Item>.SortedIndex<Integer> levels = store.addSortedIndex(item -> item.level);
+        Item a = new Item("a", "x", 1);
+        store.put(a);
+        store.put(new Item("b", "x", 2));
+
+        a.owner = "y";
+        a.level = 5;
+        // the indexes are stale until the value is reindexed
+        Assert.assertEquals(Arrays.asList("a", "b"), ids(owners.get("x")));
+        Assert.assertTrue(store.reindex("a"));
+        Assert.assertEquals(Collections.singletonList("b"), ids(owners.get("x")));
+        Assert.assertEquals(Collections.singletonList("a"), ids(owners.get("y")));
+        Assert.assertEquals(Integer.valueOf(5), levels.lastKey());
+        Assert.assertFalse(levels.contains(1));
+
+        // values without an index key aren't indexed
+        a.owner = null;
+        Assert.assertTrue(store.reindex("a"));
+        Assert.assertFalse(owners.contains("y"));
+        Assert.assertEquals(Collections.singleton("x"), owners.keys());
+        Assert.assertFalse(store.reindex("missing"));
+
+        // replacing a value removes the index keys of the old value
+        store.put(new Item("b", "z", 2));
+        Assert.assertFalse(owners.contains("x"));
+        Assert.assertEquals("b", owners.getFirst("z").id);
+        Assert.assertEquals(2, store.size());
+    }
+
+    @Test
+    public void testSortedIndex_build() {
+        IndexedStore<String, Item> store = newStore(new ArrayList<>());
+        String[] ids = {"e", "a", "d", "b", "c", "f"};
+        int[] levels = {5, 1, 3, 3, 2, 9};
+        for (int i = 0; i < ids.length; i++) {
+            store.put(new Item(ids[i], null, levels[i]));
+        }
+        store.put(new Item("g", null, null));
+
+        // built in bulk from the values that are in the store
+        IndexedStore<String, Item>.SortedIndex<Integer> byLevel = store.addSortedIndex(item -> item.level);
+        Assert.assertEquals(Integer.valueOf(1), byLevel.firstKey());
+        Assert.assertEquals(Integer.valueOf(9), byLevel.lastKey());
+        Assert.assertEquals(Arrays.asList(1, 2, 3, 5, 9), new ArrayList<>(byLevel.keys()));
+        // values with the same index key are in the order they were put
+        Assert.assertEquals(Arrays.asList("c", "d", "b"), ids(byLevel.range(2, 5)));
+        Assert.assertEquals(Arrays.asList("e", "f"), ids(byLevel.from(4)));
+        Assert.assertEquals(Arrays.asList("a", "c"), ids(byLevel.below(3)));
+        Assert.assertEquals(2, byLevel.count(3));
+
+        IndexedStore<String, Item>.SortedIndex<Integer> descending = store.addSortedIndex(item -> item.level, Collections.reverseOrder());
+        Assert.assertEquals(Integer.valueOf(9), descending.firstKey());
+        Assert.assertEquals(Arrays.asList("d", "b", "c"), ids(descending.range(3, 1)));
+
+        store.clear();
+        Assert.assertNull(byLevel.firstKey());
+        Assert.assertTrue(byLevel.keys().isEmpty());
+    }
+
+    @Test
+    public void testLoadFrom_roundTrip() throws IOException {
+        List<Exception> errors = new ArrayList<>();
+        IndexedStore<String, Item> store = newStore(errors);
+        store.put(new Item("a", "x", 3));
+        store.put(new Item("b", "y", 1));
+        store.put(new Item("c", "x", 2));
+
+        StringWriter out = new StringWriter();
+        store.writeTo(new JsonWriter(out));
+
+        IndexedStore<String, Item> loaded = newStore(errors);
+        IndexedStore<String, Item>.Index<String> owners = loaded.addIndex(item -> item.owner);
+        IndexedStore<String, Item>.SortedIndex<Integer> levels = loaded.addSortedIndex(item -> item.level);
+        loaded.put(new Item("stale", "x", 0));
+        loaded.loadFrom(new JsonReader(new StringReader(out.toString())));
+
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), new ArrayList<>(loaded.keys()));
+        Assert.assertFalse(loaded.containsKey("stale"));
+        Assert.assertEquals(Arrays.asList("a", "c"), ids(owners.get("x")));
+        Assert.assertEquals(Arrays.asList("b", "c", "a"), ids(levels.from(0)));
+        Assert.assertEquals("y", loaded.get("b").owner);
+        Assert.assertTrue(errors.isEmpty());
+
+        StringWriter again = new StringWriter();
+        loaded.writeTo(new JsonWriter(again));
+        Assert.assertEquals(out.toString(), again.toString());
+    }
+
+    @Test
+    public void testLoadFrom_reportsMissingAndDuplicateKeys() throws IOException {
+        List<Exception> errors = new ArrayList<>();
+        IndexedStore<String, Item> store = newStore(errors);
+        IndexedStore<String, Item>.Index<String> owners = store.addIndex(item -> item.owner);
+        String json = "[{\"id\":\"a\",\"owner\":\"x\"}, null, {\"owner\":\"x\"}, {\"id\":\"a\",\"owner\":\"y\"}, {\"id\":\"b\",\"owner\":\"x\"}]";
+        store.loadFrom(new JsonReader(new StringReader(json)));
+
+        Assert.assertEquals(2, errors.size());
+        Assert.assertTrue(errors.get(0).getMessage(), errors.get(0).getMessage().contains("$[2]"));
+        Assert.assertTrue(errors.get(1).getMessage(), errors.get(1).getMessage().contains("$[3]"));
+        // the last value with a primary key is kept, and indexed
+        Assert.assertEquals(2, store.size());
+        Assert.assertEquals("y", store.get("a").owner);
+        Assert.assertEquals(Collections.singletonList("b"), ids(owners.get("x")));
+        Assert.assertEquals(Collections.singletonList("a"), ids(owners.get("y")));
+    }
+
+}
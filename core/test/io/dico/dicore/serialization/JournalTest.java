@@ -0,0 +1,182 @@
+package io.dico.dicore.serialization;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class JournalTest {
+
+    private static class Data implements JsonLoadable {
+        final List<String> values = new ArrayList<>();
+
+        @Override
+        public void writeTo(JsonWriter writer) throws IOException {
+            writer.beginArray();
+            for (String value : values) {
+                writer.value(value);
+            }
+            writer.endArray();
+        }
+
+        @Override
+        public void loadFrom(JsonReader reader) throws IOException {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                values.add(reader.nextString());
+            }
+            reader.endArray();
+        }
+    }
+
+    private static void replay(Data data, JsonReader record) throws IOException {
+        record.beginArray();
+        data.values.add(record.nextString());
+        record.endArray();
+    }
+
+    private static Journal<Data> newJournal(File directory, List<Exception> errors) {
+        Consumer<Exception> onError = ex -> {
+            // the snapshot doesn't exist until the first compaction
+            if (!(ex instanceof FileNotFoundException)) {
+                errors.add(ex);
+            }
+        };
+        JsonFileAdapter<Data> adapter = JsonFileAdapter.create(Data::new, onError);
+        return new Journal<>(adapter, new File(directory, "data.json").getPath(), JournalTest::replay, onError);
+    }
+
+    private static void append(Journal<Data> journal, Data data, String value) throws Exception {
+        data.values.add(value);
+        journal.append(writer -> writer.beginArray().value(value).endArray()).get(5, TimeUnit.SECONDS);
+    }
+
+    private static TreeSet<String> list(File directory) {
+        return new TreeSet<>(Arrays.asList(directory.list()));
+    }
+
+    private static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testJournal_generations() throws Exception {
+        File directory = Files.createTempDirectory("journal").toFile();
+        List<Exception> errors = new ArrayList<>();
+        try {
+            Journal<Data> journal = newJournal(directory, errors);
+            Data data = journal.load(Data::new);
+            Assert.assertEquals(1, journal.getGeneration());
+            append(journal, data, "a");
+            append(journal, data, "b");
+            Assert.assertTrue(journal.close(5, TimeUnit.SECONDS));
+            Assert.assertEquals(new TreeSet<>(Arrays.asList("data.1.journal")), list(directory));
+
+            // records appended after a load go to a new journal, and the older journals are replayed in order
+            journal = newJournal(directory, errors);
+            data = journal.load(Data::new);
+            Assert.assertEquals(Arrays.asList("a", "b"), data.values);
+            Assert.assertEquals(2, journal.getGeneration());
+            Assert.assertEquals(2, journal.getRecordCount());
+            append(journal, data, "c");
+            Assert.assertTrue(journal.close(5, TimeUnit.SECONDS));
+
+            journal = newJournal(directory, errors);
+            data = journal.load(Data::new);
+            Assert.assertEquals(Arrays.asList("a", "b", "c"), data.values);
+            Assert.assertEquals(3, journal.getGeneration());
+            Assert.assertTrue(journal.close(5, TimeUnit.SECONDS));
+            Assert.assertTrue(errors.isEmpty());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testJournal_compactionDeletesOlderFiles() throws Exception {
+        File directory = Files.createTempDirectory("journal").toFile();
+        List<Exception> errors = new ArrayList<>();
+        try {
+            Files.write(new File(directory, "data.json").toPath(), "[\"legacy\"]".getBytes(StandardCharsets.UTF_8));
+
+            Journal<Data> journal = newJournal(directory, errors);
+            Data data = journal.load(Data::new);
+            Assert.assertEquals(Arrays.asList("legacy"), data.values);
+            append(journal, data, "a");
+            journal.compactNow(data);
+            Assert.assertEquals(2, journal.getGeneration());
+            Assert.assertEquals(0, journal.getRecordCount());
+            append(journal, data, "b");
+            Assert.assertTrue(journal.close(5, TimeUnit.SECONDS));
+            Assert.assertEquals(new TreeSet<>(Arrays.asList("data.2.journal", "data.2.json")), list(directory));
+
+            journal = newJournal(directory, errors);
+            data = journal.load(Data::new);
+            Assert.assertEquals(Arrays.asList("legacy", "a", "b"), data.values);
+            Assert.assertEquals(1, journal.getRecordCount());
+            journal.compact(data).get(5, TimeUnit.SECONDS);
+            Assert.assertTrue(journal.close(5, TimeUnit.SECONDS));
+            Assert.assertEquals(new TreeSet<>(Arrays.asList("data.4.json")), list(directory));
+
+            journal = newJournal(directory, errors);
+            data = journal.load(Data::new);
+            Assert.assertEquals(Arrays.asList("legacy", "a", "b"), data.values);
+            Assert.assertEquals(5, journal.getGeneration());
+            Assert.assertTrue(journal.close(5, TimeUnit.SECONDS));
+            Assert.assertTrue(errors.isEmpty());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testJournal_tornRecord() throws Exception {
+        File directory = Files.createTempDirectory("journal").toFile();
+        List<Exception> errors = new ArrayList<>();
+        try {
+            try (OutputStream out = new FileOutputStream(new File(directory, "data.1.journal"))) {
+                out.write("[\"a\"]\n[\"b\"]\n[\"c".getBytes(StandardCharsets.UTF_8));
+            }
+
+            Journal<Data> journal = newJournal(directory, errors);
+            Data data = journal.load(Data::new);
+            Assert.assertEquals(Arrays.asList("a", "b"), data.values);
+            Assert.assertEquals(2, journal.getGeneration());
+            Assert.assertTrue(journal.close(5, TimeUnit.SECONDS));
+            // a torn record at the end of a journal is expected after a crash, and isn't reported
+            Assert.assertTrue(errors.isEmpty());
+
+            try (OutputStream out = new FileOutputStream(new File(directory, "data.1.journal"))) {
+                out.write("[\"a\"]\n[\"b\n[\"c\"]\n".getBytes(StandardCharsets.UTF_8));
+            }
+            journal = newJournal(directory, errors);
+            data = journal.load(Data::new);
+            Assert.assertEquals(Arrays.asList("a", "c"), data.values);
+            Assert.assertTrue(journal.close(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, errors.size());
+        } finally {
+            delete(directory);
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+package io.dico.dicore.serialization;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class JsonConfigurationTest {
+
+    private static final String SAMPLE = "{\n" +
+            "  \"name\": \"dicore\",\n" +
+            "  \"enabled\": true,\n" +
+            "  \"ratio\": 0.75,\n" +
+            "  \"limit\": 12,\n" +
+            "  \"big\": 12345678901234,\n" +
+            "  \"tags\": [\"a\", \"b\", 3, {\"nested\": [1, 2.5]}],\n" +
+            "  \"nothing\": null,\n" +
+            "  \"database\": {\n" +
+            "    \"host\": \"localhost\",\n" +
+            "    \"port\": 3306,\n" +
+            "    \"pool\": {\"min\": 1, \"max\": 8, \"timeouts\": {\"connect\": 5.5}},\n" +
+            "    \"empty\": {},\n" +
+            "    \"password\": null\n" +
+            "  },\n" +
+            "  \"dotted.path\": {\"value\": \"x\"},\n" +
+            "  \"messages\": {\"join\": \"hi\", \"quit\": \"bye\"}\n" +
+            "}";
+
+    private static JsonConfiguration load(String input, boolean lazy) throws Exception {
+        JsonConfiguration result = new JsonConfiguration(lazy);
+        result.loadFromString(input);
+        return result;
+    }
+
+    /**
+     * Normalize a value of a configuration, such that lazy and eager values can be compared.
+     * Eager mode reads all numbers as doubles, and sections are compared by their keys.
+     */
+    private static Object normalize(Object value) {
+        if (value instanceof ConfigurationSection) {
+            return "section";
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof List) {
+            List<Object> result = new ArrayList<>();
+            for (Object element : (List<?>) value) {
+                result.add(normalize(element));
+            }
+            return result;
+        }
+        if (value instanceof Map) {
+            Map<Object, Object> result = new TreeMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                result.put(entry.getKey(), normalize(entry.getValue()));
+            }
+            return result;
+        }
+        return value;
+    }
+
+    private static Object normalizedValues(ConfigurationSection section) {
+        return normalize(section.getValues(true));
+    }
+
+    @Test
+    public void testLazy_matchesEager() throws Exception {
+        JsonConfiguration eager = load(SAMPLE, false);
+        JsonConfiguration lazy = load(SAMPLE, true);
+        Assert.assertEquals(normalizedValues(eager), normalizedValues(lazy));
+        Assert.assertEquals(eager.getKeys(true), lazy.getKeys(true));
+
+        // single lookups through paths, on a configuration whose sections weren't materialized by a deep read
+        lazy = load(SAMPLE, true);
+        Assert.assertEquals(eager.getString("database.host"), lazy.getString("database.host"));
+        Assert.assertEquals(eager.getInt("database.pool.max"), lazy.getInt("database.pool.max"));
+        Assert.assertEquals(eager.getDouble("database.pool.timeouts.connect"), lazy.getDouble("database.pool.timeouts.connect"), 0);
+        Assert.assertEquals(eager.getString("dotted.path.value"), lazy.getString("dotted.path.value"));
+        Assert.assertTrue(lazy.isConfigurationSection("database.empty"));
+        Assert.assertEquals(normalize(eager.getList("tags")), normalize(lazy.getList("tags")));
+        // null values are left out in both modes
+        Assert.assertFalse(eager.contains("nothing"));
+        Assert.assertFalse(lazy.contains("nothing"));
+        Assert.assertFalse(eager.contains("database.password"));
+        Assert.assertFalse(lazy.contains("database.password"));
+    }
+
+    @Test
+    public void testLazy_savesLikeEager() throws Exception {
+        JsonConfiguration eager = load(SAMPLE, false);
+        JsonConfiguration lazy = load(SAMPLE, true);
+        // one section is materialized and changed, the others are written from the tape
+        lazy.set("messages.join", "hello");
+        eager.set("messages.join", "hello");
+
+        JsonConfiguration eagerReloaded = load(eager.saveToString(), false);
+        JsonConfiguration lazyReloaded = load(lazy.saveToString(), false);
+        Assert.assertEquals(normalizedValues(eagerReloaded), normalizedValues(lazyReloaded));
+        Assert.assertEquals("hello", lazyReloaded.getString("messages.join"));
+        Assert.assertEquals(3306, lazyReloaded.getInt("database.port"));
+    }
+
+    @Test
+    public void testLazy_concurrentReads() throws Exception {
+        StringBuilder input = new StringBuilder("{");
+        int sections = 200;
+        for (int i = 0; i < sections; i++) {
+            if (i > 0) {
+                input.append(',');
+            }
+            input.append("\"section").append(i).append("\":{\"index\":").append(i).append(",\"inner\":{\"name\":\"s").append(i).append("\"}}");
+        }
+        input.append('}');
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int attempt = 0; attempt < 20; attempt++) {
+                JsonConfiguration lazy = load(input.toString(), true);
+                CountDownLatch start = new CountDownLatch(1);
+                AtomicInteger mismatches = new AtomicInteger();
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    int offset = t * 7;
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        for (int i = 0; i < sections; i++) {
+                            int index = (i + offset) % sections;
+                            if (lazy.getInt("section" + index + ".index", -1) != index
+                                    || !("s" + index).equals(lazy.getString("section" + index + ".inner.name"))
+                                    || lazy.getConfigurationSection("section" + index).getKeys(false).size() != 2) {
+                                mismatches.incrementAndGet();
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> future : futures) {
+                    future.get(10, TimeUnit.SECONDS);
+                }
+                Assert.assertEquals(0, mismatches.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
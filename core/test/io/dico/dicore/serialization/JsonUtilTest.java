@@ -0,0 +1,264 @@
+package io.dico.dicore.serialization;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemFactory;
+import org.bukkit.inventory.ItemFlag;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.logging.Logger;
+
+public class JsonUtilTest {
+
+    /**
+     * Item meta without a server implementation, which keeps the properties that are written by {@link JsonUtil}
+     */
+    private static class TestItemMeta implements ItemMeta {
+        private String displayName;
+        private List<String> lore;
+        private Map<Enchantment, Integer> enchants = new HashMap<>();
+        private Set<ItemFlag> flags = EnumSet.noneOf(ItemFlag.class);
+        private boolean unbreakable;
+
+        boolean isEmpty() {
+            return displayName == null && lore == null && enchants.isEmpty() && flags.isEmpty() && !unbreakable;
+        }
+
+        @Override
+        public boolean hasDisplayName() {
+            return displayName != null;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        @Override
+        public void setDisplayName(String s) {
+            displayName = s;
+        }
+
+        @Override
+        public boolean hasLore() {
+            return lore != null;
+        }
+
+        @Override
+        public List<String> getLore() {
+            return lore == null ? null : new ArrayList<>(lore);
+        }
+
+        @Override
+        public void setLore(List<String> list) {
+            lore = list == null ? null : new ArrayList<>(list);
+        }
+
+        @Override
+        public boolean hasEnchants() {
+            return !enchants.isEmpty();
+        }
+
+        @Override
+        public boolean hasEnchant(Enchantment enchantment) {
+            return enchants.containsKey(enchantment);
+        }
+
+        @Override
+        public int getEnchantLevel(Enchantment enchantment) {
+            return enchants.getOrDefault(enchantment, 0);
+        }
+
+        @Override
+        public Map<Enchantment, Integer> getEnchants() {
+            return new HashMap<>(enchants);
+        }
+
+        @Override
+        public boolean addEnchant(Enchantment enchantment, int i, boolean b) {
+            return !Objects.equals(enchants.put(enchantment, i), i);
+        }
+
+        @Override
+        public boolean removeEnchant(Enchantment enchantment) {
+            return enchants.remove(enchantment) != null;
+        }
+
+        @Override
+        public boolean hasConflictingEnchant(Enchantment enchantment) {
+            return false;
+        }
+
+        @Override
+        public void addItemFlags(ItemFlag... itemFlags) {
+            flags.addAll(Arrays.asList(itemFlags));
+        }
+
+        @Override
+        public void removeItemFlags(ItemFlag... itemFlags) {
+            flags.removeAll(Arrays.asList(itemFlags));
+        }
+
+        @Override
+        public Set<ItemFlag> getItemFlags() {
+            return EnumSet.copyOf(flags);
+        }
+
+        @Override
+        public boolean hasItemFlag(ItemFlag itemFlag) {
+            return flags.contains(itemFlag);
+        }
+
+        @Override
+        public TestItemMeta clone() {
+            try {
+                TestItemMeta result = (TestItemMeta) super.clone();
+                result.lore = getLore();
+                result.enchants = getEnchants();
+                result.flags = getItemFlags();
+                return result;
+            } catch (CloneNotSupportedException ex) {
+                throw new InternalError(ex);
+            }
+        }
+
+        @Override
+        public Spigot spigot() {
+            return new Spigot() {
+                @Override
+                public void setUnbreakable(boolean value) {
+                    unbreakable = value;
+                }
+
+                @Override
+                public boolean isUnbreakable() {
+                    return unbreakable;
+                }
+            };
+        }
+
+        @Override
+        public Map<String, Object> serialize() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static boolean isEmpty(Object meta) {
+        return meta == null || ((TestItemMeta) meta).isEmpty();
+    }
+
+    /**
+     * Install a server that only provides an item factory of {@link TestItemMeta}, which {@link ItemStack} needs for its meta
+     */
+    private static synchronized void installServer() {
+        if (Bukkit.getServer() != null) {
+            return;
+        }
+
+        ItemFactory itemFactory = (ItemFactory) Proxy.newProxyInstance(JsonUtilTest.class.getClassLoader(), new Class<?>[]{ItemFactory.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getItemMeta":
+                    return new TestItemMeta();
+                case "isApplicable":
+                    return true;
+                case "equals":
+                    if (args.length == 1) {
+                        return proxy == args[0];
+                    }
+                    return isEmpty(args[0]) && isEmpty(args[1]);
+                case "asMetaFor":
+                    return args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+
+        Server server = (Server) Proxy.newProxyInstance(JsonUtilTest.class.getClassLoader(), new Class<?>[]{Server.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getItemFactory":
+                    return itemFactory;
+                case "getLogger":
+                    return Logger.getLogger(JsonUtilTest.class.getName());
+                case "getName":
+                case "getVersion":
+                case "getBukkitVersion":
+                    return "test";
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        Bukkit.setServer(server);
+    }
+
+    private static ItemStack roundTrip(ItemStack stack) throws IOException {
+        StringWriter out = new StringWriter();
+        JsonWriter writer = new JsonWriter(out);
+        // in an array, such that a stack that leaves an object open fails the write of the array
+        writer.beginArray();
+        JsonUtil.writeItemStack(writer, stack);
+        writer.endArray();
+        writer.close();
+
+        JsonReader reader = new JsonReader(new StringReader(out.toString()));
+        reader.beginArray();
+        ItemStack result = JsonUtil.readItemStack(reader);
+        reader.endArray();
+        return result;
+    }
+
+    @Test
+    public void testItemStack_roundTripWithoutMeta() throws IOException {
+        installServer();
+        ItemStack stack = new ItemStack(Material.STONE, 12);
+        stack.setDurability((short) 3);
+
+        ItemStack result = roundTrip(stack);
+        Assert.assertNotNull(result);
+        Assert.assertEquals(Material.STONE, result.getType());
+        Assert.assertEquals(12, result.getAmount());
+        Assert.assertEquals(3, result.getDurability());
+        Assert.assertFalse(result.hasItemMeta());
+    }
+
+    @Test
+    public void testItemStack_roundTripWithMeta() throws IOException {
+        installServer();
+        ItemStack stack = new ItemStack(Material.DIAMOND_SWORD, 2);
+        stack.setDurability((short) 5);
+        ItemMeta meta = stack.getItemMeta();
+        meta.setDisplayName("Sword");
+        meta.setLore(Arrays.asList("first", "second"));
+        meta.addItemFlags(ItemFlag.HIDE_ATTRIBUTES, ItemFlag.HIDE_UNBREAKABLE);
+        meta.spigot().setUnbreakable(true);
+        Assert.assertTrue(stack.setItemMeta(meta));
+
+        ItemStack result = roundTrip(stack);
+        Assert.assertNotNull(result);
+        Assert.assertEquals(Material.DIAMOND_SWORD, result.getType());
+        Assert.assertEquals(2, result.getAmount());
+        // written after the meta, so it is lost if the meta isn't closed
+        Assert.assertEquals(5, result.getDurability());
+        Assert.assertTrue(result.hasItemMeta());
+
+        ItemMeta resultMeta = result.getItemMeta();
+        Assert.assertEquals("Sword", resultMeta.getDisplayName());
+        Assert.assertEquals(Arrays.asList("first", "second"), resultMeta.getLore());
+        Assert.assertEquals(EnumSet.of(ItemFlag.HIDE_ATTRIBUTES, ItemFlag.HIDE_UNBREAKABLE), resultMeta.getItemFlags());
+        Assert.assertTrue(resultMeta.spigot().isUnbreakable());
+    }
+
+}
@@ -0,0 +1,209 @@
+package io.dico.dicore.serialization;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+public class RecordStoreTest {
+
+    private static class Data implements JsonLoadable {
+        String name;
+        boolean failWrite;
+
+        @Override
+        public void writeTo(JsonWriter writer) throws IOException {
+            if (failWrite) {
+                throw new IllegalStateException("failWrite");
+            }
+            writer.beginObject();
+            writer.name("name").value(name);
+            writer.endObject();
+        }
+
+        @Override
+        public void loadFrom(JsonReader reader) throws IOException {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("name")) {
+                    name = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+    }
+
+    private static RecordStore<Data> newStore(File directory, List<Exception> errors, int maxCached) {
+        return new RecordStore<>(directory, uuid -> new Data(), errors::add, maxCached);
+    }
+
+    private static UUID key(int index) {
+        return new UUID(0x1234L, index);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Test
+    public void testRecordStore_pinningAndEviction() throws Exception {
+        File directory = Files.createTempDirectory("records").toFile();
+        List<Exception> errors = new ArrayList<>();
+        try {
+            RecordStore<Data> store = newStore(directory, errors, 2);
+            for (int i = 0; i < 4; i++) {
+                store.acquire(key(i));
+            }
+            // pinned records are never evicted
+            Assert.assertEquals(4, store.size());
+            Assert.assertEquals(4, store.getPinnedCount());
+
+            // acquiring twice pins until released twice
+            Data first = store.acquire(key(0));
+            store.release(key(0));
+            Assert.assertEquals(4, store.getPinnedCount());
+            store.release(key(0));
+            Assert.assertEquals(3, store.getPinnedCount());
+            Assert.assertSame(first, store.getIfLoaded(key(0)));
+
+            for (int i = 1; i < 4; i++) {
+                store.release(key(i));
+            }
+            Assert.assertEquals(0, store.getPinnedCount());
+            Assert.assertEquals(2, store.size());
+            // the least recently used records were evicted
+            Assert.assertNull(store.getIfLoaded(key(0)));
+            Assert.assertNull(store.getIfLoaded(key(1)));
+            Assert.assertNotNull(store.getIfLoaded(key(3)));
+
+            // releasing a record that isn't pinned has no effect
+            store.release(key(3));
+            Assert.assertEquals(0, store.getPinnedCount());
+            Assert.assertTrue(store.close(5, TimeUnit.SECONDS));
+            Assert.assertTrue(errors.isEmpty());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testRecordStore_dirtyRecordsAreWrittenBeforeEviction() throws Exception {
+        File directory = Files.createTempDirectory("records").toFile();
+        List<Exception> errors = new ArrayList<>();
+        try {
+            RecordStore<Data> store = newStore(directory, errors, 0);
+            store.acquire(key(0)).name = "dico";
+            Assert.assertTrue(store.markDirty(key(0)));
+            store.release(key(0));
+            // a dirty record isn't evicted, even though the cache is empty
+            Assert.assertEquals("dico", store.getIfLoaded(key(0)).name);
+
+            store.flush().get(5, TimeUnit.SECONDS);
+            Assert.assertTrue(store.getFile(key(0)).isFile());
+            // any use of the store evicts the record, now that it is written
+            store.load(key(1));
+            Assert.assertNull(store.getIfLoaded(key(0)));
+            Assert.assertFalse(store.markDirty(key(0)));
+            Assert.assertEquals("dico", store.load(key(0)).name);
+
+            // close writes the remaining dirty records
+            store.acquire(key(2)).name = "other";
+            store.markDirty(key(2));
+            Assert.assertTrue(store.close(5, TimeUnit.SECONDS));
+            Assert.assertEquals(0, store.size());
+            Assert.assertEquals("other", newStore(directory, errors, 0).load(key(2)).name);
+            Assert.assertTrue(errors.isEmpty());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testRecordStore_unreadableFileIsNeverOverwritten() throws Exception {
+        File directory = Files.createTempDirectory("records").toFile();
+        List<Exception> errors = new ArrayList<>();
+        try {
+            RecordStore<Data> store = newStore(directory, errors, 0);
+            File file = store.getFile(key(0));
+            file.getParentFile().mkdirs();
+            // a syntax error of Gson, and a value of the wrong type, which Gson reports with an IllegalStateException
+            for (String content : new String[]{"{\"name\": ", "[1, 2]"}) {
+                byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+                Files.write(file.toPath(), bytes);
+                errors.clear();
+
+                Data data = store.acquire(key(0));
+                Assert.assertEquals(1, errors.size());
+                data.name = "changed";
+                store.markDirty(key(0));
+                store.flush().get(5, TimeUnit.SECONDS);
+                Assert.assertEquals(2, errors.size());
+                Assert.assertArrayEquals(bytes, Files.readAllBytes(file.toPath()));
+
+                // the flag is cleared, such that the error isn't reported on every flush
+                store.flush().get(5, TimeUnit.SECONDS);
+                Assert.assertEquals(2, errors.size());
+
+                // the file is read again once the record is evicted
+                store.release(key(0));
+                store.load(key(1));
+                Assert.assertNull(store.getIfLoaded(key(0)));
+            }
+            Assert.assertTrue(store.close(5, TimeUnit.SECONDS));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testRecordStore_failedSerializationIsReportedOnce() throws Exception {
+        File directory = Files.createTempDirectory("records").toFile();
+        List<Exception> errors = new ArrayList<>();
+        try {
+            RecordStore<Data> store = newStore(directory, errors, 0);
+            Data data = store.acquire(key(0));
+            data.failWrite = true;
+            store.markDirty(key(0));
+            store.flush().get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(1, errors.size());
+            Assert.assertFalse(store.getFile(key(0)).exists());
+
+            store.flush().get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(1, errors.size());
+
+            // the record can be evicted
+            store.release(key(0));
+            store.load(key(1));
+            Assert.assertNull(store.getIfLoaded(key(0)));
+
+            // and is written when it is marked dirty again
+            data = store.acquire(key(0));
+            data.name = "fixed";
+            store.markDirty(key(0));
+            store.flush().get(5, TimeUnit.SECONDS);
+            Assert.assertTrue(store.getFile(key(0)).isFile());
+            Assert.assertEquals(1, errors.size());
+            Assert.assertTrue(store.close(5, TimeUnit.SECONDS));
+        } finally {
+            delete(directory);
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+package io.dico.dicore.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SnapshotSourceTest {
+
+    private static <T> List<T> drain(SnapshotSource<T> source) {
+        List<T> result = new ArrayList<>();
+        while (source.hasNext()) {
+            result.add(source.next());
+        }
+        return result;
+    }
+
+    @Test
+    public void testOfArray_removeLeavesArrayUnchanged() {
+        String[] array = {"a", "b", "c", "d"};
+        SnapshotSource<String> source = SnapshotSource.ofArray(array);
+        Assert.assertEquals("a", source.next());
+        try {
+            source.remove();
+            Assert.fail("ofArray sources don't own their array");
+        } catch (UnsupportedOperationException ignored) {
+        }
+        Assert.assertEquals(Arrays.asList("b", "c", "d"), drain(source));
+
+        source = SnapshotSource.ofArray(array, 1, 3);
+        Assert.assertEquals("b", source.next());
+        try {
+            source.remove();
+            Assert.fail("ofArray sources don't own their array");
+        } catch (UnsupportedOperationException ignored) {
+        }
+        Assert.assertArrayEquals(new String[]{"a", "b", "c", "d"}, array);
+    }
+
+    @Test
+    public void testCopyOf_removeLeavesCollectionUnchanged() {
+        List<String> list = new ArrayList<>(Arrays.asList("a", "b", "c"));
+        SnapshotSource<String> source = SnapshotSource.copyOf(list);
+        try {
+            source.remove();
+            Assert.fail("remove before next must fail");
+        } catch (IllegalStateException ignored) {
+        }
+        Assert.assertEquals("a", source.next());
+        source.remove();
+        try {
+            source.remove();
+            Assert.fail("remove twice must fail");
+        } catch (IllegalStateException ignored) {
+        }
+        Assert.assertEquals(Arrays.asList("b", "c"), drain(source));
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), list);
+
+        source = SnapshotSource.copyOf(list.iterator());
+        source.next();
+        source.remove();
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), list);
+    }
+
+}
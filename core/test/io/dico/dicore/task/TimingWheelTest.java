@@ -0,0 +1,66 @@
+package io.dico.dicore.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TimingWheelTest {
+
+    private static void advance(TimingWheel wheel, long ticks) {
+        for (long i = 0; i < ticks; i++) {
+            wheel.advance();
+        }
+    }
+
+    @Test
+    public void testTimingWheel_firesOnDeadline() {
+        TimingWheel wheel = new TimingWheel();
+        long[] delays = {0, 1, 2, 255, 256, 257, 1000, 16383, 16384, 70000};
+        List<Long> fired = new ArrayList<>();
+
+        for (long delay : delays) {
+            long expected = Math.max(1, delay);
+            wheel.schedule(delay, () -> {
+                Assert.assertEquals(expected, wheel.getCurrentTick());
+                fired.add(expected);
+            });
+        }
+
+        advance(wheel, 70000);
+        Assert.assertEquals(delays.length, fired.size());
+        Assert.assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testTimingWheel_scheduleFromCallback() {
+        TimingWheel wheel = new TimingWheel();
+        long[] firedAt = new long[1];
+        advance(wheel, 300);
+        wheel.schedule(5, () -> wheel.schedule(300, () -> firedAt[0] = wheel.getCurrentTick()));
+
+        advance(wheel, 305);
+        Assert.assertEquals(605, firedAt[0]);
+    }
+
+    @Test
+    public void testTimingWheel_cancel() {
+        TimingWheel wheel = new TimingWheel();
+        boolean[] fired = new boolean[2];
+        TimingWheel.Timer first = wheel.schedule(500, () -> fired[0] = true);
+        TimingWheel.Timer second = wheel.schedule(500, () -> fired[1] = true);
+
+        Assert.assertTrue(first.cancel());
+        Assert.assertFalse(first.cancel());
+        Assert.assertEquals(1, wheel.size());
+
+        advance(wheel, 500);
+        Assert.assertFalse(fired[0]);
+        Assert.assertTrue(fired[1]);
+        Assert.assertTrue(first.isCancelled());
+        Assert.assertTrue(second.isExpired());
+        Assert.assertFalse(second.cancel());
+    }
+
+}
@@ -0,0 +1,90 @@
+package io.dico.dicore.task.scheduler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LocalTaskSchedulerTest {
+
+    @Test
+    public void testLocalTaskScheduler_delays() {
+        LocalTaskScheduler scheduler = new LocalTaskScheduler();
+        List<Long> ran = new ArrayList<>();
+        scheduler.runTask(() -> ran.add(scheduler.getCurrentTick()));
+        scheduler.runTaskLater(() -> ran.add(scheduler.getCurrentTick()), 5);
+        scheduler.runTaskAsynchronously(() -> ran.add(scheduler.getCurrentTick()));
+
+        Assert.assertTrue(ran.isEmpty());
+        scheduler.tick(10);
+        Assert.assertEquals(3, ran.size());
+        Assert.assertEquals(1L, (long) ran.get(0));
+        Assert.assertEquals(1L, (long) ran.get(1));
+        Assert.assertEquals(5L, (long) ran.get(2));
+        Assert.assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void testLocalTaskScheduler_timer() {
+        LocalTaskScheduler scheduler = new LocalTaskScheduler();
+        List<Long> ran = new ArrayList<>();
+        ScheduledTask task = scheduler.runTaskTimer(() -> ran.add(scheduler.getCurrentTick()), 2, 3);
+
+        scheduler.tick(11);
+        Assert.assertEquals(4, ran.size());
+        Assert.assertEquals(2L, (long) ran.get(0));
+        Assert.assertEquals(11L, (long) ran.get(3));
+        Assert.assertFalse(task.isDone());
+
+        task.cancel();
+        scheduler.tick(10);
+        Assert.assertEquals(4, ran.size());
+        Assert.assertTrue(task.isCancelled());
+        Assert.assertTrue(task.isDone());
+    }
+
+    @Test
+    public void testLocalTaskScheduler_oneShotIsDoneAfterRunning() {
+        LocalTaskScheduler scheduler = new LocalTaskScheduler();
+        ScheduledTask task = scheduler.runTaskLater(() -> {
+        }, 3);
+
+        scheduler.tick(2);
+        Assert.assertFalse(task.isDone());
+        scheduler.tick();
+        Assert.assertTrue(task.isDone());
+        Assert.assertFalse(task.isCancelled());
+    }
+
+    @Test
+    public void testLocalTaskScheduler_cancelBeforeRunning() {
+        LocalTaskScheduler scheduler = new LocalTaskScheduler();
+        boolean[] ran = new boolean[1];
+        ScheduledTask task = scheduler.runTaskLater(() -> ran[0] = true, 3);
+
+        task.cancel();
+        scheduler.tick(5);
+        Assert.assertFalse(ran[0]);
+        Assert.assertTrue(task.isDone());
+    }
+
+    @Test
+    public void testTrackingTaskScheduler_prunesDoneTasks() {
+        LocalTaskScheduler local = new LocalTaskScheduler();
+        TrackingTaskScheduler scheduler = new TrackingTaskScheduler(local);
+        int[] runs = new int[1];
+        scheduler.runTask(() -> runs[0]++);
+        scheduler.runTaskTimer(() -> runs[0]++, 1, 1);
+
+        Assert.assertEquals(2, scheduler.getTaskCount());
+        local.tick(3);
+        Assert.assertEquals(1, scheduler.getTaskCount());
+
+        scheduler.cancelAll();
+        local.tick(3);
+        Assert.assertEquals(4, runs[0]);
+        Assert.assertEquals(0, scheduler.getTaskCount());
+    }
+
+}